@@ -0,0 +1,527 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.illumon.iris.db.tables.remote;
+
+import com.illumon.iris.db.plot.FigureWidget;
+import com.illumon.iris.db.tables.databases.Database;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportBatchCARQResult;
+import com.illumon.iris.db.tables.remote.ReportTableCARQ.ReportTableCARQResult;
+import com.illumon.iris.db.util.liveness.LivenessScopeStack;
+import com.illumon.util.SafeCloseable;
+import io.deephaven.plugins.annotations.MinimalStyle;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Parameter;
+
+/**
+ * Fetches any number of tables, figures and scalars from the same persistent-query in one
+ * round-trip. The ACLs and auditing are applied per entry, exactly as {@link ReportTableCARQ} and
+ * {@link ReportFigureCARQ} would, and an entry that fails does not fail the others.
+ *
+ * <p>By default each table is snapshotted on its own, at whichever logical clock step it happens to
+ * be captured. With {@link #consistent()}, all of the tables and scalars are captured at the same
+ * step, so that related tables agree with each other.
+ */
+@MinimalStyle
+@Immutable
+public abstract class ReportBatchCARQ extends ReportCARQ<ReportBatchCARQResult> {
+
+  private static final long serialVersionUID = 4481365915620227914L;
+
+  /** The kind of a table entry, as used by {@link ReportBatchCARQResult#key(String, int)}. */
+  public static final String TABLE = "table";
+
+  /** The kind of a figure entry, as used by {@link ReportBatchCARQResult#key(String, int)}. */
+  public static final String FIGURE = "figure";
+
+  /** The kind of a scalar entry, as used by {@link ReportBatchCARQResult#key(String, int)}. */
+  public static final String SCALAR = "scalar";
+
+  /** The specification for one table of the batch. */
+  @MinimalStyle
+  @Immutable
+  public abstract static class ReportTableSpec implements Serializable {
+
+    private static final long serialVersionUID = 8896128012237640307L;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param name the name
+     * @param maxRows the maxRows
+     * @param columns the columns
+     * @return the new instance
+     */
+    public static ReportTableSpec of(String name, long maxRows, List<String> columns) {
+      return of(name, maxRows, columns, 0);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param name the name
+     * @param maxRows the maxRows
+     * @param columns the columns
+     * @param fromRow the position of the first row
+     * @return the new instance
+     */
+    public static ReportTableSpec of(
+        String name, long maxRows, List<String> columns, long fromRow) {
+      return of(name, maxRows, columns, fromRow, Optional.empty());
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param name the name
+     * @param maxRows the maxRows
+     * @param columns the columns
+     * @param fromRow the position of the first row
+     * @param lastSeen the version of the table when it was last fetched
+     * @return the new instance
+     */
+    public static ReportTableSpec of(
+        String name, long maxRows, List<String> columns, long fromRow, Optional<String> lastSeen) {
+      return of(name, maxRows, columns, fromRow, lastSeen, false);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param name the name
+     * @param maxRows the maxRows
+     * @param columns the columns
+     * @param fromRow the position of the first row
+     * @param lastSeen the version of the table when it was last fetched
+     * @param latest whether to take the last rows rather than the first ones
+     * @return the new instance
+     */
+    public static ReportTableSpec of(
+        String name,
+        long maxRows,
+        List<String> columns,
+        long fromRow,
+        Optional<String> lastSeen,
+        boolean latest) {
+      return ImmutableReportTableSpec.of(name, maxRows, columns, fromRow, lastSeen, latest);
+    }
+
+    /**
+     * The variable name for the table.
+     *
+     * @return the name
+     */
+    @Parameter
+    public abstract String name();
+
+    /**
+     * The maximum size for the report.
+     *
+     * @return the maximum size
+     */
+    @Parameter
+    public abstract long maxRows();
+
+    /**
+     * The columns to include in the report. An empty list indicates all columns.
+     *
+     * @return the columns
+     */
+    @Parameter
+    public abstract List<String> columns();
+
+    /**
+     * The position of the first row to include, for append-only tables that are fetched
+     * incrementally. Zero indicates all rows.
+     *
+     * @return the first row
+     */
+    @Parameter
+    public abstract long fromRow();
+
+    /**
+     * The version of the table when it was last fetched. If the table has not updated since, its
+     * result is {@link ReportTableCARQResult#isUnchanged() unchanged}.
+     *
+     * @return the last seen version
+     */
+    @Parameter
+    public abstract Optional<String> lastSeen();
+
+    /**
+     * Whether to take the last {@link #maxRows()} rows from {@link #fromRow()} onwards, rather than
+     * the first ones. Set for append-only tables that are fetched incrementally, whose latest rows
+     * are kept.
+     *
+     * @return true if the last rows are taken
+     */
+    @Parameter
+    public abstract boolean latest();
+  }
+
+  /** The specification for one scalar of the batch. */
+  @MinimalStyle
+  @Immutable
+  public abstract static class ReportScalarSpec implements Serializable {
+
+    private static final long serialVersionUID = 5714396725029117262L;
+
+    /**
+     * Constructs a new instance for a variable that holds the value itself.
+     *
+     * @param name the name
+     * @return the new instance
+     */
+    public static ReportScalarSpec of(String name) {
+      return of(name, Optional.empty(), 0);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param name the name
+     * @param column the column, if the variable is a table
+     * @param row the position of the row, if the variable is a table
+     * @return the new instance
+     */
+    public static ReportScalarSpec of(String name, Optional<String> column, long row) {
+      return ImmutableReportScalarSpec.of(name, column, row);
+    }
+
+    /**
+     * The variable name for the value, or for the table that holds the value.
+     *
+     * @return the name
+     */
+    @Parameter
+    public abstract String name();
+
+    /**
+     * The column that holds the value. Empty when the variable holds the value itself.
+     *
+     * @return the column
+     */
+    @Parameter
+    public abstract Optional<String> column();
+
+    /**
+     * The position of the row that holds the value, when the variable is a table.
+     *
+     * @return the row
+     */
+    @Parameter
+    public abstract long row();
+  }
+
+  /** The value of one scalar of the batch. */
+  @MinimalStyle
+  @Immutable
+  public abstract static class ReportScalarResult implements Serializable {
+
+    private static final long serialVersionUID = 1903472258466317451L;
+
+    /**
+     * The value, or empty if it is null.
+     *
+     * @return the value
+     */
+    @Parameter
+    public abstract Optional<Object> value();
+  }
+
+  /** The failure of one entry of the batch, which fails only that entry. */
+  public static final class ReportEntryException extends RuntimeException {
+
+    private static final long serialVersionUID = 6040915382870931244L;
+
+    ReportEntryException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * The results, keyed by the position of their entry within {@link #tables()}, {@link #figures()}
+   * and {@link #scalars()}. An entry that failed, such as a table that does not exist or that the
+   * user may not access, has a failure instead of a result; the other entries are unaffected.
+   */
+  @MinimalStyle
+  @Immutable
+  public abstract static class ReportBatchCARQResult implements Serializable {
+
+    private static final long serialVersionUID = 3307581229190046815L;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param tables the tables, keyed by position
+     * @param figures the figures, keyed by position
+     * @param scalars the scalars, keyed by position
+     * @param failures the failures, keyed by the kind and position of their entry
+     * @return the new instance
+     */
+    public static ReportBatchCARQResult of(
+        Map<Integer, ReportTableCARQResult> tables,
+        Map<Integer, Inflatable<FigureWidget>> figures,
+        Map<Integer, ReportScalarResult> scalars,
+        Map<String, String> failures) {
+      return ImmutableReportBatchCARQResult.of(tables, figures, scalars, failures);
+    }
+
+    @Parameter
+    public abstract Map<Integer, ReportTableCARQResult> tables();
+
+    @Parameter
+    public abstract Map<Integer, Inflatable<FigureWidget>> figures();
+
+    @Parameter
+    public abstract Map<Integer, ReportScalarResult> scalars();
+
+    /**
+     * The messages of the entries that failed, keyed by {@link #key(String, int)}.
+     *
+     * @return the failures
+     */
+    @Parameter
+    public abstract Map<String, String> failures();
+
+    /**
+     * The result of the table at {@code index}.
+     *
+     * @param index the index
+     * @return the result
+     * @throws ReportEntryException if the table failed
+     */
+    public final ReportTableCARQResult table(int index) {
+      return get(tables(), TABLE, index);
+    }
+
+    /**
+     * The figure at {@code index}.
+     *
+     * @param index the index
+     * @return the figure
+     * @throws ReportEntryException if the figure failed
+     */
+    public final Inflatable<FigureWidget> figure(int index) {
+      return get(figures(), FIGURE, index);
+    }
+
+    /**
+     * The scalar at {@code index}.
+     *
+     * @param index the index
+     * @return the scalar
+     * @throws ReportEntryException if the scalar failed
+     */
+    public final ReportScalarResult scalar(int index) {
+      return get(scalars(), SCALAR, index);
+    }
+
+    /**
+     * The key of an entry within {@link #failures()}.
+     *
+     * @param kind the kind of entry: {@code "table"}, {@code "figure"} or {@code "scalar"}
+     * @param index the position of the entry
+     * @return the key
+     */
+    public static String key(String kind, int index) {
+      return kind + ":" + index;
+    }
+
+    private <T> T get(Map<Integer, T> results, String kind, int index) {
+      final T result = results.get(index);
+      if (result == null) {
+        throw new ReportEntryException(
+            failures().getOrDefault(key(kind, index), "No result for " + key(kind, index)));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param tables the tables
+   * @param figures the figure names
+   * @return the new instance
+   */
+  public static ReportBatchCARQ of(List<ReportTableSpec> tables, List<String> figures) {
+    return of(tables, figures, false);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param tables the tables
+   * @param figures the figure names
+   * @param consistent whether to capture all of the tables at the same logical clock step
+   * @return the new instance
+   */
+  public static ReportBatchCARQ of(
+      List<ReportTableSpec> tables, List<String> figures, boolean consistent) {
+    return of(tables, figures, Collections.emptyList(), consistent);
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param tables the tables
+   * @param figures the figure names
+   * @param scalars the scalars
+   * @param consistent whether to capture all of the tables and scalars at the same logical clock
+   *     step
+   * @return the new instance
+   */
+  public static ReportBatchCARQ of(
+      List<ReportTableSpec> tables,
+      List<String> figures,
+      List<ReportScalarSpec> scalars,
+      boolean consistent) {
+    return ImmutableReportBatchCARQ.of(tables, figures, scalars, consistent);
+  }
+
+  /**
+   * The tables to fetch.
+   *
+   * @return the tables
+   */
+  @Parameter
+  public abstract List<ReportTableSpec> tables();
+
+  /**
+   * The names of the figures to fetch.
+   *
+   * @return the figure names
+   */
+  @Parameter
+  public abstract List<String> figures();
+
+  /**
+   * The scalars to fetch. Only the value of each scalar is sent back, so a dashboard of numbers
+   * costs a few bytes per number rather than a table snapshot each.
+   *
+   * @return the scalars
+   */
+  @Parameter
+  public abstract List<ReportScalarSpec> scalars();
+
+  /**
+   * Whether to capture all of the tables and scalars at the same logical clock step. The live table
+   * monitor is held off for as long as the tables take to snapshot, so this is best kept to small
+   * tables.
+   *
+   * @return true if the tables are captured consistently
+   */
+  @Parameter
+  public abstract boolean consistent();
+
+  public final ReportBatchCARQResult execute(RemoteDatabase db) throws Exception {
+    return db.executeConcurrentQuery(this);
+  }
+
+  @Override
+  @SuppressWarnings("try")
+  public final ReportBatchCARQResult execute(Database database) {
+    try (final SafeCloseable ignored = LivenessScopeStack.open()) {
+      final Map<String, String> failures = new LinkedHashMap<>();
+      final Map<Integer, ReportTableCARQResult> tables;
+      final Map<Integer, ReportScalarResult> scalars;
+      if (snapshotsAtOneStep()) {
+        final Map<Integer, ReportScalarResult> read = new LinkedHashMap<>();
+        tables =
+            atOneStep(
+                () -> {
+                  read.putAll(readScalars(database, failures));
+                  return snapshotTables(database, failures);
+                });
+        scalars = read;
+      } else {
+        tables = snapshotTables(database, failures);
+        scalars = readScalars(database, failures);
+      }
+      final Map<Integer, Inflatable<FigureWidget>> figures = new LinkedHashMap<>();
+      for (int i = 0; i < figures().size(); ++i) {
+        try {
+          figures.put(i, deflateFigure("ReportBatchCARQ", figures().get(i)));
+        } catch (RuntimeException e) {
+          failures.put(ReportBatchCARQResult.key(FIGURE, i), why(e));
+        }
+      }
+      return ReportBatchCARQResult.of(tables, figures, scalars, failures);
+    }
+  }
+
+  /**
+   * Whether the tables and scalars are captured while holding the shared lock of the live table
+   * monitor: only if {@link #consistent()}, and there is more than one of them to agree.
+   *
+   * @return true if the tables and scalars are captured at one logical clock step
+   */
+  final boolean snapshotsAtOneStep() {
+    return consistent() && tables().size() + scalars().size() > 1;
+  }
+
+  private Map<Integer, ReportScalarResult> readScalars(
+      Database database, Map<String, String> failures) {
+    final Map<Integer, ReportScalarResult> scalars = new LinkedHashMap<>();
+    for (int i = 0; i < scalars().size(); ++i) {
+      final ReportScalarSpec spec = scalars().get(i);
+      try {
+        final Object value =
+            readScalar(database, "ReportBatchCARQ", spec.name(), spec.column(), spec.row());
+        scalars.put(i, ImmutableReportScalarResult.of(Optional.ofNullable(value)));
+      } catch (RuntimeException e) {
+        failures.put(ReportBatchCARQResult.key(SCALAR, i), why(e));
+      }
+    }
+    return scalars;
+  }
+
+  private Map<Integer, ReportTableCARQResult> snapshotTables(
+      Database database, Map<String, String> failures) {
+    final Map<Integer, ReportTableCARQResult> tables = new LinkedHashMap<>();
+    for (int i = 0; i < tables().size(); ++i) {
+      final ReportTableSpec spec = tables().get(i);
+      try {
+        tables.put(
+            i,
+            snapshotTable(
+                database,
+                "ReportBatchCARQ",
+                spec.name(),
+                spec.maxRows(),
+                spec.columns(),
+                spec.fromRow(),
+                spec.lastSeen(),
+                spec.latest()));
+      } catch (RuntimeException e) {
+        failures.put(ReportBatchCARQResult.key(TABLE, i), why(e));
+      }
+    }
+    return tables;
+  }
+
+  private static String why(RuntimeException e) {
+    return e.getMessage() == null
+        ? e.getClass().getSimpleName()
+        : e.getClass().getSimpleName() + ": " + e.getMessage();
+  }
+}
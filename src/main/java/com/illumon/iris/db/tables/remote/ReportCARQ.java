@@ -0,0 +1,383 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.illumon.iris.db.tables.remote;
+
+import com.illumon.iris.db.exceptions.TableAccessException;
+import com.illumon.iris.db.plot.FigureWidget;
+import com.illumon.iris.db.tables.Table;
+import com.illumon.iris.db.tables.TableDefinition;
+import com.illumon.iris.db.tables.databases.Database;
+import com.illumon.iris.db.tables.live.LiveTableMonitor;
+import com.illumon.iris.db.tables.remote.ReportExplainCARQ.ReportTableExplain;
+import com.illumon.iris.db.tables.remote.ReportTableCARQ.ReportTableCARQResult;
+import com.illumon.iris.db.tables.remotequery.ContextAwareRemoteQuery;
+import com.illumon.iris.db.tables.remotequery.RemoteQueryProcessor;
+import com.illumon.iris.db.tables.select.QueryScope;
+import com.illumon.iris.db.tables.utils.LiveWidget;
+import com.illumon.iris.db.v2.BaseTable;
+import com.illumon.iris.db.v2.remote.ConstructSnapshot;
+import com.illumon.iris.db.v2.remote.InitialSnapshot;
+import com.illumon.util.FunctionalInterfaces.ThrowingSupplier;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The ACL, auditing, and snapshotting logic shared by the report remote queries. The helpers are
+ * expected to be called from within {@link #execute(Database)}, inside of a liveness scope.
+ *
+ * @param <T> the result type
+ */
+public abstract class ReportCARQ<T> extends ContextAwareRemoteQuery<T> {
+
+  private static final long serialVersionUID = 2967125371542915872L;
+
+  /** The identity of this worker, new for every start of the persistent-query. */
+  private static final String WORKER = UUID.randomUUID().toString();
+
+  private static final Map<Table, Long> TABLE_IDS =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  private static final AtomicLong NEXT_TABLE_ID = new AtomicLong();
+
+  /**
+   * Applies the ACLs and input table checks, audits the access, and snapshots a limited view of the
+   * table {@code name}.
+   *
+   * @param database the database
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the table
+   * @param maxRows the maximum number of rows
+   * @param columns the columns, or empty for all columns
+   * @return the result
+   */
+  protected final ReportTableCARQResult snapshotTable(
+      Database database, String auditName, String name, long maxRows, List<String> columns) {
+    return snapshotTable(database, auditName, name, maxRows, columns, 0);
+  }
+
+  /**
+   * Applies the ACLs and input table checks, audits the access, and snapshots a limited view of the
+   * rows of the table {@code name} from position {@code fromRow} onwards. Meant for append-only
+   * tables, where the rows at a position never change: if the table has fewer rows than {@code
+   * fromRow}, it is assumed to have been restarted, and the rows are taken from the start instead.
+   *
+   * @param database the database
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the table
+   * @param maxRows the maximum number of rows
+   * @param columns the columns, or empty for all columns
+   * @param fromRow the position of the first row
+   * @return the result, with the position of the first row that was actually taken
+   */
+  protected final ReportTableCARQResult snapshotTable(
+      Database database,
+      String auditName,
+      String name,
+      long maxRows,
+      List<String> columns,
+      long fromRow) {
+    return snapshotTable(database, auditName, name, maxRows, columns, fromRow, Optional.empty());
+  }
+
+  /**
+   * Applies the ACLs and input table checks, audits the access, and snapshots a limited view of the
+   * table {@code name}, as {@link #snapshotTable(Database, String, String, long, List, long)} does.
+   * If the version of the table is still {@code lastSeen}, the table has not updated since the
+   * caller fetched it, and the result is {@link ReportTableCARQResult#isUnchanged() unchanged}: it
+   * holds no snapshot.
+   *
+   * @param database the database
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the table
+   * @param maxRows the maximum number of rows
+   * @param columns the columns, or empty for all columns
+   * @param fromRow the position of the first row
+   * @param lastSeen the version of the table when the caller last fetched it
+   * @return the result
+   */
+  protected final ReportTableCARQResult snapshotTable(
+      Database database,
+      String auditName,
+      String name,
+      long maxRows,
+      List<String> columns,
+      long fromRow,
+      Optional<String> lastSeen) {
+    return snapshotTable(database, auditName, name, maxRows, columns, fromRow, lastSeen, false);
+  }
+
+  /**
+   * Applies the ACLs and input table checks, audits the access, and snapshots a limited view of the
+   * table {@code name}, as {@link #snapshotTable(Database, String, String, long, List, long,
+   * Optional)} does. If {@code latest}, the last {@code maxRows} rows from {@code fromRow} onwards
+   * are taken instead of the first ones, so that a caller that keeps the latest rows of an
+   * append-only table never falls behind it: the position of the first row that was taken, plus the
+   * number of rows taken, is then the size of the table.
+   *
+   * @param database the database
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the table
+   * @param maxRows the maximum number of rows
+   * @param columns the columns, or empty for all columns
+   * @param fromRow the position of the first row
+   * @param lastSeen the version of the table when the caller last fetched it
+   * @param latest whether to take the last rows rather than the first ones
+   * @return the result
+   */
+  protected final ReportTableCARQResult snapshotTable(
+      Database database,
+      String auditName,
+      String name,
+      long maxRows,
+      List<String> columns,
+      long fromRow,
+      Optional<String> lastSeen,
+      boolean latest) {
+    Table table = QueryScope.getDefaultInstance().readParamValue(name);
+    // note: taken before the snapshot, so that an update during the snapshot is never missed
+    final String version = version(table);
+    table = access(database, auditName, name, table);
+
+    final Table accessed = table;
+    final long size = atOneStep(accessed::size);
+    final long restartedFrom = size < fromRow ? 0 : fromRow;
+    final long firstRow = latest ? Math.max(restartedFrom, size - maxRows) : restartedFrom;
+    if (latest) {
+      // note: the rows at a position of an append-only table never change, so this is the same
+      // rows even if the table grows before the snapshot
+      table = table.slice(firstRow, size);
+    } else {
+      if (firstRow > 0) {
+        table = table.slice(firstRow, Long.MAX_VALUE);
+      }
+      table = table.head(maxRows);
+    }
+    table = table.view(columns);
+    if (lastSeen.isPresent() && lastSeen.get().equals(version)) {
+      return ImmutableReportTableCARQResult.of(
+          table.getDefinition(), Optional.empty(), firstRow, version);
+    }
+    final InitialSnapshot snapshot =
+        ConstructSnapshot.constructInitialSnapshot(this, (BaseTable) table);
+    return ImmutableReportTableCARQResult.of(
+        table.getDefinition(), Optional.of(snapshot), firstRow, version);
+  }
+
+  /**
+   * Applies the ACLs and input table checks, and audits the access, as {@link
+   * #snapshotTable(Database, String, String, long, List, long)} does, but only describes the rows
+   * the snapshot would hold instead of taking it.
+   *
+   * @param database the database
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the table
+   * @param maxRows the maximum number of rows
+   * @param columns the columns, or empty for all columns
+   * @param fromRow the position of the first row
+   * @return the explanation
+   */
+  protected final ReportTableExplain explainTable(
+      Database database,
+      String auditName,
+      String name,
+      long maxRows,
+      List<String> columns,
+      long fromRow) {
+    final Table table =
+        access(database, auditName, name, QueryScope.getDefaultInstance().readParamValue(name));
+    final long size = table.size();
+    final long firstRow = size < fromRow ? 0 : fromRow;
+    return ImmutableReportTableExplain.of(
+        table.view(columns).getDefinition(), size, Math.min(size - firstRow, maxRows));
+  }
+
+  /**
+   * Reads a single value. If {@code column} is present, the variable {@code name} is a table: the
+   * ACLs and input table checks are applied, and the access is audited, as {@link
+   * #snapshotTable(Database, String, String, long, List, long)} does, before the cell at {@code
+   * row} is read. Otherwise the variable holds the value itself, which must be neither a table nor
+   * a widget, so that this can't bypass their ACLs; the access is audited all the same.
+   *
+   * @param database the database
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the value, or for the table that holds it
+   * @param column the column, if the variable is a table
+   * @param row the position of the row, if the variable is a table
+   * @return the value, possibly null
+   */
+  protected final Serializable readScalar(
+      Database database, String auditName, String name, Optional<String> column, long row) {
+    final Object value;
+    if (column.isPresent()) {
+      final Table table =
+          access(database, auditName, name, QueryScope.getDefaultInstance().readParamValue(name))
+              .view(column.get());
+      // note: a single cell of a refreshing table is read at one logical clock step as well
+      value =
+          atOneStep(
+              () -> {
+                if (row < 0 || row >= table.size()) {
+                  throw new IllegalArgumentException(
+                      String.format(
+                          "Row %d is out of range for table '%s' of size %d",
+                          row, name, table.size()));
+                }
+                return table.getColumnSource(column.get()).get(table.getIndex().get(row));
+              });
+    } else {
+      value = QueryScope.getDefaultInstance().readParamValue(name);
+      if (value instanceof Table || value instanceof LiveWidget) {
+        throw new TableAccessException(
+            String.format("Variable '%s' must be read from one of its columns", name));
+      }
+      final RemoteQueryProcessor remoteQueryProcessor = getRemoteQueryProcessor();
+      if (remoteQueryProcessor.auditTableAccess()) {
+        final ExportedObjectClient client = getClient();
+        final String queryDescription = getRemoteQueryProcessor().getQueryDescription();
+        remoteQueryProcessor.logWidgetAccessAuditEvent(
+            getUserContext(),
+            client.getRemoteHostName(),
+            client.getRemotePort(),
+            null,
+            null,
+            queryDescription == null
+                ? auditName + ", Name=" + name
+                : auditName + ", Query=" + queryDescription + ", Name=" + name);
+      }
+    }
+    if (value != null && !(value instanceof Serializable)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Value of '%s' of type %s can not be sent", name, value.getClass().getName()));
+    }
+    return (Serializable) value;
+  }
+
+  private Table access(Database database, String auditName, String name, Table table) {
+    table = RemoteDatabase.applyAcls(table, getUserContext(), getRemoteQueryProcessor(), name);
+    table = RemoteDatabase.applyInputTableChecks(database, table, getUserContext(), name);
+
+    final RemoteQueryProcessor remoteQueryProcessor = getRemoteQueryProcessor();
+    if (remoteQueryProcessor.auditTableAccess()) {
+      final TableDefinition tableDefinition = table.getDefinition();
+      final ExportedObjectClient client = getClient();
+      final String queryDescription = getRemoteQueryProcessor().getQueryDescription();
+      remoteQueryProcessor.logTableAccessAuditEvent(
+          getUserContext(),
+          client.getRemoteHostName(),
+          client.getRemotePort(),
+          tableDefinition.getNamespace(),
+          tableDefinition.getName(),
+          queryDescription == null
+              ? auditName + ", Name=" + name
+              : auditName + ", Query=" + queryDescription + ", Name=" + name);
+    }
+    return table;
+  }
+
+  /**
+   * The version of the table, which changes whenever the table updates. It is made of the identity
+   * of this worker, which is new whenever the persistent-query restarts, the identity of the table
+   * within this worker, and the step at which the table last updated. A version is therefore never
+   * repeated by another table, another worker, or a replica.
+   *
+   * @param table the table
+   * @return the version
+   */
+  private static String version(Table table) {
+    final long id = TABLE_IDS.computeIfAbsent(table, t -> NEXT_TABLE_ID.incrementAndGet());
+    final long step =
+        table instanceof BaseTable ? ((BaseTable) table).getLastNotificationStep() : -1;
+    return WORKER + ":" + id + ":" + step;
+  }
+
+  /**
+   * Calls {@code supplier} while holding the shared lock of the {@link LiveTableMonitor}. The
+   * monitor can not start a new cycle until the lock is released, so every table snapshotted by
+   * {@code supplier} is captured at the same logical clock step.
+   *
+   * @param supplier the supplier
+   * @param <R> the result type
+   * @return the result
+   */
+  protected static <R> R atOneStep(Supplier<R> supplier) {
+    return LiveTableMonitor.DEFAULT
+        .sharedLock()
+        .computeLocked((ThrowingSupplier<R, RuntimeException>) supplier::get);
+  }
+
+  /**
+   * Audits the access, checks the ACLs and visibility, and deflates the figure {@code name}.
+   *
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the figure
+   * @return the deflated figure
+   */
+  protected final Inflatable<FigureWidget> deflateFigure(String auditName, String name) {
+    return accessFigure(auditName, name).deflate(getClient());
+  }
+
+  /**
+   * Audits the access, and checks the ACLs and visibility of the figure {@code name}.
+   *
+   * @param auditName the name of the remote query, as it should appear in the audit log
+   * @param name the variable name for the figure
+   * @return the figure
+   */
+  protected final FigureWidget accessFigure(String auditName, String name) {
+    final FigureWidget figure = QueryScope.getDefaultInstance().readParamValue(name);
+    final RemoteQueryProcessor remoteQueryProcessor = getRemoteQueryProcessor();
+    if (remoteQueryProcessor.auditTableAccess()) {
+      final String widgetInfo = figure.getClass().getName();
+      final ExportedObjectClient client = getClient();
+      final String queryDescription = getRemoteQueryProcessor().getQueryDescription();
+      remoteQueryProcessor.logWidgetAccessAuditEvent(
+          getUserContext(),
+          client.getRemoteHostName(),
+          client.getRemotePort(),
+          null,
+          null,
+          queryDescription == null
+              ? auditName + ", Name=" + name + ", Widget class=" + widgetInfo
+              : auditName
+                  + ", Query="
+                  + queryDescription
+                  + ", Name="
+                  + name
+                  + ", Widget class="
+                  + widgetInfo);
+    }
+    final LiveWidget<?> postACL =
+        RemoteDatabase.applyAcls(figure, getUserContext(), remoteQueryProcessor, name);
+    if (postACL != figure) {
+      throw new TableAccessException("Unable to save figure that has ACLs applied");
+    }
+    final LiveWidget<?> postVisiblity =
+        RemoteDatabase.checkWidgetVisibility(
+            figure, getUserContext(), getRemoteQueryProcessor(), name);
+    if (postVisiblity != figure) {
+      throw new TableAccessException("Unable to save figure that is not visible");
+    }
+    return figure;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.illumon.iris.db.tables.remote;
+
+import com.illumon.iris.db.tables.TableDefinition;
+import com.illumon.iris.db.tables.databases.Database;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportTableSpec;
+import com.illumon.iris.db.tables.remote.ReportExplainCARQ.ReportExplainCARQResult;
+import com.illumon.iris.db.util.liveness.LivenessScopeStack;
+import com.illumon.util.SafeCloseable;
+import io.deephaven.plugins.annotations.MinimalStyle;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Parameter;
+
+/**
+ * Describes the tables and figures a {@link ReportBatchCARQ} would fetch, without taking any
+ * snapshot: the definitions and row counts of the tables, and the classes of the figures. The ACLs
+ * and auditing are applied per entry, exactly as {@link ReportBatchCARQ} would.
+ */
+@MinimalStyle
+@Immutable
+public abstract class ReportExplainCARQ extends ReportCARQ<ReportExplainCARQResult> {
+
+  private static final long serialVersionUID = 6150240931587310148L;
+
+  /** The description of one table. */
+  @MinimalStyle
+  @Immutable
+  public abstract static class ReportTableExplain implements Serializable {
+
+    private static final long serialVersionUID = 2263980469131822585L;
+
+    /**
+     * The definition of the columns that would be fetched.
+     *
+     * @return the definition
+     */
+    @Parameter
+    public abstract TableDefinition definition();
+
+    /**
+     * The number of rows in the whole table, after the ACLs are applied.
+     *
+     * @return the size
+     */
+    @Parameter
+    public abstract long size();
+
+    /**
+     * The number of rows that would be fetched.
+     *
+     * @return the rows
+     */
+    @Parameter
+    public abstract long rows();
+  }
+
+  /** The results, in the same order as {@link #tables()} and {@link #figures()}. */
+  @MinimalStyle
+  @Immutable
+  public abstract static class ReportExplainCARQResult implements Serializable {
+
+    private static final long serialVersionUID = 7702416360998617493L;
+
+    @Parameter
+    public abstract List<ReportTableExplain> tables();
+
+    /**
+     * The class names of the figures.
+     *
+     * @return the figure classes
+     */
+    @Parameter
+    public abstract List<String> figures();
+  }
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param tables the tables
+   * @param figures the figure names
+   * @return the new instance
+   */
+  public static ReportExplainCARQ of(List<ReportTableSpec> tables, List<String> figures) {
+    return ImmutableReportExplainCARQ.of(tables, figures);
+  }
+
+  /**
+   * The tables to describe. Only the names, limits, columns and first rows are used.
+   *
+   * @return the tables
+   */
+  @Parameter
+  public abstract List<ReportTableSpec> tables();
+
+  /**
+   * The names of the figures to describe.
+   *
+   * @return the figure names
+   */
+  @Parameter
+  public abstract List<String> figures();
+
+  public final ReportExplainCARQResult execute(RemoteDatabase db) throws Exception {
+    return db.executeConcurrentQuery(this);
+  }
+
+  @Override
+  @SuppressWarnings("try")
+  public final ReportExplainCARQResult execute(Database database) {
+    try (final SafeCloseable ignored = LivenessScopeStack.open()) {
+      final List<ReportTableExplain> tables = new ArrayList<>(tables().size());
+      for (ReportTableSpec spec : tables()) {
+        tables.add(
+            explainTable(
+                database,
+                "ReportExplainCARQ",
+                spec.name(),
+                spec.maxRows(),
+                spec.columns(),
+                spec.fromRow()));
+      }
+      final List<String> figures = new ArrayList<>(figures().size());
+      for (String name : figures()) {
+        figures.add(accessFigure("ReportExplainCARQ", name).getClass().getName());
+      }
+      return ImmutableReportExplainCARQResult.of(tables, figures);
+    }
+  }
+}
@@ -16,13 +16,8 @@
 package com.illumon.iris.db.tables.remote;
 
 import com.fishlib.io.logger.Logger;
-import com.illumon.iris.db.exceptions.TableAccessException;
 import com.illumon.iris.db.plot.FigureWidget;
 import com.illumon.iris.db.tables.databases.Database;
-import com.illumon.iris.db.tables.remotequery.ContextAwareRemoteQuery;
-import com.illumon.iris.db.tables.remotequery.RemoteQueryProcessor;
-import com.illumon.iris.db.tables.select.QueryScope;
-import com.illumon.iris.db.tables.utils.LiveWidget;
 import com.illumon.iris.db.util.liveness.LivenessScopeStack;
 import com.illumon.util.SafeCloseable;
 import io.deephaven.plugins.annotations.MinimalStyle;
@@ -37,7 +32,7 @@ import org.immutables.value.Value.Parameter;
  */
 @MinimalStyle
 @Immutable
-public abstract class ReportFigureCARQ extends ContextAwareRemoteQuery<Inflatable<FigureWidget>> {
+public abstract class ReportFigureCARQ extends ReportCARQ<Inflatable<FigureWidget>> {
 
   private static final long serialVersionUID = 1050567606016701232L;
 
@@ -63,39 +58,7 @@ public abstract class ReportFigureCARQ extends ContextAwareRemoteQuery<Inflatabl
   @SuppressWarnings("try")
   public final Inflatable<FigureWidget> execute(Database database) {
     try (final SafeCloseable ignored = LivenessScopeStack.open()) {
-      final FigureWidget figure = QueryScope.getDefaultInstance().readParamValue(name());
-      final RemoteQueryProcessor remoteQueryProcessor = getRemoteQueryProcessor();
-      if (remoteQueryProcessor.auditTableAccess()) {
-        final String widgetInfo = figure.getClass().getName();
-        final ExportedObjectClient client = getClient();
-        final String queryDescription = getRemoteQueryProcessor().getQueryDescription();
-        remoteQueryProcessor.logWidgetAccessAuditEvent(
-            getUserContext(),
-            client.getRemoteHostName(),
-            client.getRemotePort(),
-            null,
-            null,
-            queryDescription == null
-                ? "ReportFigureCARQ, Name=" + name() + ", Widget class=" + widgetInfo
-                : "ReportFigureCARQ, Query="
-                    + queryDescription
-                    + ", Name="
-                    + name()
-                    + ", Widget class="
-                    + widgetInfo);
-      }
-      final LiveWidget<?> postACL =
-          RemoteDatabase.applyAcls(figure, getUserContext(), remoteQueryProcessor, name());
-      if (postACL != figure) {
-        throw new TableAccessException("Unable to save figure that has ACLs applied");
-      }
-      final LiveWidget<?> postVisiblity =
-          RemoteDatabase.checkWidgetVisibility(
-              figure, getUserContext(), getRemoteQueryProcessor(), name());
-      if (postVisiblity != figure) {
-        throw new TableAccessException("Unable to save figure that is not visible");
-      }
-      return figure.deflate(getClient());
+      return deflateFigure("ReportFigureCARQ", name());
     }
   }
 }
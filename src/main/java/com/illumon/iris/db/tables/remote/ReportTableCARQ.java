@@ -20,12 +20,7 @@ import com.illumon.iris.db.tables.Table;
 import com.illumon.iris.db.tables.TableDefinition;
 import com.illumon.iris.db.tables.databases.Database;
 import com.illumon.iris.db.tables.remote.ReportTableCARQ.ReportTableCARQResult;
-import com.illumon.iris.db.tables.remotequery.ContextAwareRemoteQuery;
-import com.illumon.iris.db.tables.remotequery.RemoteQueryProcessor;
-import com.illumon.iris.db.tables.select.QueryScope;
 import com.illumon.iris.db.util.liveness.LivenessScopeStack;
-import com.illumon.iris.db.v2.BaseTable;
-import com.illumon.iris.db.v2.remote.ConstructSnapshot;
 import com.illumon.iris.db.v2.remote.InitialSnapshot;
 import com.illumon.iris.db.v2.remote.InitialSnapshotTable;
 import com.illumon.util.SafeCloseable;
@@ -33,6 +28,7 @@ import io.deephaven.plugins.annotations.MinimalStyle;
 import java.io.Serializable;
 import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Parameter;
 
@@ -43,7 +39,7 @@ import org.immutables.value.Value.Parameter;
  */
 @MinimalStyle
 @Immutable
-public abstract class ReportTableCARQ extends ContextAwareRemoteQuery<ReportTableCARQResult> {
+public abstract class ReportTableCARQ extends ReportCARQ<ReportTableCARQResult> {
 
   private static final long serialVersionUID = 1234906716116716235L;
 
@@ -56,11 +52,45 @@ public abstract class ReportTableCARQ extends ContextAwareRemoteQuery<ReportTabl
     @Parameter
     public abstract TableDefinition definition();
 
+    /**
+     * The snapshot, or empty if the table is {@link #isUnchanged() unchanged}.
+     *
+     * @return the snapshot
+     */
     @Parameter
-    public abstract InitialSnapshot snapshot();
+    public abstract Optional<InitialSnapshot> snapshot();
+
+    /**
+     * The position of the first row of the snapshot within the whole table.
+     *
+     * @return the first row
+     */
+    @Parameter
+    public abstract long firstRow();
+
+    /**
+     * The version of the table, which changes whenever the table updates.
+     *
+     * @return the version
+     */
+    @Parameter
+    public abstract String version();
+
+    /**
+     * Whether the table has not updated since the version the caller had last seen, in which case
+     * there is no {@link #snapshot()}.
+     *
+     * @return true if the table is unchanged
+     */
+    public final boolean isUnchanged() {
+      return !snapshot().isPresent();
+    }
 
     public final Table toTable() {
-      return InitialSnapshotTable.setupInitialSnapshotTable(definition(), snapshot());
+      if (isUnchanged()) {
+        throw new IllegalStateException("The table is unchanged, so there is no snapshot");
+      }
+      return InitialSnapshotTable.setupInitialSnapshotTable(definition(), snapshot().get());
     }
   }
 
@@ -73,7 +103,21 @@ public abstract class ReportTableCARQ extends ContextAwareRemoteQuery<ReportTabl
    * @return the new instance
    */
   public static ReportTableCARQ of(String name, long maxRows, List<String> columns) {
-    return ImmutableReportTableCARQ.of(name, maxRows, columns);
+    return of(name, maxRows, columns, Optional.empty());
+  }
+
+  /**
+   * Constructs a new instance, to be revalidated against the version {@code lastSeen}.
+   *
+   * @param name the name
+   * @param maxRows the maxRows
+   * @param columns the columns
+   * @param lastSeen the version of the table when it was last fetched
+   * @return the new instance
+   */
+  public static ReportTableCARQ of(
+      String name, long maxRows, List<String> columns, Optional<String> lastSeen) {
+    return ImmutableReportTableCARQ.of(name, maxRows, columns, lastSeen);
   }
 
   /**
@@ -100,40 +144,29 @@ public abstract class ReportTableCARQ extends ContextAwareRemoteQuery<ReportTabl
   @Parameter
   public abstract List<String> columns();
 
+  /**
+   * The version of the table when it was last fetched. If the table has not updated since, the
+   * result is {@link ReportTableCARQResult#isUnchanged() unchanged}.
+   *
+   * @return the last seen version
+   */
+  @Parameter
+  public abstract Optional<String> lastSeen();
+
   public final Table execute(RemoteDatabase db) throws Exception {
     return db.executeConcurrentQuery(this).toTable();
   }
 
+  public final ReportTableCARQResult fetch(RemoteDatabase db) throws Exception {
+    return db.executeConcurrentQuery(this);
+  }
+
   @Override
   @SuppressWarnings("try")
   public final ReportTableCARQResult execute(Database database) {
     try (final SafeCloseable ignored = LivenessScopeStack.open()) {
-      Table table = QueryScope.getDefaultInstance().readParamValue(name());
-
-      // todo: this logic should be consolidated b/c it's used in a couple of different places.
-      table = RemoteDatabase.applyAcls(table, getUserContext(), getRemoteQueryProcessor(), name());
-      table = RemoteDatabase.applyInputTableChecks(database, table, getUserContext(), name());
-
-      final RemoteQueryProcessor remoteQueryProcessor = getRemoteQueryProcessor();
-      if (remoteQueryProcessor.auditTableAccess()) {
-        final TableDefinition tableDefinition = table.getDefinition();
-        final ExportedObjectClient client = getClient();
-        final String queryDescription = getRemoteQueryProcessor().getQueryDescription();
-        remoteQueryProcessor.logTableAccessAuditEvent(
-            getUserContext(),
-            client.getRemoteHostName(),
-            client.getRemotePort(),
-            tableDefinition.getNamespace(),
-            tableDefinition.getName(),
-            queryDescription == null
-                ? "ReportTableCARQ, Name=" + name()
-                : "ReportTableCARQ, Query=" + queryDescription + ", Name=" + name());
-      }
-
-      table = table.head(maxRows()).view(columns());
-      final InitialSnapshot snapshot =
-          ConstructSnapshot.constructInitialSnapshot(this, (BaseTable) table);
-      return ImmutableReportTableCARQResult.of(table.getDefinition(), snapshot);
+      return snapshotTable(
+          database, "ReportTableCARQ", name(), maxRows(), columns(), 0, lastSeen());
     }
   }
 }
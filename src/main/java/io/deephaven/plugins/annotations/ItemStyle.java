@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.immutables.value.Value;
+
+/**
+ * The style for report items, with copy methods named {@code copyWith*}. The copy methods share
+ * every unchanged attribute with the original, such as the items of a group, and the {@code
+ * copyWith*} naming leaves {@code with*} free for the public item API. Otherwise the defaults are
+ * kept, so the generated {@code Immutable*} item classes stay public.
+ *
+ * @see <a
+ *     href="https://immutables.github.io/style.html">https://immutables.github.io/style.html</a>
+ */
+@Target({ElementType.PACKAGE, ElementType.TYPE})
+@Retention(RetentionPolicy.CLASS) // Make it class retention for incremental compilation
+@Value.Style(with = "copyWith*")
+public @interface ItemStyle {}
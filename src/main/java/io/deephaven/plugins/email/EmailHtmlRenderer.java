@@ -16,14 +16,19 @@
 package io.deephaven.plugins.email;
 
 import io.deephaven.plugins.html.InlineHtmlRenderer;
+import io.deephaven.plugins.html.RenderPlan;
 import io.deephaven.plugins.html.Trailer;
+import io.deephaven.plugins.report.Deadline;
 import io.deephaven.plugins.report.Figure;
+import io.deephaven.plugins.report.Localization;
 import io.deephaven.plugins.report.Report;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
 import org.apache.commons.mail.DefaultAuthenticator;
 import org.apache.commons.mail.EmailException;
 import org.apache.commons.mail.ImageHtmlEmail;
@@ -32,9 +37,15 @@ import org.apache.commons.mail.resolver.DataSourceFileResolver;
 class EmailHtmlRenderer extends InlineHtmlRenderer {
 
   private final EmailSendingConfig config;
+  private final Deadline deadline;
+  private final Optional<List<RenderPlan>> plans;
 
-  EmailHtmlRenderer(EmailSendingConfig reports) {
+  EmailHtmlRenderer(
+      EmailSendingConfig reports, Deadline deadline, Optional<List<RenderPlan>> plans) {
+    super(deadline);
     this.config = Objects.requireNonNull(reports);
+    this.deadline = Objects.requireNonNull(deadline);
+    this.plans = Objects.requireNonNull(plans);
   }
 
   @Override
@@ -47,6 +58,16 @@ class EmailHtmlRenderer extends InlineHtmlRenderer {
     return config.reports();
   }
 
+  @Override
+  protected Optional<List<RenderPlan>> plans() {
+    return plans;
+  }
+
+  @Override
+  protected Localization.OnFailure onFailure() {
+    return config.localization().onFailure();
+  }
+
   @Override
   protected File createFigureFile(Figure<?> figure) {
     try {
@@ -57,8 +78,14 @@ class EmailHtmlRenderer extends InlineHtmlRenderer {
     }
   }
 
-  ImageHtmlEmail render() throws EmailException {
+  ImageHtmlEmail render() throws EmailException, TimeoutException {
     final String html = createHtml();
+    // note: a single check of the deadline, split between connecting and reading, so that
+    // delivery does not take up to twice the remaining budget
+    final long deliveryMillis = deadline.check("sending the email").toMillis();
+    final int connectMillis = (int) Math.min(Integer.MAX_VALUE, Math.max(1, deliveryMillis / 2));
+    final int readMillis =
+        (int) Math.min(Integer.MAX_VALUE, Math.max(1, deliveryMillis - connectMillis));
 
     final Server server = config.server();
     final Header header = config.header();
@@ -67,6 +94,8 @@ class EmailHtmlRenderer extends InlineHtmlRenderer {
     out.setHostName(server.hostName());
     server.smtpPort().ifPresent(out::setSmtpPort);
     out.setSSLOnConnect(server.sslOnConnect());
+    out.setSocketConnectionTimeout(connectMillis);
+    out.setSocketTimeout(readMillis);
     server
         .auth()
         .walk(
@@ -99,6 +128,6 @@ class EmailHtmlRenderer extends InlineHtmlRenderer {
   }
 
   private String createHtml() {
-    return new EmailHtmlRenderer(config).renderHtml();
+    return new EmailHtmlRenderer(config, deadline, plans).renderHtml();
   }
 }
@@ -18,7 +18,11 @@ package io.deephaven.plugins.email;
 import com.fishlib.io.logger.Logger;
 import com.illumon.iris.db.tables.live.LiveTableMonitor;
 import com.illumon.util.FunctionalInterfaces.ThrowingSupplier;
+import io.deephaven.plugins.html.RenderPlan;
 import io.deephaven.plugins.html.Trailer;
+import io.deephaven.plugins.report.Deadline;
+import io.deephaven.plugins.report.Localization;
+import io.deephaven.plugins.report.LocalizedReports;
 import io.deephaven.plugins.report.Report;
 import java.io.File;
 import java.io.IOException;
@@ -26,11 +30,12 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.time.Duration;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 import org.apache.commons.mail.ImageHtmlEmail;
 import org.immutables.value.Value.Check;
 import org.immutables.value.Value.Default;
 import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Lazy;
 
 /** The full configuration object related to sending report-based emails. */
 @Immutable(builder = true, copy = true)
@@ -130,6 +135,30 @@ public abstract class EmailSendingConfig {
    */
   public abstract List<Report> reports();
 
+  /**
+   * The render plans of {@link #reports()}, compiled once per instance. Every {@link #send()}
+   * renders through them if {@link #reuseRenderPlans()}.
+   *
+   * @return the render plans
+   */
+  @Lazy
+  public List<RenderPlan> renderPlans() {
+    return RenderPlan.ofAll(reports());
+  }
+
+  /**
+   * Whether every {@link #send()} renders through the {@link #renderPlans() render plans}, which
+   * are compiled on the first send. Compiling only pays off for an instance that is sent
+   * repeatedly, such as from a scheduled job. Defaults to {@code false}: each send renders the
+   * reports directly.
+   *
+   * @return whether to reuse the render plans
+   */
+  @Default
+  public boolean reuseRenderPlans() {
+    return false;
+  }
+
   /**
    * The lock type. Defaults to {@link LockType#SHARED}.
    *
@@ -141,7 +170,13 @@ public abstract class EmailSendingConfig {
   }
 
   /**
-   * The timeout. Defaults to {@code Duration.ofSeconds(5)}.
+   * The timeout for the whole send. Localization, figure saving and delivery all draw from the same
+   * budget, and the send fails once it is spent. What remains of it when the email is delivered is
+   * split between the SMTP connect timeout and the SMTP read timeout. Defaults to {@code
+   * Duration.ofSeconds(5)}.
+   *
+   * <p>Note: this used to be the timeout of each remote fetch on its own. It now bounds the whole
+   * send, so a send of many items may need a larger timeout than before.
    *
    * @return the timeout
    */
@@ -150,6 +185,16 @@ public abstract class EmailSendingConfig {
     return Duration.ofSeconds(5);
   }
 
+  /**
+   * The localization strategy. Defaults to {@link Localization#sequential()}.
+   *
+   * @return the localization
+   */
+  @Default
+  public Localization localization() {
+    return Localization.sequential();
+  }
+
   /**
    * Creates a copy of this config but with the new value for {@link #lockType()}.
    *
@@ -166,17 +211,33 @@ public abstract class EmailSendingConfig {
    */
   public abstract EmailSendingConfig withTimeout(Duration timeout);
 
+  /**
+   * Creates a copy of this config but with the new value for {@link #localization()}.
+   *
+   * @param localization the localization
+   * @return the new instance
+   */
+  public abstract EmailSendingConfig withLocalization(Localization localization);
+
+  /**
+   * Creates a copy of this config but with the new value for {@link #reuseRenderPlans()}.
+   *
+   * @param reuseRenderPlans whether to reuse the render plans
+   * @return the new instance
+   */
+  public abstract EmailSendingConfig withReuseRenderPlans(boolean reuseRenderPlans);
+
   /** Renders and sends the reports-based email. */
   public final void send() throws Exception {
-    final EmailSendingConfig local =
-        EmailSendingConfig.builder()
-            .from(this)
-            .reports(
-                reports().stream()
-                    .map(r -> r.toLocal(Logger.NULL, timeout()))
-                    .collect(Collectors.toList()))
-            .build();
-    lockType().render(new EmailHtmlRenderer(local)).send();
+    final Deadline deadline = Deadline.after(timeout());
+    try (final LocalizedReports localized =
+        localization().open(reports(), Logger.NULL, deadline)) {
+      final EmailSendingConfig local =
+          EmailSendingConfig.builder().from(this).reports(localized.reports()).build();
+      final Optional<List<RenderPlan>> plans =
+          reuseRenderPlans() ? Optional.of(renderPlans()) : Optional.empty();
+      lockType().render(new EmailHtmlRenderer(local, deadline, plans)).send();
+    }
   }
 
   @Check
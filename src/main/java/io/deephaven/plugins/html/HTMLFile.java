@@ -18,6 +18,9 @@ package io.deephaven.plugins.html;
 import com.fishlib.io.logger.Logger;
 import com.illumon.iris.db.tables.live.LiveTableMonitor;
 import com.illumon.util.FunctionalInterfaces;
+import io.deephaven.plugins.report.Deadline;
+import io.deephaven.plugins.report.Localization;
+import io.deephaven.plugins.report.LocalizedReports;
 import io.deephaven.plugins.report.Report;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -26,7 +29,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 import org.immutables.value.Value;
 
 @Value.Immutable
@@ -68,16 +71,17 @@ public abstract class HTMLFile {
   }
 
   public final void save() throws Exception {
-    final HTMLFile local =
-        HTMLFile.builder()
-            .from(this)
-            .reports(
-                reports().stream()
-                    .map(r -> r.toLocal(Logger.NULL, timeout()))
-                    .collect(Collectors.toList()))
-            .build();
-    final String htmlString = lockType().render(new InlineHtmlFileRenderer(local));
-    writeToFile(htmlString);
+    final Deadline deadline = Deadline.after(timeout());
+    try (final LocalizedReports localized =
+        localization().open(reports(), Logger.NULL, deadline)) {
+      final HTMLFile local = HTMLFile.builder().from(this).reports(localized.reports()).build();
+      final Optional<List<RenderPlan>> plans =
+          reuseRenderPlans() ? Optional.of(renderPlans()) : Optional.empty();
+      final String htmlString =
+          lockType().render(new InlineHtmlFileRenderer(local, deadline, plans));
+      deadline.check("writing " + filePath());
+      writeToFile(htmlString);
+    }
   }
 
   private void writeToFile(String htmlString) throws Exception {
@@ -112,6 +116,29 @@ public abstract class HTMLFile {
    */
   public abstract List<Report> reports();
 
+  /**
+   * The render plans of {@link #reports()}, compiled once per instance. Every {@link #save()}
+   * renders through them if {@link #reuseRenderPlans()}.
+   *
+   * @return the render plans
+   */
+  @Value.Lazy
+  public List<RenderPlan> renderPlans() {
+    return RenderPlan.ofAll(reports());
+  }
+
+  /**
+   * Whether every {@link #save()} renders through the {@link #renderPlans() render plans}, which
+   * are compiled on the first save. Compiling only pays off for an instance that is saved
+   * repeatedly. Defaults to {@code false}: each save renders the reports directly.
+   *
+   * @return whether to reuse the render plans
+   */
+  @Value.Default
+  public boolean reuseRenderPlans() {
+    return false;
+  }
+
   /**
    * The filePath.
    *
@@ -130,7 +157,12 @@ public abstract class HTMLFile {
   }
 
   /**
-   * The timeout. Defaults to {@code Duration.ofSeconds(5)}.
+   * The timeout for the whole save. Localization, figure saving and writing the file all draw from
+   * the same budget, and the save fails once it is spent. Defaults to {@code
+   * Duration.ofSeconds(5)}.
+   *
+   * <p>Note: this used to be the timeout of each remote fetch on its own. It now bounds the whole
+   * save, so a save of many items may need a larger timeout than before.
    *
    * @return the timeout
    */
@@ -139,6 +171,16 @@ public abstract class HTMLFile {
     return Duration.ofSeconds(5);
   }
 
+  /**
+   * The localization strategy. Defaults to {@link Localization#sequential()}.
+   *
+   * @return the localization
+   */
+  @Value.Default
+  public Localization localization() {
+    return Localization.sequential();
+  }
+
   /** The builder. */
   public static class Builder extends ImmutableHTMLFile.Builder {}
 
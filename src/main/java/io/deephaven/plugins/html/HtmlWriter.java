@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.html;
+
+import io.deephaven.plugins.report.Figure;
+import io.deephaven.plugins.report.Group;
+import io.deephaven.plugins.report.Item;
+import io.deephaven.plugins.report.Item.Visitor;
+import io.deephaven.plugins.report.Lazy;
+import io.deephaven.plugins.report.Report;
+import io.deephaven.plugins.report.Scalar;
+import io.deephaven.plugins.report.ScalarLocal;
+import io.deephaven.plugins.report.Table;
+import io.deephaven.plugins.report.Text;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.apache.commons.lang.StringEscapeUtils;
+
+/** Writes indented HTML. Shared by {@link InlineHtmlRenderer} and {@link RenderPlan}. */
+final class HtmlWriter {
+
+  private final StringBuilder html;
+  private final List<Item<?>> context;
+  int depth;
+
+  HtmlWriter(int depth) {
+    this.html = new StringBuilder();
+    this.context = new ArrayList<>();
+    this.depth = depth;
+  }
+
+  static String escape(String raw) {
+    return StringEscapeUtils.escapeHtml(raw);
+  }
+
+  static String type(Item<?> item) {
+    return item.walk(new GetDeephavenDataType()).getOut();
+  }
+
+  /**
+   * The payload of a scalar: its rendered value, as a compact KPI block.
+   *
+   * @param scalar the scalar
+   * @return the html
+   */
+  static String kpi(ScalarLocal scalar) {
+    return String.format("<span class=\"kpi\">%s</span>", escape(scalar.formatted()));
+  }
+
+  void nextLine(String value) {
+    newline();
+    indent();
+    html.append(value);
+  }
+
+  void sameLine(String value) {
+    html.append(value);
+  }
+
+  void startItem(Item<?> item) {
+    final String type = type(item);
+    nextLine(String.format("<div data-deephaven-type=\"%s\">", type));
+    if (item.name().isPresent()) {
+      int hNumber = Math.max(2, Math.min(6, depth - 1));
+      nextLine(String.format("<h%d>%s</h%d>", hNumber, escape(item.name().get()), hNumber));
+    }
+
+    depth += 1;
+    context.add(item);
+  }
+
+  void endItem(Item<?> item) {
+    if (item != context.remove(context.size() - 1)) {
+      throw new IllegalStateException("Expected to pop the same context");
+    }
+    depth -= 1;
+    sameLine("</div>");
+  }
+
+  void text(Text text) {
+    startItem(text);
+    sameLine(escape(text.value()));
+    endItem(text);
+  }
+
+  void startReport(Report report) {
+    nextLine("<div data-deephaven-type=\"report\">");
+    depth += 1;
+
+    nextLine(String.format("<!-- generated at %s -->", escape(report.timestamp().toString())));
+    nextLine(String.format("<!-- %s -->", escape(report.toString())));
+    nextLine(String.format("<!-- %s -->", escape(report.toGroovyishDebug())));
+    nextLine(String.format("<h1>%s</h1>", escape(report.title())));
+  }
+
+  void endReport(Report report) {
+    depth -= 1;
+    sameLine("</div>");
+  }
+
+  /**
+   * Takes everything written so far, leaving this writer empty.
+   *
+   * @return the html
+   */
+  String take() {
+    final String out = html.toString();
+    html.setLength(0);
+    return out;
+  }
+
+  @Override
+  public String toString() {
+    return html.toString();
+  }
+
+  private void indent() {
+    for (int i = 0; i < depth; ++i) {
+      html.append(' ');
+    }
+  }
+
+  private void newline() {
+    html.append('\n');
+  }
+
+  private static class GetDeephavenDataType implements Visitor {
+
+    private String out;
+
+    public String getOut() {
+      return Objects.requireNonNull(out);
+    }
+
+    @Override
+    public void visit(Table<?> table) {
+      out = "table";
+    }
+
+    @Override
+    public void visit(Figure<?> figure) {
+      out = "figure";
+    }
+
+    @Override
+    public void visit(Scalar<?> scalar) {
+      out = "scalar";
+    }
+
+    @Override
+    public void visit(Text text) {
+      out = text.placeholder().isPresent() ? "placeholder" : "text";
+    }
+
+    @Override
+    public void visit(Group group) {
+      out = "group";
+    }
+
+    @Override
+    public void visit(Lazy lazy) {
+      out = "lazy";
+    }
+  }
+}
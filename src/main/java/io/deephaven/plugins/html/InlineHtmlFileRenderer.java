@@ -15,20 +15,27 @@
  */
 package io.deephaven.plugins.html;
 
+import io.deephaven.plugins.report.Deadline;
 import io.deephaven.plugins.report.Figure;
+import io.deephaven.plugins.report.Localization;
 import io.deephaven.plugins.report.Report;
 import java.io.File;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 class InlineHtmlFileRenderer extends InlineHtmlRenderer {
 
   private final HTMLFile htmlFile;
+  private final Optional<List<RenderPlan>> plans;
   private final File saveDirectory;
   private int count = 0;
 
-  InlineHtmlFileRenderer(final HTMLFile htmlFile) {
+  InlineHtmlFileRenderer(
+      final HTMLFile htmlFile, final Deadline deadline, final Optional<List<RenderPlan>> plans) {
+    super(deadline);
     this.htmlFile = Objects.requireNonNull(htmlFile);
+    this.plans = Objects.requireNonNull(plans);
     this.saveDirectory = new File(htmlFile.filePath()).getParentFile();
   }
 
@@ -42,6 +49,16 @@ class InlineHtmlFileRenderer extends InlineHtmlRenderer {
     return htmlFile.reports();
   }
 
+  @Override
+  protected Optional<List<RenderPlan>> plans() {
+    return plans;
+  }
+
+  @Override
+  protected Localization.OnFailure onFailure() {
+    return htmlFile.localization().onFailure();
+  }
+
   @Override
   protected File createFigureFile(Figure<?> figure) {
     final File figureFile =
@@ -17,43 +17,65 @@ package io.deephaven.plugins.html;
 
 import com.fishlib.io.logger.Logger;
 import io.deephaven.plugins.email.Resources;
+import io.deephaven.plugins.report.Deadline;
 import io.deephaven.plugins.report.Figure;
 import io.deephaven.plugins.report.Group;
 import io.deephaven.plugins.report.Item;
 import io.deephaven.plugins.report.Item.Visitor;
+import io.deephaven.plugins.report.Lazy;
+import io.deephaven.plugins.report.Localization;
 import io.deephaven.plugins.report.Report;
 import io.deephaven.plugins.report.SaveFigure;
+import io.deephaven.plugins.report.Scalar;
+import io.deephaven.plugins.report.ScalarLocal;
+import io.deephaven.plugins.report.ScalarPQ;
 import io.deephaven.plugins.report.Table;
 import io.deephaven.plugins.report.TableLocal;
 import io.deephaven.plugins.report.TablePQ;
+import io.deephaven.plugins.report.TableShardedPQ;
 import io.deephaven.plugins.report.Text;
 import java.io.File;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import org.apache.commons.lang.StringEscapeUtils;
+import java.util.Optional;
 
-public abstract class InlineHtmlRenderer implements Visitor, Table.Visitor {
+public abstract class InlineHtmlRenderer implements Visitor, Table.Visitor, Scalar.Visitor {
 
   private static final String INLINE_CSS =
       Resources.toStringUnchecked(InlineHtmlRenderer.class, "inline.css");
 
-  private final StringBuilder html;
-  private final java.util.List<Item<?>> context;
-  private int depth;
+  /** The depth each report is rendered at, as set up by {@link #header()}. */
+  static final int REPORT_DEPTH = 2;
 
-  private final Logger logger;
-  private final Duration timeout;
+  private final HtmlWriter out;
+
+  // note: identical items are shared after localization, so each is only rendered once
+  private final Map<com.illumon.iris.db.tables.Table, String> tableHtml;
+  private final Map<Figure<?>, File> figureFiles;
+  private final Map<Lazy, Item<?>> lazies;
 
-  protected InlineHtmlRenderer() {
-    this.html = new StringBuilder();
-    this.context = new ArrayList<>();
-    this.depth = 0;
+  private final Logger logger;
+  private final Deadline deadline;
+
+  /**
+   * Creates a renderer where saving figures and localizing any remaining remote items draw from the
+   * remaining budget of {@code deadline}.
+   *
+   * @param deadline the deadline
+   */
+  protected InlineHtmlRenderer(Deadline deadline) {
+    this.out = new HtmlWriter(0);
+    this.tableHtml = new IdentityHashMap<>();
+    this.figureFiles = new HashMap<>();
+    this.lazies = new HashMap<>();
 
     this.logger = Logger.NULL;
-    this.timeout = Duration.ofSeconds(5); // todo
+    this.deadline = Objects.requireNonNull(deadline);
   }
 
   protected abstract Trailer trailer();
@@ -62,100 +84,171 @@ public abstract class InlineHtmlRenderer implements Visitor, Table.Visitor {
 
   protected abstract File createFigureFile(final Figure<?> figure);
 
+  /**
+   * The render plans for {@link #reports()}, in the same order. Each plan must have been compiled
+   * from the corresponding report, or from the report it was localized from.
+   *
+   * <p>Defaults to none: each report is rendered by walking it, as compiling a plan only pays off
+   * when it is reused. Renderers for recurring reports should return plans that are compiled once.
+   *
+   * @return the render plans, or empty to render the reports directly
+   */
+  protected Optional<List<RenderPlan>> plans() {
+    return Optional.empty();
+  }
+
+  /**
+   * What to do when a remote item that is still remote at render time fails to localize, or misses
+   * the deadline. Under {@link Localization.OnFailure#PLACEHOLDER}, only that item is rendered as a
+   * placeholder.
+   *
+   * <p>Defaults to {@link Localization.OnFailure#FAIL}.
+   *
+   * @return the failure policy
+   */
+  protected Localization.OnFailure onFailure() {
+    return Localization.OnFailure.FAIL;
+  }
+
   void tailer() {
     if (trailer().html().isPresent()) {
-      nextLine("<div data-deephaven-type=\"trailer\">");
-      sameLine(trailer().html().get());
-      sameLine("</div>");
+      out.nextLine("<div data-deephaven-type=\"trailer\">");
+      out.sameLine(trailer().html().get());
+      out.sameLine("</div>");
     }
-    depth -= 1;
-    nextLine("</body>");
-    depth -= 1;
-    nextLine("</html>");
+    out.depth -= 1;
+    out.nextLine("</body>");
+    out.depth -= 1;
+    out.nextLine("</html>");
   }
 
   void header() {
-    sameLine("<html>");
-    depth += 1;
-    nextLine("<head>");
-    depth += 1;
-    nextLine("<style>");
-    depth += 1;
+    out.sameLine("<html>");
+    out.depth += 1;
+    out.nextLine("<head>");
+    out.depth += 1;
+    out.nextLine("<style>");
+    out.depth += 1;
 
     for (String cssPart : splitNewline()) {
-      nextLine(cssPart);
+      out.nextLine(cssPart);
     }
 
-    depth -= 1;
-    nextLine("</style>");
-    depth -= 1;
-    nextLine("</head>");
-    nextLine("<body>");
-    depth += 1;
-  }
-
-  private void addReport(Report report) {
-    startReport(report);
-    report.item().walk(this);
-    endReport(report);
+    out.depth -= 1;
+    out.nextLine("</style>");
+    out.depth -= 1;
+    out.nextLine("</head>");
+    out.nextLine("<body>");
+    out.depth += 1;
   }
 
   public String renderHtml() {
     createHtml();
-    return html.toString();
+    return out.toString();
   }
 
   private void createHtml() {
     header();
-    for (Report report : reports()) {
-      addReport(report);
+    final List<Report> reports = reports();
+    final Optional<List<RenderPlan>> plans = plans();
+    if (!plans.isPresent()) {
+      walk(reports);
+    } else {
+      if (reports.size() != plans.get().size()) {
+        throw new IllegalStateException("Expected one render plan per report");
+      }
+      for (int i = 0; i < reports.size(); ++i) {
+        plans.get().get(i).render(this, reports.get(i));
+      }
     }
     tailer();
   }
 
   // for testing
   String getHtml() {
-    return html.toString();
+    return out.toString();
+  }
+
+  private void walk(List<Report> reports) {
+    for (Report report : reports) {
+      startReport(report);
+      report.item().walk(this);
+      endReport(report);
+    }
+  }
+
+  void startReport(Report report) {
+    out.startReport(report);
+  }
+
+  void endReport(Report report) {
+    out.endReport(report);
+  }
+
+  void append(String html) {
+    out.sameLine(html);
+  }
+
+  /**
+   * Renders a slot of a {@link RenderPlan}. When {@code item} is of the expected type, only its
+   * payload is rendered between the pre-rendered {@code prefix} and {@code suffix}; otherwise, such
+   * as for placeholders and resolved lazy items, the whole item is rendered at {@code depth}.
+   */
+  void slot(Item<?> item, int depth, String type, String prefix, String suffix) {
+    if (type != null && type.equals(HtmlWriter.type(item))) {
+      out.sameLine(prefix);
+      item.walk(new Payload());
+      out.sameLine(suffix);
+    } else {
+      final int saved = out.depth;
+      out.depth = depth;
+      item.walk(this);
+      out.depth = saved;
+    }
   }
 
   @Override
   public void visit(Figure<?> figure) {
-    startItem(figure);
+    out.startItem(figure);
+    out.sameLine(figureHtml(figure));
+    out.endItem(figure);
+  }
 
+  private String figureHtml(Figure<?> figure) {
     // todo: could be a bit nicer if figure presented us an inputstream, and we could use a
     // custom DataSourceResolver w/ the emailer.
 
-    final File file = createFigureFile(figure);
-
-    figure.walk(SaveFigure.builder().file(file).log(logger).timeout(timeout).build());
+    final File file = figureFiles.computeIfAbsent(figure, this::saveFigure);
 
     final String absolutePath = file.getAbsolutePath();
 
     if (figure.size().isPresent()) {
       final int width = figure.size().get().width();
       final int height = figure.size().get().height();
-      sameLine(
-          String.format(
-              "<img src=\"%s\" width=\"%d\" height=\"%d\" style=\"display: block;\" />",
-              absolutePath, width, height));
-    } else {
-      sameLine(String.format("<img src=\"%s\" style=\"display: block;\" />", absolutePath));
+      return String.format(
+          "<img src=\"%s\" width=\"%d\" height=\"%d\" style=\"display: block;\" />",
+          absolutePath, width, height);
     }
+    return String.format("<img src=\"%s\" style=\"display: block;\" />", absolutePath);
+  }
 
-    endItem(figure);
+  private File saveFigure(Figure<?> figure) {
+    final File file = createFigureFile(figure);
+    figure.walk(SaveFigure.builder().file(file).log(logger).deadline(deadline).build());
+    return file;
   }
 
   @Override
   public void visit(Group group) {
-    startItem(group);
-    nextLine("<ul>");
+    out.startItem(group);
+    out.nextLine("<ul>");
     for (Item<?> item : group.items()) {
-      nextLine("<li>");
+      out.nextLine("<li>");
       item.walk(this);
-      sameLine("</li>");
+      out.sameLine("</li>");
     }
-    nextLine("</ul>");
-    endItem(group);
+    out.nextLine("</ul>");
+    out.endItem(group);
   }
 
   @Override
@@ -165,124 +258,164 @@ public abstract class InlineHtmlRenderer implements Visitor, Table.Visitor {
 
   @Override
   public void visit(TableLocal table) {
-    startItem(table);
-    sameLine(TableToHtml.html(table.value()));
-    endItem(table);
+    out.startItem(table);
+    out.sameLine(tableHtml(table));
+    out.endItem(table);
   }
 
   @Override
   public void visit(TablePQ table) {
-    startItem(table);
-    final TableLocal local;
-    try {
-      local = table.toLocal(logger, timeout);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
-    sameLine(TableToHtml.html(local.value()));
-    endItem(table);
+    out.startItem(table);
+    out.sameLine(tableHtml(table));
+    out.endItem(table);
   }
 
   @Override
-  public void visit(Text text) {
-    startItem(text);
-    sameLine(escape(text.value()));
-    endItem(text);
+  public void visit(TableShardedPQ table) {
+    out.startItem(table);
+    out.sameLine(tableHtml(table));
+    out.endItem(table);
   }
 
-  private static String escape(String raw) {
-    return StringEscapeUtils.escapeHtml(raw);
+  private String tableHtml(TableLocal table) {
+    return tableHtml.computeIfAbsent(table.value(), TableToHtml::html);
   }
 
-  private void indent() {
-    for (int i = 0; i < depth; ++i) {
-      html.append(' ');
+  private String tableHtml(TablePQ table) {
+    final long start = System.nanoTime();
+    try {
+      return TableToHtml.html(table.toLocal(logger, deadline.check("localizing a table")).value());
+    } catch (Exception e) {
+      return unavailable(table, e, start);
     }
   }
 
-  private static List<String> splitNewline() {
-    return Arrays.asList(InlineHtmlRenderer.INLINE_CSS.split(System.lineSeparator()));
+  private String tableHtml(TableShardedPQ table) {
+    final long start = System.nanoTime();
+    try {
+      return TableToHtml.html(
+          table.toLocal(logger, deadline.check("localizing a sharded table")).value());
+    } catch (Exception e) {
+      return unavailable(table, e, start);
+    }
   }
 
-  private void nextLine(String value) {
-    newline();
-    indent();
-    html.append(value);
+  /**
+   * Handles a remote item that could not be localized, as {@link #onFailure()} says: either fails
+   * the render, or returns the placeholder that {@link Localization.OnFailure#PLACEHOLDER} would
+   * create, so that only that item is lost.
+   */
+  private String unavailable(Item<?> item, Exception reason, long start) {
+    if (reason instanceof InterruptedException) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(reason);
+    }
+    if (onFailure() == Localization.OnFailure.FAIL) {
+      throw new RuntimeException(reason);
+    }
+    return HtmlWriter.escape(
+        Localization.placeholder(item, reason, Duration.ofNanos(System.nanoTime() - start))
+            .value());
   }
 
-  private void sameLine(String value) {
-    html.append(value);
+  @Override
+  public void visit(Scalar<?> scalar) {
+    scalar.walk((Scalar.Visitor) this);
   }
 
-  private void newline() {
-    html.append('\n');
+  @Override
+  public void visit(ScalarLocal scalar) {
+    out.startItem(scalar);
+    out.sameLine(HtmlWriter.kpi(scalar));
+    out.endItem(scalar);
   }
 
-  private void startItem(Item<?> item) {
-    final String type = GetDeephavenDataType.getType(item);
-    nextLine(String.format("<div data-deephaven-type=\"%s\">", type));
-    if (item.name().isPresent()) {
-      int hNumber = Math.max(2, Math.min(6, depth - 1));
-      nextLine(String.format("<h%d>%s</h%d>", hNumber, escape(item.name().get()), hNumber));
-    }
-
-    depth += 1;
-    context.add(item);
+  @Override
+  public void visit(ScalarPQ scalar) {
+    out.startItem(scalar);
+    out.sameLine(scalarHtml(scalar));
+    out.endItem(scalar);
   }
 
-  private void endItem(Item<?> item) {
-    if (item != context.remove(context.size() - 1)) {
-      throw new IllegalStateException("Expected to pop the same context");
+  private String scalarHtml(ScalarPQ scalar) {
+    final long start = System.nanoTime();
+    try {
+      return HtmlWriter.kpi(scalar.toLocal(logger, deadline.check("localizing a scalar")));
+    } catch (Exception e) {
+      return unavailable(scalar, e, start);
     }
-    depth -= 1;
-    sameLine("</div>");
   }
 
-  private void startReport(Report report) {
-    nextLine("<div data-deephaven-type=\"report\">");
-    depth += 1;
+  @Override
+  public void visit(Text text) {
+    out.text(text);
+  }
 
-    nextLine(String.format("<!-- generated at %s -->", escape(report.timestamp().toString())));
-    nextLine(String.format("<!-- %s -->", escape(report.toString())));
-    nextLine(String.format("<!-- %s -->", escape(report.toGroovyishDebug())));
-    nextLine(String.format("<h1>%s</h1>", escape(report.title())));
+  @Override
+  public void visit(Lazy lazy) {
+    lazies.computeIfAbsent(lazy, Lazy::get).walk(this);
   }
 
-  private void endReport(Report report) {
-    depth -= 1;
-    sameLine("</div>");
+  private static List<String> splitNewline() {
+    return Arrays.asList(InlineHtmlRenderer.INLINE_CSS.split(System.lineSeparator()));
   }
 
-  private static class GetDeephavenDataType implements Visitor {
+  /** Renders only the payload of a table, figure or scalar, without the surrounding item. */
+  private class Payload implements Visitor, Table.Visitor, Scalar.Visitor {
 
-    static String getType(Item<?> item) {
-      return item.walk(new GetDeephavenDataType()).getOut();
+    @Override
+    public void visit(Table<?> table) {
+      table.walk((Table.Visitor) this);
     }
 
-    private String out;
+    @Override
+    public void visit(TableLocal table) {
+      out.sameLine(tableHtml(table));
+    }
 
-    public String getOut() {
-      return Objects.requireNonNull(out);
+    @Override
+    public void visit(TablePQ table) {
+      out.sameLine(tableHtml(table));
     }
 
     @Override
-    public void visit(Table<?> table) {
-      out = "table";
+    public void visit(TableShardedPQ table) {
+      out.sameLine(tableHtml(table));
     }
 
     @Override
     public void visit(Figure<?> figure) {
-      out = "figure";
+      out.sameLine(figureHtml(figure));
+    }
+
+    @Override
+    public void visit(Scalar<?> scalar) {
+      scalar.walk((Scalar.Visitor) this);
+    }
+
+    @Override
+    public void visit(ScalarLocal scalar) {
+      out.sameLine(HtmlWriter.kpi(scalar));
+    }
+
+    @Override
+    public void visit(ScalarPQ scalar) {
+      out.sameLine(scalarHtml(scalar));
     }
 
     @Override
     public void visit(Text text) {
-      out = "text";
+      throw new IllegalStateException("Text has no payload");
     }
 
     @Override
     public void visit(Group group) {
-      out = "group";
+      throw new IllegalStateException("Group has no payload");
+    }
+
+    @Override
+    public void visit(Lazy lazy) {
+      throw new IllegalStateException("Lazy has no payload");
     }
   }
 }
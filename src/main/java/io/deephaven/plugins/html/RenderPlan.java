@@ -0,0 +1,334 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.html;
+
+import io.deephaven.plugins.report.Figure;
+import io.deephaven.plugins.report.Group;
+import io.deephaven.plugins.report.Item;
+import io.deephaven.plugins.report.Lazy;
+import io.deephaven.plugins.report.Report;
+import io.deephaven.plugins.report.Scalar;
+import io.deephaven.plugins.report.Table;
+import io.deephaven.plugins.report.Text;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A {@link Report} compiled once into a flat sequence of pre-rendered HTML fragments and slots. The
+ * headings, texts and groups are rendered, and escaped, when the plan is compiled; each render only
+ * fills the slots with the payloads of the tables, figures and scalars, and with the items that
+ * {@link Lazy lazy} items resolve to. The report's header, with its debug comments, is rendered
+ * from the report being rendered, so that it describes the localized report.
+ *
+ * <p>A plan compiled from a report with remote items can render the localized report, since
+ * localization keeps the structure of the report. Each render checks that the report has the
+ * structure the plan was compiled from: the same groups and texts, with the same attributes, and a
+ * table, figure, scalar, lazy item or placeholder of the same name wherever the plan has a slot.
+ * The texts, and the attributes of the groups, are shared with the localized report, so they are
+ * compared by identity first.
+ */
+public final class RenderPlan {
+
+  /**
+   * Compiles the report.
+   *
+   * @param report the report
+   * @return the render plan
+   */
+  public static RenderPlan of(Report report) {
+    return new Compiler().compile(report);
+  }
+
+  /**
+   * Compiles each of the reports.
+   *
+   * @param reports the reports
+   * @return the render plans, in the same order
+   */
+  public static List<RenderPlan> ofAll(List<Report> reports) {
+    final List<RenderPlan> plans = new ArrayList<>(reports.size());
+    for (Report report : reports) {
+      plans.add(of(report));
+    }
+    return Collections.unmodifiableList(plans);
+  }
+
+  private final Report report;
+  private final List<Check> checks;
+  private final List<Segment> segments;
+  private final int slots;
+
+  private RenderPlan(Report report, List<Check> checks, List<Segment> segments, int slots) {
+    this.report = Objects.requireNonNull(report);
+    this.checks = Collections.unmodifiableList(checks);
+    this.segments = Collections.unmodifiableList(segments);
+    this.slots = slots;
+  }
+
+  /**
+   * The report this plan was compiled from.
+   *
+   * @return the report
+   */
+  public Report report() {
+    return report;
+  }
+
+  /**
+   * The number of slots, filled on each render.
+   *
+   * @return the number of slots
+   */
+  public int slots() {
+    return slots;
+  }
+
+  void render(InlineHtmlRenderer renderer, Report report) {
+    if (!this.report.title().equals(report.title())
+        || !this.report.timestamp().equals(report.timestamp())
+        || !matches(report.item())) {
+      throw new IllegalArgumentException(
+          String.format("Render plan for '%s' does not match '%s'", this.report, report));
+    }
+    renderer.startReport(report);
+    for (Segment segment : segments) {
+      segment.render(renderer, report.item());
+    }
+    renderer.endReport(report);
+  }
+
+  private boolean matches(Item<?> root) {
+    for (Check check : checks) {
+      final Item<?> item = at(root, check.path);
+      if (item == null || !check.matches(item)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** The item at {@code path}, or null if the report does not have the structure of the plan. */
+  private static Item<?> at(Item<?> root, int[] path) {
+    Item<?> item = root;
+    for (int index : path) {
+      if (!(item instanceof Group) || index >= ((Group) item).items().size()) {
+        return null;
+      }
+      item = ((Group) item).items().get(index);
+    }
+    return item;
+  }
+
+  /** A check of the item at a path against the compiled structure. */
+  private abstract static class Check {
+    final int[] path;
+
+    Check(int[] path) {
+      this.path = Objects.requireNonNull(path);
+    }
+
+    abstract boolean matches(Item<?> item);
+  }
+
+  /** A text, rendered into the fragments, must be equal to the compiled one. */
+  private static final class TextCheck extends Check {
+    private final Text text;
+
+    TextCheck(int[] path, Text text) {
+      super(path);
+      this.text = Objects.requireNonNull(text);
+    }
+
+    @Override
+    boolean matches(Item<?> item) {
+      return item == text || text.equals(item);
+    }
+  }
+
+  /**
+   * A group must have the same number of items, and the same attributes, as the compiled one. Its
+   * items are checked on their own.
+   */
+  private static final class GroupCheck extends Check {
+    private final Group group;
+
+    GroupCheck(int[] path, Group group) {
+      super(path);
+      this.group = Objects.requireNonNull(group);
+    }
+
+    @Override
+    boolean matches(Item<?> item) {
+      return item instanceof Group
+          && ((Group) item).items().size() == group.items().size()
+          && group.hasSameAttributes((Group) item);
+    }
+  }
+
+  /** A slot only keeps its name: the rest of it is rendered from the item on each render. */
+  private static final class SlotCheck extends Check {
+    private final String name;
+
+    SlotCheck(int[] path, String name) {
+      super(path);
+      this.name = name;
+    }
+
+    @Override
+    boolean matches(Item<?> item) {
+      return Objects.equals(name, item.name().orElse(null));
+    }
+  }
+
+  private abstract static class Segment {
+    abstract void render(InlineHtmlRenderer renderer, Item<?> root);
+  }
+
+  private static final class Fragment extends Segment {
+    private final String html;
+
+    Fragment(String html) {
+      this.html = Objects.requireNonNull(html);
+    }
+
+    @Override
+    void render(InlineHtmlRenderer renderer, Item<?> root) {
+      renderer.append(html);
+    }
+  }
+
+  private static final class Slot extends Segment {
+    private final int[] path;
+    private final int depth;
+    private final String type;
+    private final String prefix;
+    private final String suffix;
+
+    Slot(int[] path, int depth, String type, String prefix, String suffix) {
+      this.path = Objects.requireNonNull(path);
+      this.depth = depth;
+      this.type = type;
+      this.prefix = prefix;
+      this.suffix = suffix;
+    }
+
+    @Override
+    void render(InlineHtmlRenderer renderer, Item<?> root) {
+      // note: the path was checked before rendering
+      renderer.slot(Objects.requireNonNull(at(root, path)), depth, type, prefix, suffix);
+    }
+  }
+
+  private static final class Compiler implements Item.Visitor {
+    // note: the report's header is rendered on each render, and takes up one level
+    private final HtmlWriter out = new HtmlWriter(InlineHtmlRenderer.REPORT_DEPTH + 1);
+    private final List<Check> checks = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Integer> path = new ArrayList<>();
+    private int slots;
+
+    RenderPlan compile(Report report) {
+      report.item().walk(this);
+      flush();
+      return new RenderPlan(report, checks, segments, slots);
+    }
+
+    @Override
+    public void visit(Table<?> table) {
+      slot(table, "table");
+    }
+
+    @Override
+    public void visit(Figure<?> figure) {
+      slot(figure, "figure");
+    }
+
+    @Override
+    public void visit(Scalar<?> scalar) {
+      slot(scalar, "scalar");
+    }
+
+    @Override
+    public void visit(Text text) {
+      if (text.placeholder().isPresent()) {
+        // note: stands in for a remote item, which may be there instead on the next render
+        slot(text);
+        return;
+      }
+      checks.add(new TextCheck(path(), text));
+      out.text(text);
+    }
+
+    @Override
+    public void visit(Group group) {
+      checks.add(new GroupCheck(path(), group));
+      out.startItem(group);
+      out.nextLine("<ul>");
+      for (int i = 0; i < group.items().size(); ++i) {
+        out.nextLine("<li>");
+        path.add(i);
+        group.items().get(i).walk(this);
+        path.remove(path.size() - 1);
+        out.sameLine("</li>");
+      }
+      out.nextLine("</ul>");
+      out.endItem(group);
+    }
+
+    @Override
+    public void visit(Lazy lazy) {
+      slot(lazy);
+    }
+
+    private void slot(Item<?> item) {
+      flush();
+      final int[] path = path();
+      checks.add(new SlotCheck(path, item.name().orElse(null)));
+      segments.add(new Slot(path, out.depth, null, null, null));
+      ++slots;
+    }
+
+    private void slot(Item<?> item, String type) {
+      flush();
+      final int[] path = path();
+      final int depth = out.depth;
+      out.startItem(item);
+      final String prefix = out.take();
+      out.endItem(item);
+      final String suffix = out.take();
+      checks.add(new SlotCheck(path, item.name().orElse(null)));
+      segments.add(new Slot(path, depth, type, prefix, suffix));
+      ++slots;
+    }
+
+    private void flush() {
+      final String html = out.take();
+      if (!html.isEmpty()) {
+        segments.add(new Fragment(html));
+      }
+    }
+
+    private int[] path() {
+      final int[] indices = new int[path.size()];
+      for (int i = 0; i < indices.length; ++i) {
+        indices[i] = path.get(i);
+      }
+      return indices;
+    }
+  }
+}
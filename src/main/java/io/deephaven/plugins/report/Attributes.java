@@ -15,6 +15,8 @@
  */
 package io.deephaven.plugins.report;
 
+import java.util.Map;
+
 public interface Attributes<Self extends Attributes<Self>> extends Iterable<Attribute<?, Self>> {
 
   <T> Attribute<T, Self> attribute(String key, Class<T> clazz);
@@ -27,4 +29,13 @@ public interface Attributes<Self extends Attributes<Self>> extends Iterable<Attr
    * @return the new item
    */
   Self withAttribute(String key, Object value);
+
+  /**
+   * Creates a new self with the additional attributes, in a single copy. Attributes with the same
+   * key are replaced. Everything else is shared with this, and not copied.
+   *
+   * @param attributes the attributes
+   * @return the new item
+   */
+  Self withAttributes(Map<String, ?> attributes);
 }
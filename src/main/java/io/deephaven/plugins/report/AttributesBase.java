@@ -15,7 +15,9 @@
  */
 package io.deephaven.plugins.report;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
@@ -27,6 +29,27 @@ public abstract class AttributesBase<Self extends AttributesBase<Self>>
 
   abstract Map<String, Object> attributes();
 
+  final Map<String, Object> plusAttribute(String key, Object value) {
+    return plusAttributes(Collections.singletonMap(key, value));
+  }
+
+  final Map<String, Object> plusAttributes(Map<String, ?> more) {
+    final Map<String, Object> out = new LinkedHashMap<>(attributes());
+    out.putAll(more);
+    return out;
+  }
+
+  /**
+   * Whether {@code other} has the same attributes as this. Copies share their attributes when only
+   * other state changes, so those are compared by identity first.
+   *
+   * @param other the other
+   * @return true if the attributes are equal
+   */
+  public final boolean hasSameAttributes(AttributesBase<?> other) {
+    return attributes() == other.attributes() || attributes().equals(other.attributes());
+  }
+
   @Override
   public final <T> Attribute<T, Self> attribute(String key, Class<T> clazz) {
     return new AttributeImpl<>(key, clazz);
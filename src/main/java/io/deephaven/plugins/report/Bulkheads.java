@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.controller.utils.PersistentQueryTableHelper.HelperPersistentQueryClient;
+import com.illumon.util.SafeCloseable;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Limits on the number of concurrent fetches per persistent-query, and per worker host. Fetches
+ * over a limit wait their turn, first come first served, so that a host with many of the
+ * persistent-queries of a report is not flooded while the other hosts sit idle.
+ *
+ * <p>Share one instance between every {@link Localization} that should be limited together.
+ *
+ * @see Localization#bulkheads()
+ */
+public final class Bulkheads {
+
+  /**
+   * No limits.
+   *
+   * @return the bulkheads
+   */
+  public static Bulkheads unlimited() {
+    return UNLIMITED;
+  }
+
+  private static final Bulkheads UNLIMITED = new Bulkheads(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+  /** The system property with the per-host limit of {@link #getDefault()}. */
+  static final String DEFAULT_PER_HOST_PROPERTY = "io.deephaven.plugins.report.Bulkheads.perHost";
+
+  /** The system property with the per-persistent-query limit of {@link #getDefault()}. */
+  static final String DEFAULT_PER_PQ_PROPERTY = "io.deephaven.plugins.report.Bulkheads.perPq";
+
+  /**
+   * The default bulkheads, used by {@link TablePQ#toLocal(Logger, Duration)}, {@link
+   * TableShardedPQ#toLocal(Logger, Duration)}, {@link FigurePQ#toLocal(Logger, Duration)} and
+   * {@link ScalarPQ#toLocal(Logger, Duration)}. Pass them to {@link
+   * Localization#withBulkheads(Bulkheads)} to limit a localization together with those fetches.
+   *
+   * <p>The default bulkheads have no limits, unless set by the system properties {@value
+   * #DEFAULT_PER_HOST_PROPERTY} and {@value #DEFAULT_PER_PQ_PROPERTY}, read on first use.
+   *
+   * @return the default bulkheads
+   */
+  public static Bulkheads getDefault() {
+    return Holder.DEFAULT;
+  }
+
+  private static class Holder {
+    private static final Bulkheads DEFAULT =
+        new Bulkheads(
+            Integer.getInteger(DEFAULT_PER_HOST_PROPERTY, Integer.MAX_VALUE),
+            Integer.getInteger(DEFAULT_PER_PQ_PROPERTY, Integer.MAX_VALUE));
+  }
+
+  private final int perHost;
+  private final int perPq;
+  private final Map<String, Semaphore> hosts;
+  private final Map<PQ, Semaphore> pqs;
+
+  /**
+   * Constructs new bulkheads.
+   *
+   * @param perHost the maximum number of concurrent fetches from the same worker host
+   * @param perPq the maximum number of concurrent fetches from the same persistent-query
+   */
+  public Bulkheads(int perHost, int perPq) {
+    if (perHost <= 0) {
+      throw new IllegalArgumentException("perHost must be positive");
+    }
+    if (perPq <= 0) {
+      throw new IllegalArgumentException("perPq must be positive");
+    }
+    this.perHost = perHost;
+    this.perPq = perPq;
+    this.hosts = new ConcurrentHashMap<>();
+    this.pqs = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * The maximum number of concurrent fetches from the same worker host.
+   *
+   * @return the per-host limit
+   */
+  public int perHost() {
+    return perHost;
+  }
+
+  /**
+   * The maximum number of concurrent fetches from the same persistent-query.
+   *
+   * @return the per-persistent-query limit
+   */
+  public int perPq() {
+    return perPq;
+  }
+
+  /**
+   * Waits for a turn to fetch from {@code pq}, on the worker host of {@code client}.
+   *
+   * @param pq the persistent-query
+   * @param client the client for {@code pq}
+   * @param deadline the deadline
+   * @return the permit, to be closed once the fetch is done
+   * @throws TimeoutException if the deadline passes first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  Permit acquire(PQ pq, HelperPersistentQueryClient client, Deadline deadline)
+      throws TimeoutException, InterruptedException {
+    final String host = client.getPersistentQueryClient().getHost();
+    // note: always the persistent-query first, then the host, so waiters never deadlock
+    final Semaphore pqPermits = pqs.computeIfAbsent(pq, k -> new Semaphore(perPq, true));
+    final Semaphore hostPermits = hosts.computeIfAbsent(host, k -> new Semaphore(perHost, true));
+    await(pqPermits, deadline, "fetching from " + PQToGroovyish.toString(pq));
+    try {
+      await(hostPermits, deadline, "fetching from host " + host);
+    } catch (Exception e) {
+      pqPermits.release();
+      throw e;
+    }
+    return new Permit(pqPermits, hostPermits);
+  }
+
+  private static void await(Semaphore permits, Deadline deadline, String stage)
+      throws TimeoutException, InterruptedException {
+    if (!permits.tryAcquire(deadline.check(stage).toNanos(), TimeUnit.NANOSECONDS)) {
+      throw new TimeoutException(
+          String.format(
+              "Deadline of %s exceeded waiting for a turn before %s", deadline.budget(), stage));
+    }
+  }
+
+  /** A turn to fetch. Closing the permit lets the next fetch take its turn. */
+  static final class Permit implements SafeCloseable {
+    private final Semaphore pq;
+    private final Semaphore host;
+
+    private Permit(Semaphore pq, Semaphore host) {
+      this.pq = Objects.requireNonNull(pq);
+      this.host = Objects.requireNonNull(host);
+    }
+
+    @Override
+    public void close() {
+      host.release();
+      pq.release();
+    }
+  }
+}
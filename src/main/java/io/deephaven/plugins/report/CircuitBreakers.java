@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breakers, one per persistent-query. Only the remote calls to a persistent-query count:
+ * connecting to it, or waiting for a turn to call it, does not. After {@link #failureThreshold()}
+ * consecutive failures, the breaker of a persistent-query opens, and fetches from it fail fast with
+ * an {@link OpenException} instead of waiting out their timeout. Once {@link #openFor()} has
+ * passed, a single fetch is let through as a probe: if it succeeds the breaker closes, otherwise it
+ * opens again.
+ *
+ * <p>Share one instance between every {@link Localization} that should see the same breakers. The
+ * states are visible through {@link #states()}, for monitoring.
+ *
+ * @see Localization#circuitBreakers()
+ */
+public final class CircuitBreakers {
+
+  /** The state of a circuit breaker. */
+  public enum State {
+    /** Fetches go through. */
+    CLOSED,
+
+    /** Fetches fail fast. */
+    OPEN,
+
+    /** A single probe goes through, other fetches fail fast until the probe is done. */
+    HALF_OPEN
+  }
+
+  /** Thrown when a fetch is refused by an open circuit breaker. */
+  public static final class OpenException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    OpenException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Circuit breakers that never open. Fetches are called directly, and no breakers are kept.
+   *
+   * @return the circuit breakers
+   */
+  public static CircuitBreakers disabled() {
+    return DISABLED;
+  }
+
+  private static final CircuitBreakers DISABLED = new CircuitBreakers();
+
+  private final int failureThreshold;
+  private final Duration openFor;
+  private final Map<PQ, Breaker> breakers;
+
+  /**
+   * Constructs new circuit breakers.
+   *
+   * @param failureThreshold the number of consecutive failures that opens a breaker
+   * @param openFor how long a breaker stays open before it lets a probe through
+   */
+  public CircuitBreakers(int failureThreshold, Duration openFor) {
+    if (failureThreshold <= 0) {
+      throw new IllegalArgumentException("failureThreshold must be positive");
+    }
+    if (openFor.isNegative()) {
+      throw new IllegalArgumentException("openFor must not be negative");
+    }
+    this.failureThreshold = failureThreshold;
+    this.openFor = openFor;
+    this.breakers = new ConcurrentHashMap<>();
+  }
+
+  private CircuitBreakers() {
+    this.failureThreshold = Integer.MAX_VALUE;
+    this.openFor = Duration.ZERO;
+    this.breakers = Collections.emptyMap();
+  }
+
+  /**
+   * The number of consecutive failures that opens a breaker.
+   *
+   * @return the failure threshold
+   */
+  public int failureThreshold() {
+    return failureThreshold;
+  }
+
+  /**
+   * How long a breaker stays open before it lets a probe through.
+   *
+   * @return the open duration
+   */
+  public Duration openFor() {
+    return openFor;
+  }
+
+  /**
+   * The state of the breaker of {@code pq}.
+   *
+   * @param pq the persistent-query
+   * @return the state, {@link State#CLOSED} if {@code pq} was never fetched from
+   */
+  public State state(PQ pq) {
+    final Breaker breaker = breakers.get(pq);
+    return breaker == null ? State.CLOSED : breaker.state();
+  }
+
+  /**
+   * The states of the breakers of every persistent-query fetched from so far.
+   *
+   * @return the states
+   */
+  public Map<PQ, State> states() {
+    final Map<PQ, State> out = new LinkedHashMap<>();
+    for (Map.Entry<PQ, Breaker> e : breakers.entrySet()) {
+      out.put(e.getKey(), e.getValue().state());
+    }
+    return Collections.unmodifiableMap(out);
+  }
+
+  /**
+   * Closes the breaker of {@code pq}, such as once the persistent-query is known to be back.
+   *
+   * @param pq the persistent-query
+   */
+  public void reset(PQ pq) {
+    breakers.remove(pq);
+  }
+
+  /**
+   * Fails fast if the breaker of {@code pq} is open, such as before connecting to it. Unlike {@link
+   * #call(PQ, Callable)}, this does not take the probe of a half-open breaker.
+   *
+   * @param pq the persistent-query
+   * @throws OpenException if the breaker is open
+   */
+  void check(PQ pq) throws OpenException {
+    final Breaker breaker = breakers.get(pq);
+    if (breaker != null) {
+      breaker.check(pq);
+    }
+  }
+
+  /**
+   * Calls {@code fetch} through the breaker of {@code pq}. An interrupted fetch, such as a hedged
+   * fetch that lost, counts neither as a success nor a failure.
+   *
+   * @param pq the persistent-query
+   * @param fetch the fetch
+   * @param <T> the result type
+   * @return the result of {@code fetch}
+   * @throws OpenException if the breaker is open
+   * @throws Exception if {@code fetch} fails
+   */
+  <T> T call(PQ pq, Callable<T> fetch) throws Exception {
+    if (this == DISABLED) {
+      return fetch.call();
+    }
+    final Breaker breaker = breakers.computeIfAbsent(pq, k -> new Breaker());
+    final boolean probe = breaker.enter(pq);
+    boolean done = false;
+    try {
+      final T out = fetch.call();
+      breaker.succeeded();
+      done = true;
+      return out;
+    } catch (InterruptedException e) {
+      throw e;
+    } catch (Exception e) {
+      if (!Thread.currentThread().isInterrupted()) {
+        breaker.failed();
+        done = true;
+      }
+      throw e;
+    } finally {
+      if (!done && probe) {
+        breaker.abandoned();
+      }
+    }
+  }
+
+  private final class Breaker {
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean probing;
+
+    synchronized State state() {
+      return state;
+    }
+
+    synchronized void check(PQ pq) throws OpenException {
+      if (state == State.OPEN && System.nanoTime() - openedAt >= openFor.toNanos()) {
+        state = State.HALF_OPEN;
+      }
+      if (state == State.OPEN || (state == State.HALF_OPEN && probing)) {
+        throw new OpenException(
+            String.format(
+                "Circuit breaker of %s is open after %d consecutive failures",
+                PQToGroovyish.toString(pq), failures));
+      }
+    }
+
+    /** Returns whether the call took the probe, so only that call gives it back if abandoned. */
+    synchronized boolean enter(PQ pq) throws OpenException {
+      check(pq);
+      if (state == State.HALF_OPEN) {
+        probing = true;
+        return true;
+      }
+      return false;
+    }
+
+    synchronized void succeeded() {
+      state = State.CLOSED;
+      failures = 0;
+      probing = false;
+    }
+
+    synchronized void failed() {
+      ++failures;
+      if (state == State.HALF_OPEN || failures >= failureThreshold) {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+      }
+      probing = false;
+    }
+
+    synchronized void abandoned() {
+      probing = false;
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A fixed point in time by which a whole send must complete. Every stage of a send (localization,
+ * figure saving and delivery) draws from the same remaining budget, so the worst case of a send is
+ * bounded by the budget regardless of the number of items in the reports.
+ */
+public final class Deadline {
+
+  /**
+   * A deadline that expires {@code budget} from now.
+   *
+   * @param budget the budget
+   * @return the deadline
+   */
+  public static Deadline after(Duration budget) {
+    if (budget.isNegative()) {
+      throw new IllegalArgumentException("budget must be non-negative");
+    }
+    return new Deadline(budget, System.nanoTime() + budget.toNanos());
+  }
+
+  private final Duration budget;
+  private final long deadlineNanos;
+
+  private Deadline(Duration budget, long deadlineNanos) {
+    this.budget = Objects.requireNonNull(budget);
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * A deadline that expires {@code timeout} from now, or at this deadline, whichever is earlier.
+   *
+   * @param timeout the timeout
+   * @return the deadline
+   */
+  public Deadline within(Duration timeout) {
+    final long now = System.nanoTime();
+    final long remaining = Math.max(0, deadlineNanos - now);
+    final long budget = Math.min(timeout.toNanos(), remaining);
+    return new Deadline(Duration.ofNanos(budget), now + budget);
+  }
+
+  /**
+   * The total budget this deadline was created with.
+   *
+   * @return the budget
+   */
+  public Duration budget() {
+    return budget;
+  }
+
+  /**
+   * The remaining budget, never negative.
+   *
+   * @return the remaining budget
+   */
+  public Duration remaining() {
+    return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+  }
+
+  /**
+   * The time spent since this deadline was created.
+   *
+   * @return the elapsed time
+   */
+  public Duration elapsed() {
+    return budget.minus(Duration.ofNanos(deadlineNanos - System.nanoTime()));
+  }
+
+  /**
+   * Whether the deadline has passed.
+   *
+   * @return true if the deadline has passed
+   */
+  public boolean isExpired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+
+  /**
+   * The remaining budget for the next stage.
+   *
+   * @param stage the description of the next stage, used in the exception message
+   * @return the remaining budget, always positive
+   * @throws TimeoutException if the deadline has passed
+   */
+  public Duration check(String stage) throws TimeoutException {
+    final long remaining = deadlineNanos - System.nanoTime();
+    if (remaining <= 0) {
+      throw new TimeoutException(
+          String.format("Deadline of %s exceeded before %s", budget, stage));
+    }
+    return Duration.ofNanos(remaining);
+  }
+
+  @Override
+  public String toString() {
+    return "Deadline{budget=" + budget + ", remaining=" + remaining() + "}";
+  }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.illumon.iris.db.tables.ColumnDefinition;
+import com.illumon.iris.db.tables.TableDefinition;
+import com.illumon.iris.db.tables.utils.DBDateTime;
+import io.deephaven.plugins.report.styling.Size2D;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Parameter;
+
+/**
+ * What localizing and rendering some reports would take, found without fetching any table or
+ * figure: every persistent-query touched, the rows and columns of every table, the figures, and
+ * estimates of the bytes of HTML and images.
+ *
+ * <p>The estimates are meant to catch reports that are off by orders of magnitude, such as one that
+ * would exceed an email size limit, not to predict exact sizes.
+ *
+ * @see Localization#explain(List, com.fishlib.io.logger.Logger, Deadline)
+ */
+@Immutable
+public abstract class Explanation {
+
+  /** The estimated PNG bytes per pixel of a figure, as charts are mostly flat colors. */
+  static final double PNG_BYTES_PER_PIXEL = 0.25;
+
+  /** The size a figure without one is assumed to be rendered at. */
+  static final Size2D DEFAULT_FIGURE_SIZE = Size2D.of(800, 600);
+
+  /** The estimated HTML bytes of a table, besides its header cells and rows. */
+  static final long TABLE_HTML_BYTES = 64;
+
+  /** The estimated HTML bytes of a row, besides its cells. */
+  static final long ROW_HTML_BYTES = 10;
+
+  /** The estimated HTML bytes of a cell, besides its value. */
+  static final long CELL_HTML_BYTES = 9;
+
+  /** The explanation of one table. */
+  @Immutable
+  public abstract static class TableExplanation {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param table the table
+     * @param definition the definition of the columns that would be fetched
+     * @param size the number of rows in the whole remote table
+     * @param rows the number of rows that would be fetched
+     * @return the new instance
+     */
+    public static TableExplanation of(
+        TablePQ table, TableDefinition definition, long size, long rows) {
+      return ImmutableTableExplanation.of(table, definition, size, rows);
+    }
+
+    /**
+     * The table.
+     *
+     * @return the table
+     */
+    @Parameter
+    public abstract TablePQ table();
+
+    /**
+     * The definition of the columns that would be fetched.
+     *
+     * @return the definition
+     */
+    @Parameter
+    public abstract TableDefinition definition();
+
+    /**
+     * The number of rows in the whole remote table, as visible to the user.
+     *
+     * @return the size
+     */
+    @Parameter
+    public abstract long size();
+
+    /**
+     * The number of rows that would be fetched.
+     *
+     * @return the rows
+     */
+    @Parameter
+    public abstract long rows();
+
+    /**
+     * The estimated number of bytes of the table rendered as HTML.
+     *
+     * @return the estimated bytes
+     */
+    public final long estimatedHtmlBytes() {
+      long header = TABLE_HTML_BYTES;
+      long row = ROW_HTML_BYTES;
+      for (ColumnDefinition<?> column : definition().getColumns()) {
+        header += CELL_HTML_BYTES + column.getName().length();
+        row += CELL_HTML_BYTES + estimatedValueBytes(column.getDataType());
+      }
+      return header + rows() * row;
+    }
+  }
+
+  /** The explanation of one figure. */
+  @Immutable
+  public abstract static class FigureExplanation {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param figure the figure
+     * @param figureClass the class name of the remote figure
+     * @return the new instance
+     */
+    public static FigureExplanation of(FigurePQ figure, String figureClass) {
+      return ImmutableFigureExplanation.of(figure, figureClass);
+    }
+
+    /**
+     * The figure.
+     *
+     * @return the figure
+     */
+    @Parameter
+    public abstract FigurePQ figure();
+
+    /**
+     * The class name of the remote figure.
+     *
+     * @return the class name
+     */
+    @Parameter
+    public abstract String figureClass();
+
+    /**
+     * The estimated number of bytes of the figure rendered as a PNG image.
+     *
+     * @return the estimated bytes
+     */
+    public final long estimatedImageBytes() {
+      final Size2D size = figure().size().orElse(DEFAULT_FIGURE_SIZE);
+      return (long) Math.ceil((double) size.width() * size.height() * PNG_BYTES_PER_PIXEL);
+    }
+  }
+
+  /** The builder. */
+  public static class Builder extends ImmutableExplanation.Builder {}
+
+  /**
+   * A new builder.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Every persistent-query touched, including the replicas.
+   *
+   * @return the persistent-queries
+   */
+  public abstract Set<PQ> pqs();
+
+  /**
+   * The tables that were explained.
+   *
+   * @return the tables
+   */
+  public abstract List<TableExplanation> tables();
+
+  /**
+   * The figures that were explained.
+   *
+   * @return the figures
+   */
+  public abstract List<FigureExplanation> figures();
+
+  /**
+   * The persistent-queries that could not explain their items, with the reasons. Their items are
+   * missing from {@link #tables()} and {@link #figures()}.
+   *
+   * @return the failures
+   */
+  public abstract Map<PQ, String> failures();
+
+  /**
+   * The estimated number of bytes of HTML, for every table.
+   *
+   * @return the estimated bytes
+   */
+  public final long estimatedHtmlBytes() {
+    long bytes = 0;
+    for (TableExplanation table : tables()) {
+      bytes += table.estimatedHtmlBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * The estimated number of bytes of images, for every figure.
+   *
+   * @return the estimated bytes
+   */
+  public final long estimatedImageBytes() {
+    long bytes = 0;
+    for (FigureExplanation figure : figures()) {
+      bytes += figure.estimatedImageBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * The estimated number of bytes of HTML and images.
+   *
+   * @return the estimated bytes
+   */
+  public final long estimatedBytes() {
+    return estimatedHtmlBytes() + estimatedImageBytes();
+  }
+
+  /**
+   * The number of rows that would be fetched from each persistent-query, to spot reports that would
+   * load one too much.
+   *
+   * @return the rows, keyed by persistent-query
+   */
+  public final Map<PQ, Long> rowsPerPq() {
+    final Map<PQ, Long> out = new LinkedHashMap<>();
+    for (TableExplanation table : tables()) {
+      out.merge(table.table().pq(), table.rows(), Long::sum);
+    }
+    return out;
+  }
+
+  private static long estimatedValueBytes(Class<?> type) {
+    if (type == boolean.class || type == Boolean.class) {
+      return 5;
+    }
+    if (type == char.class || type == Character.class) {
+      return 1;
+    }
+    if (type == DBDateTime.class) {
+      return 32;
+    }
+    if (type.isPrimitive() || Number.class.isAssignableFrom(type)) {
+      return 10;
+    }
+    return 16;
+  }
+}
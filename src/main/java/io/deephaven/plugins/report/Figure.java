@@ -29,6 +29,8 @@ public interface Figure<Self extends Figure<Self>> extends Item<Self> {
     void visit(FigureLocal figure);
 
     void visit(FigurePQ figure);
+
+    void visit(FigureImage figure);
   }
 
   /** @return the {@code size} attribute */
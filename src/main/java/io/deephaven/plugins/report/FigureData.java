@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.db.plot.FigureWidget;
+import com.illumon.iris.db.util.liveness.LivenessScope;
+import com.illumon.iris.db.util.liveness.LivenessScopeStack;
+import com.illumon.util.SafeCloseable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inflates figures and waits for their data, concurrently and within a {@link Deadline}. {@link
+ * FigureWidget#waitForData()} has no timeout of its own, so each figure is waited on from a
+ * separate thread; a figure whose data never arrives is abandoned once the deadline passes.
+ *
+ * <p>{@link FigureWidget#waitForData()} does not respond to interrupts, so the thread of an
+ * abandoned wait lingers until the data arrives. Abandoned waits are logged and counted, and once
+ * {@link #MAX_ABANDONED} of them linger, new waits are refused rather than starting more threads.
+ *
+ * <p>What a figure creates while it is inflated and gets its data is managed by a liveness scope of
+ * its own, which is handed to the calling thread's liveness scope once every figure has its data,
+ * as if the figures were inflated on the calling thread. The scopes of figures that fail, or are
+ * abandoned, are released, the latter once their wait finishes.
+ */
+final class FigureData {
+
+  /** The most abandoned waits that may linger before new waits are refused. */
+  static final int MAX_ABANDONED = 64;
+
+  private static final int PENDING = 0;
+  private static final int RUNNING = 1;
+  private static final int DONE = 2;
+  private static final int ABANDONED = 3;
+
+  private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+  private static final AtomicInteger LINGERING = new AtomicInteger();
+
+  private static final ExecutorService EXECUTOR =
+      Executors.newCachedThreadPool(FigureData::newThread);
+
+  /**
+   * The number of abandoned waits whose thread is still waiting for data.
+   *
+   * @return the number of lingering waits
+   */
+  static int lingering() {
+    return LINGERING.get();
+  }
+
+  /**
+   * Inflates the figures and waits for all of their data.
+   *
+   * @param source the description of where the figures are fetched from, for error messages
+   * @param inflaters the inflaters, keyed by figure name
+   * @param log the log, for abandoned waits
+   * @param deadline the deadline
+   * @return the figures, with their data, in the order of {@code inflaters}, managed by the calling
+   *     thread's liveness scope
+   * @throws TimeoutException if the deadline passes first, naming the figure and {@code source}
+   * @throws IllegalStateException if too many abandoned waits still linger
+   * @throws Exception if a figure fails to inflate or to get its data
+   */
+  static List<FigureWidget> await(
+      String source, Map<String, Callable<FigureWidget>> inflaters, Logger log, Deadline deadline)
+      throws Exception {
+    final int lingering = LINGERING.get();
+    if (lingering >= MAX_ABANDONED) {
+      throw new IllegalStateException(
+          String.format(
+              "Refusing to wait for figures from %s, %d abandoned waits still linger",
+              source, lingering));
+    }
+    final List<Wait> waits = new ArrayList<>(inflaters.size());
+    try {
+      for (Map.Entry<String, Callable<FigureWidget>> inflater : inflaters.entrySet()) {
+        final Wait wait =
+            new Wait(
+                String.format("figure '%s' from %s", inflater.getKey(), source),
+                inflater.getValue(),
+                log);
+        wait.future = EXECUTOR.submit(wait);
+        waits.add(wait);
+      }
+      final List<FigureWidget> out = new ArrayList<>(waits.size());
+      for (Wait wait : waits) {
+        out.add(get(wait, deadline));
+      }
+      for (Wait wait : waits) {
+        wait.transfer();
+      }
+      return out;
+    } finally {
+      // note: interrupts any figure still waiting, after a failure or a timeout
+      for (Wait wait : waits) {
+        wait.abandon();
+      }
+    }
+  }
+
+  private static FigureWidget get(Wait wait, Deadline deadline) throws Exception {
+    final String stage = "waiting for " + wait.figure;
+    try {
+      return wait.future.get(deadline.check(stage).toNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      throw new TimeoutException(
+          String.format("Deadline of %s exceeded %s", deadline.budget(), stage));
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    }
+  }
+
+  private static final class Wait implements Callable<FigureWidget> {
+
+    private final String figure;
+    private final Callable<FigureWidget> inflater;
+    private final Logger log;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private final LivenessScope liveness = new LivenessScope();
+    private boolean transferred;
+    private Future<FigureWidget> future;
+
+    Wait(String figure, Callable<FigureWidget> inflater, Logger log) {
+      this.figure = figure;
+      this.inflater = inflater;
+      this.log = log;
+    }
+
+    @Override
+    public FigureWidget call() throws Exception {
+      if (!state.compareAndSet(PENDING, RUNNING)) {
+        return null;
+      }
+      try (final SafeCloseable entered = LivenessScopeStack.open(liveness, false)) {
+        final FigureWidget out = inflater.call();
+        out.waitForData();
+        return out;
+      } finally {
+        if (!state.compareAndSet(RUNNING, DONE)) {
+          // note: nobody takes the figure of an abandoned wait
+          liveness.release();
+          final int lingering = LINGERING.decrementAndGet();
+          log.info()
+              .append("Abandoned wait for ")
+              .append(figure)
+              .append(" finished, ")
+              .append(lingering)
+              .append(" abandoned waits still linger")
+              .endl();
+        }
+      }
+    }
+
+    /** Hands what the figure created to the calling thread's liveness scope. */
+    void transfer() {
+      liveness.transferTo(LivenessScopeStack.peek());
+      transferred = true;
+    }
+
+    void abandon() {
+      if (state.compareAndSet(RUNNING, ABANDONED)) {
+        // note: the wait releases its liveness scope once it finishes
+        final int lingering = LINGERING.incrementAndGet();
+        log.warn()
+            .append("Abandoned wait for ")
+            .append(figure)
+            .append(", ")
+            .append(lingering)
+            .append(" abandoned waits linger")
+            .endl();
+      } else {
+        state.compareAndSet(PENDING, DONE);
+        if (!transferred) {
+          // note: finished, or never started, but its figure is not taken
+          liveness.release();
+        }
+      }
+      future.cancel(true);
+    }
+  }
+
+  private static Thread newThread(Runnable runnable) {
+    final Thread thread = new Thread(runnable, "FigureData-" + THREAD_ID.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
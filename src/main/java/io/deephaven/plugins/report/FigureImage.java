@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.util.Map;
+import org.immutables.value.Value.Check;
+import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Parameter;
+
+/**
+ * A figure that is already rendered, as a PNG image. Renders the same as the figure it was saved
+ * from, without any live plot behind it.
+ *
+ * @see LocalSnapshot
+ */
+@ItemStyle
+@Immutable(builder = true, copy = true)
+public abstract class FigureImage extends FigureBase<FigureImage> {
+
+  /**
+   * Constructs a new figure image.
+   *
+   * @param png the PNG image
+   * @return the figure image
+   */
+  public static FigureImage of(byte[] png) {
+    return ImmutableFigureImage.of(png);
+  }
+
+  /**
+   * The PNG image.
+   *
+   * @return the image
+   */
+  @Parameter
+  public abstract byte[] png();
+
+  @Override
+  public final FigureImage withAttribute(String key, Object value) {
+    return copyWithAttributes(plusAttribute(key, value));
+  }
+
+  @Override
+  public final FigureImage withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract FigureImage copyWithAttributes(Map<String, ? extends Object> entries);
+
+  @Override
+  final FigureImage self() {
+    return this;
+  }
+
+  @Override
+  public final <V extends Figure.Visitor> V walk(V visitor) {
+    visitor.visit(this);
+    return visitor;
+  }
+
+  @Check
+  final void check() {
+    if (png().length == 0) {
+      throw new IllegalArgumentException("png must be non-empty");
+    }
+  }
+}
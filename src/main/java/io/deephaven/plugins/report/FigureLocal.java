@@ -15,11 +15,14 @@
  */
 package io.deephaven.plugins.report;
 
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.util.Map;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Parameter;
 
 /** A figure is an {@link Item} wrapping an underlying {@link com.illumon.iris.db.plot.Figure}. */
-@Immutable(builder = true, copy = false)
+@ItemStyle
+@Immutable(builder = true, copy = true)
 public abstract class FigureLocal extends FigureBase<FigureLocal> {
 
   /**
@@ -42,9 +45,16 @@ public abstract class FigureLocal extends FigureBase<FigureLocal> {
 
   @Override
   public final FigureLocal withAttribute(String key, Object value) {
-    return ImmutableFigureLocal.builder().from(this).putAttributes(key, value).build();
+    return copyWithAttributes(plusAttribute(key, value));
   }
 
+  @Override
+  public final FigureLocal withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract FigureLocal copyWithAttributes(Map<String, ? extends Object> entries);
+
   @Override
   final FigureLocal self() {
     return this;
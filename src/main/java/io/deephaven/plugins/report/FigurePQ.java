@@ -17,15 +17,22 @@ package io.deephaven.plugins.report;
 
 import com.fishlib.io.logger.Logger;
 import com.illumon.iris.controller.PersistentQueryClient;
-import com.illumon.iris.controller.utils.PersistentQueryTableHelper.HelperPersistentQueryClient;
 import com.illumon.iris.db.plot.FigureWidget;
 import com.illumon.iris.db.tables.remote.RemoteDatabase;
 import com.illumon.iris.db.tables.remote.ReportFigureCARQ;
+import io.deephaven.plugins.annotations.ItemStyle;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import org.immutables.value.Value.Check;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Parameter;
 
-@Immutable(builder = true, copy = false)
+@ItemStyle
+@Immutable(builder = true, copy = true)
 public abstract class FigurePQ extends FigureBase<FigurePQ> {
   public static FigurePQ of(PQ pq, String figureName) {
     return ImmutableFigurePQ.of(pq, figureName);
@@ -37,11 +44,54 @@ public abstract class FigurePQ extends FigureBase<FigurePQ> {
   @Parameter
   public abstract String figureName();
 
+  /**
+   * The replicas of {@link #pq()}: equivalent persistent-queries that export the same figure. When
+   * localizing, a fetch that is slower than usual or fails is also sent to the next replica, and
+   * the first answer is taken. Empty by default.
+   *
+   * @return the replicas
+   */
+  public abstract List<PQ> replicas();
+
+  /**
+   * Creates a copy of this figure but with the new value for {@link #replicas()}.
+   *
+   * @param replicas the replicas, in the order they are asked
+   * @return the new figure
+   */
+  public final FigurePQ withReplicas(PQ... replicas) {
+    return copyWithReplicas(Arrays.asList(replicas));
+  }
+
+  abstract FigurePQ copyWithReplicas(Iterable<? extends PQ> elements);
+
+  /** @return the {@code cacheTtl} attribute */
+  public final Attribute<Duration, FigurePQ> cacheTtl() {
+    return attribute(LocalCache.CACHE_TTL, Duration.class);
+  }
+
+  /**
+   * Sets the {@code cacheTtl} attribute, the time-to-live of this item in a {@link LocalCache}.
+   *
+   * @param ttl the time-to-live
+   * @return the new figure
+   */
+  public final FigurePQ withCacheTtl(Duration ttl) {
+    return cacheTtl().with(ttl);
+  }
+
   @Override
   public final FigurePQ withAttribute(String key, Object value) {
-    return ImmutableFigurePQ.builder().from(this).putAttributes(key, value).build();
+    return copyWithAttributes(plusAttribute(key, value));
   }
 
+  @Override
+  public final FigurePQ withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract FigurePQ copyWithAttributes(Map<String, ? extends Object> entries);
+
   @Override
   final FigurePQ self() {
     return this;
@@ -53,23 +103,50 @@ public abstract class FigurePQ extends FigureBase<FigurePQ> {
     return visitor;
   }
 
+  @SuppressWarnings("try")
   public final FigureLocal toLocal(Logger log, Duration timeout) throws Exception {
-    final HelperPersistentQueryClient helperClient = PQToHelperClient.of(pq(), log, timeout);
-    final PersistentQueryClient client = helperClient.getPersistentQueryClient();
-    final RemoteDatabase db = client.getRemoteDatabase();
+    final Deadline deadline = Deadline.after(timeout);
+    final String pqString = PQToGroovyish.toString(pq());
+    // note: the client is returned to PQClientPool, which shuts it down once idle
+    try (final PQClientPool.Lease lease =
+            PQClientPool.getDefault()
+                .lease(pq(), log, deadline.check("connecting to " + pqString));
+        final Bulkheads.Permit permit =
+            Bulkheads.getDefault().acquire(pq(), lease.client(), deadline)) {
+      final PersistentQueryClient client = lease.client().getPersistentQueryClient();
+      final RemoteDatabase db = client.getRemoteDatabase();
 
-    final FigureWidget figure =
-        db.executeConcurrentQuery(ReportFigureCARQ.of(figureName()))
-            .inflate(db.getProcessorConnection());
+      final Callable<FigureWidget> inflater =
+          () ->
+              db.executeConcurrentQuery(ReportFigureCARQ.of(figureName()))
+                  .inflate(db.getProcessorConnection());
+      final FigureWidget figure =
+          FigureData.await(
+                  pqString, Collections.singletonMap(figureName(), inflater), log, deadline)
+              .get(0);
 
-    figure.waitForData();
+      return toLocal(figure);
+    }
+  }
+
+  @Check
+  final void check() {
+    if (replicas().contains(pq())) {
+      throw new IllegalArgumentException("replicas must not contain pq");
+    }
+  }
 
+  /**
+   * Creates the local figure from the fetched figure.
+   *
+   * @param figure the figure, inflated and with its data
+   * @return the local figure
+   */
+  final FigureLocal toLocal(FigureWidget figure) {
     return ImmutableFigureLocal.builder()
         .figure(figure)
         .attributes(attributes())
         .putAttributes("figurePQ", this)
         .build();
-
-    // todo: shutdown
   }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+/**
+ * A stable 128-bit fingerprint of the content of an {@link Item} or a {@link Report}. Unlike {@code
+ * equals}, which compares live tables and figures by reference, equal fingerprints identify equal
+ * content across runs.
+ *
+ * @see Item#fingerprint()
+ * @see Report#fingerprint()
+ */
+public final class Fingerprint {
+
+  private final long high;
+  private final long low;
+
+  Fingerprint(long high, long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  /**
+   * The high 64 bits.
+   *
+   * @return the high bits
+   */
+  public long high() {
+    return high;
+  }
+
+  /**
+   * The low 64 bits. May be used on its own as a 64-bit fingerprint.
+   *
+   * @return the low bits
+   */
+  public long low() {
+    return low;
+  }
+
+  /**
+   * The fingerprint as 32 lower-case hex digits.
+   *
+   * @return the hex string
+   */
+  public String toHex() {
+    return String.format("%016x%016x", high, low);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Fingerprint)) {
+      return false;
+    }
+    final Fingerprint other = (Fingerprint) o;
+    return high == other.high && low == other.low;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(high) * 31 + Long.hashCode(low);
+  }
+
+  @Override
+  public String toString() {
+    return toHex();
+  }
+}
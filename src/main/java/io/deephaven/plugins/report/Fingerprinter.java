@@ -0,0 +1,536 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.illumon.iris.db.tables.ColumnDefinition;
+import com.illumon.iris.db.tables.dbarrays.DbArrayBase;
+import com.illumon.iris.db.tables.live.LiveTableMonitor;
+import com.illumon.iris.db.tables.utils.DBDateTime;
+import com.illumon.iris.db.v2.sources.ColumnSource;
+import com.illumon.iris.db.v2.utils.Index;
+import com.illumon.util.FunctionalInterfaces.ThrowingSupplier;
+import io.deephaven.plugins.report.styling.Markdown;
+import io.deephaven.plugins.report.styling.Size2D;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes {@link Fingerprint fingerprints}. Every value is written with a type tag and, for
+ * variable-length values, a length prefix, so that different content can't produce the same stream
+ * of bytes. Attributes are written in key order, arrays by their elements, and nested items by
+ * their own (cached) fingerprints. Local tables are written by their definition and then column by
+ * column: primitives by value, {@link DBDateTime} by its nanos and other cells as values. A column
+ * of a type whose cells aren't known to be written by value, such as {@code Object}, makes the
+ * table live.
+ *
+ * <p>Content that can't be reached, or isn't known to be written by value, is written as a unique
+ * token instead, and makes the item live: the data of a local figure, what a lazy item resolves to,
+ * and attribute values of other types than strings, numbers, booleans, characters, enums, {@code
+ * java.time} values, {@link DBDateTime}, {@link Markdown}, {@link Size2D}, items,
+ * persistent-queries and arrays or {@link DbArrayBase DbArrays} of those.
+ */
+final class Fingerprinter
+    implements Item.Visitor, Table.Visitor, Figure.Visitor, Scalar.Visitor, PQ.Visitor {
+
+  static Fingerprint of(Item<?> item) {
+    return item.walk(new Fingerprinter()).finish();
+  }
+
+  static Fingerprint of(Report report) {
+    final Fingerprinter out = new Fingerprinter();
+    out.putString("report");
+    out.putString(report.title());
+    out.putFingerprint(report.item().fingerprint());
+    return out.finish();
+  }
+
+  /**
+   * Whether {@code item} is backed by live data, such as a refreshing table or a local figure,
+   * anywhere within it.
+   *
+   * @param item the item
+   * @return true if the item is live
+   */
+  static boolean isLive(Item<?> item) {
+    return item instanceof ItemBase ? ((ItemBase<?>) item).isLive() : item.walk(new Live()).live;
+  }
+
+  /**
+   * Finds whether {@code item} is backed by live data, without going through the value cached on
+   * the item itself, which is computed from this.
+   *
+   * @param item the item
+   * @return true if the item is live
+   */
+  static boolean findLive(Item<?> item) {
+    return item.walk(new Live()).live;
+  }
+
+  private static final AtomicLong UNREACHABLE = new AtomicLong();
+
+  private final MessageDigest digest;
+  private final ByteBuffer buffer;
+
+  private Fingerprinter() {
+    try {
+      this.digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    this.buffer = ByteBuffer.allocate(Long.BYTES);
+  }
+
+  @Override
+  public void visit(Table<?> table) {
+    table.walk((Table.Visitor) this);
+  }
+
+  @Override
+  public void visit(TableLocal table) {
+    putString("tableLocal");
+    putAttributes(table.attributes());
+    putTable(table.value());
+  }
+
+  @Override
+  public void visit(TablePQ table) {
+    putString("tablePQ");
+    putAttributes(table.attributes());
+    table.pq().walk(this);
+    putString(table.tableName());
+    putLong(table.maxRows());
+    putLong(table.columns().size());
+    for (String column : table.columns()) {
+      putString(column);
+    }
+    putPqs(table.replicas());
+  }
+
+  @Override
+  public void visit(TableShardedPQ table) {
+    putString("tableShardedPQ");
+    putAttributes(table.attributes());
+    putPqs(table.pqs());
+    putString(table.tableName());
+    putLong(table.maxRows());
+    putLong(table.sortColumns().size());
+    for (String column : table.sortColumns()) {
+      putString(column);
+    }
+    putLong(table.descending() ? 1 : 0);
+  }
+
+  @Override
+  public void visit(Figure<?> figure) {
+    figure.walk((Figure.Visitor) this);
+  }
+
+  @Override
+  public void visit(FigureLocal figure) {
+    // note: a figure's data isn't reachable from here, so its fingerprint is unique instead
+    putString("figureLocal");
+    putAttributes(figure.attributes());
+    putLong(UNREACHABLE.incrementAndGet());
+  }
+
+  @Override
+  public void visit(FigurePQ figure) {
+    putString("figurePQ");
+    putAttributes(figure.attributes());
+    figure.pq().walk(this);
+    putString(figure.figureName());
+    putPqs(figure.replicas());
+  }
+
+  @Override
+  public void visit(FigureImage figure) {
+    putString("figureImage");
+    putAttributes(figure.attributes());
+    putBytes(figure.png());
+  }
+
+  @Override
+  public void visit(Scalar<?> scalar) {
+    scalar.walk((Scalar.Visitor) this);
+  }
+
+  @Override
+  public void visit(ScalarLocal scalar) {
+    putString("scalarLocal");
+    putAttributes(scalar.attributes());
+    putValue(scalar.value().orElse(null));
+  }
+
+  @Override
+  public void visit(ScalarPQ scalar) {
+    putString("scalarPQ");
+    putAttributes(scalar.attributes());
+    scalar.pq().walk(this);
+    putString(scalar.variableName());
+    putString(scalar.column().orElse(""));
+    putLong(scalar.row());
+    putPqs(scalar.replicas());
+  }
+
+  @Override
+  public void visit(Text text) {
+    putString("text");
+    putAttributes(text.attributes());
+    putString(text.value());
+  }
+
+  @Override
+  public void visit(Group group) {
+    putString("group");
+    putAttributes(group.attributes());
+    putLong(group.items().size());
+    for (Item<?> item : group.items()) {
+      putFingerprint(item.fingerprint());
+    }
+  }
+
+  @Override
+  public void visit(Lazy lazy) {
+    // note: the content of a lazy item isn't known until it is resolved, and the supplier can't be
+    // compared by value, so its fingerprint is unique instead
+    putString("lazy");
+    putAttributes(lazy.attributes());
+    putLong(UNREACHABLE.incrementAndGet());
+  }
+
+  @Override
+  public void visit(PQName pq) {
+    putString("pqName");
+    putString(pq.owner());
+    putString(pq.name());
+  }
+
+  @Override
+  public void visit(PQSerialId pq) {
+    putString("pqSerialId");
+    putLong(pq.serialId());
+  }
+
+  private void putTable(com.illumon.iris.db.tables.Table table) {
+    for (ColumnDefinition<?> column : table.getDefinition().getColumnList()) {
+      putString(column.getName());
+      putString(column.getDataType().getName());
+    }
+    if (!table.isLive()) {
+      putRows(table);
+      return;
+    }
+    // note: a ticking table is hashed at one logical clock step, so its columns agree
+    LiveTableMonitor.DEFAULT
+        .sharedLock()
+        .computeLocked(
+            (ThrowingSupplier<Void, RuntimeException>)
+                () -> {
+                  putRows(table);
+                  return null;
+                });
+  }
+
+  private void putRows(com.illumon.iris.db.tables.Table table) {
+    putLong(table.size());
+    for (ColumnDefinition<?> column : table.getDefinition().getColumnList()) {
+      final Class<?> type = column.getDataType();
+      final ColumnSource<?> source = table.getColumnSource(column.getName());
+      if (type == byte.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putLong(source.getByte(it.nextLong()));
+        }
+      } else if (type == short.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putLong(source.getShort(it.nextLong()));
+        }
+      } else if (type == char.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putLong(source.getChar(it.nextLong()));
+        }
+      } else if (type == int.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putLong(source.getInt(it.nextLong()));
+        }
+      } else if (type == long.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putLong(source.getLong(it.nextLong()));
+        }
+      } else if (type == float.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putLong(Float.floatToIntBits(source.getFloat(it.nextLong())));
+        }
+      } else if (type == double.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putLong(Double.doubleToLongBits(source.getDouble(it.nextLong())));
+        }
+      } else if (type == DBDateTime.class) {
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          final Object value = source.get(it.nextLong());
+          putLong(value == null ? Long.MIN_VALUE : ((DBDateTime) value).getNanos());
+        }
+      } else {
+        // note: the column type is already written, so each value only needs its content
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          putValue(source.get(it.nextLong()));
+        }
+      }
+    }
+  }
+
+  private void putAttributes(Map<String, Object> attributes) {
+    putLong(attributes.size());
+    for (Entry<String, Object> e : new TreeMap<>(attributes).entrySet()) {
+      putString(e.getKey());
+      putValue(e.getValue());
+    }
+  }
+
+  private void putValue(Object value) {
+    if (value == null) {
+      putString("null");
+    } else if (value instanceof Item) {
+      putString("item");
+      putFingerprint(((Item<?>) value).fingerprint());
+    } else if (value instanceof PQ) {
+      ((PQ) value).walk(this);
+    } else if (value.getClass().isArray()) {
+      putString(value.getClass().getName());
+      final int length = Array.getLength(value);
+      putLong(length);
+      for (int i = 0; i < length; ++i) {
+        putValue(Array.get(value, i));
+      }
+    } else if (value instanceof DBDateTime) {
+      putString(DBDateTime.class.getName());
+      putLong(((DBDateTime) value).getNanos());
+    } else if (value instanceof DbArrayBase) {
+      // note: different implementations hold the same content, so only the elements are written
+      putString(DbArrayBase.class.getName());
+      putValue(((DbArrayBase<?>) value).toArray());
+    } else if (value instanceof TableWindow) {
+      // note: the rows of a window are data, only having a window is part of the definition
+      putString(TableWindow.class.getName());
+    } else if (isValue(value)) {
+      putString(value.getClass().getName());
+      putString(value.toString());
+    } else {
+      // note: toString() may not reflect the content, such as Object's identity string, so the
+      // value is unique instead
+      putString("unsupported");
+      putLong(UNREACHABLE.incrementAndGet());
+    }
+  }
+
+  /** Whether {@code value} is written by its {@code toString()}, which reflects its content. */
+  private static boolean isValue(Object value) {
+    return value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean
+        || value instanceof Character
+        || value instanceof Enum
+        || value instanceof TemporalAccessor
+        || value instanceof TemporalAmount
+        || value instanceof ZoneId
+        || value instanceof Markdown
+        || value instanceof Size2D;
+  }
+
+  /** Whether the cells of every column of {@code table} are written by content. */
+  private static boolean hasSupportedColumns(com.illumon.iris.db.tables.Table table) {
+    for (ColumnDefinition<?> column : table.getDefinition().getColumnList()) {
+      if (!isSupportedType(column.getDataType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether every value of {@code type} is written by content, rather than as a unique token. */
+  private static boolean isSupportedType(Class<?> type) {
+    if (type.isArray()) {
+      return isSupportedType(type.getComponentType());
+    }
+    return type.isPrimitive()
+        || type == String.class
+        || type == Boolean.class
+        || type == Character.class
+        || type == DBDateTime.class
+        || Number.class.isAssignableFrom(type)
+        || Enum.class.isAssignableFrom(type)
+        || TemporalAccessor.class.isAssignableFrom(type)
+        || TemporalAmount.class.isAssignableFrom(type)
+        || ZoneId.class.isAssignableFrom(type)
+        || DbArrayBase.class.isAssignableFrom(type);
+  }
+
+  /** Whether {@code value} is written by content, rather than as a unique token. */
+  private static boolean isSupported(Object value) {
+    if (value == null
+        || value instanceof Item
+        || value instanceof PQ
+        || value instanceof TableWindow
+        || value instanceof DBDateTime
+        || isValue(value)) {
+      return true;
+    }
+    if (value instanceof DbArrayBase) {
+      return isSupported(((DbArrayBase<?>) value).toArray());
+    }
+    if (!value.getClass().isArray()) {
+      return false;
+    }
+    if (value.getClass().getComponentType().isPrimitive()) {
+      return true;
+    }
+    final int length = Array.getLength(value);
+    for (int i = 0; i < length; ++i) {
+      if (!isSupported(Array.get(value, i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void putPqs(List<PQ> pqs) {
+    putLong(pqs.size());
+    for (PQ pq : pqs) {
+      pq.walk(this);
+    }
+  }
+
+  private void putFingerprint(Fingerprint fingerprint) {
+    putLong(fingerprint.high());
+    putLong(fingerprint.low());
+  }
+
+  private void putString(String value) {
+    putBytes(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void putBytes(byte[] bytes) {
+    putLong(bytes.length);
+    digest.update(bytes);
+  }
+
+  private void putLong(long value) {
+    buffer.clear();
+    buffer.putLong(value);
+    digest.update(buffer.array());
+  }
+
+  private Fingerprint finish() {
+    final ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+    return new Fingerprint(hash.getLong(), hash.getLong());
+  }
+
+  /** Finds whether an item is backed by live data. */
+  private static final class Live
+      implements Item.Visitor, Table.Visitor, Figure.Visitor, Scalar.Visitor {
+    private boolean live;
+
+    @Override
+    public void visit(Table<?> table) {
+      table.walk((Table.Visitor) this);
+    }
+
+    @Override
+    public void visit(TableLocal table) {
+      live = table.value().isLive() || !hasSupportedColumns(table.value()) || attributes(table);
+    }
+
+    @Override
+    public void visit(TablePQ table) {
+      live = attributes(table);
+    }
+
+    @Override
+    public void visit(TableShardedPQ table) {
+      live = attributes(table);
+    }
+
+    @Override
+    public void visit(Figure<?> figure) {
+      figure.walk((Figure.Visitor) this);
+    }
+
+    @Override
+    public void visit(FigureLocal figure) {
+      live = true;
+    }
+
+    @Override
+    public void visit(FigurePQ figure) {
+      live = attributes(figure);
+    }
+
+    @Override
+    public void visit(FigureImage figure) {
+      live = attributes(figure);
+    }
+
+    @Override
+    public void visit(Scalar<?> scalar) {
+      scalar.walk((Scalar.Visitor) this);
+    }
+
+    @Override
+    public void visit(ScalarLocal scalar) {
+      live = attributes(scalar);
+    }
+
+    @Override
+    public void visit(ScalarPQ scalar) {
+      live = attributes(scalar);
+    }
+
+    @Override
+    public void visit(Text text) {
+      live = attributes(text);
+    }
+
+    @Override
+    public void visit(Group group) {
+      live = attributes(group) || group.items().stream().anyMatch(Fingerprinter::isLive);
+    }
+
+    @Override
+    public void visit(Lazy lazy) {
+      // note: a lazy item may resolve to different content each time
+      live = true;
+    }
+
+    private static boolean attributes(AttributesBase<?> item) {
+      for (Object value : item.attributes().values()) {
+        if (value instanceof Item ? isLive((Item<?>) value) : !isSupported(value)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -18,6 +18,9 @@ package io.deephaven.plugins.report;
 import java.lang.reflect.Array;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /** A collection of static helper functions to aid in the creation of {@link Report reports}. */
 public class Functions {
@@ -90,6 +93,17 @@ public class Functions {
     return TablePQ.of(pq, tableName);
   }
 
+  /**
+   * Equivalent to {@link TableShardedPQ#of(List, String)}.
+   *
+   * @param pqs the pqs, one per shard
+   * @param tableName the table name
+   * @return the sharded table
+   */
+  public static TableShardedPQ table(List<PQ> pqs, String tableName) {
+    return TableShardedPQ.of(pqs, tableName);
+  }
+
   /**
    * Equivalent to {@link FigureLocal#of(com.illumon.iris.db.plot.Figure)}.
    *
@@ -111,6 +125,49 @@ public class Functions {
     return FigurePQ.of(pq, figureName);
   }
 
+  /**
+   * Equivalent to {@link ScalarLocal#of(Object)}.
+   *
+   * @param value the value
+   * @return the scalar item
+   */
+  public static ScalarLocal scalar(Object value) {
+    return ScalarLocal.of(value);
+  }
+
+  /**
+   * Equivalent to {@link ScalarPQ#of(PQ, String)}.
+   *
+   * @param pq the pq
+   * @param variableName the variable name
+   * @return the scalar pq
+   */
+  public static ScalarPQ scalar(PQ pq, String variableName) {
+    return ScalarPQ.of(pq, variableName);
+  }
+
+  /**
+   * Equivalent to {@link ScalarPQ#of(PQ, String, String)}.
+   *
+   * @param pq the pq
+   * @param tableName the table name
+   * @param column the column
+   * @return the scalar pq
+   */
+  public static ScalarPQ scalar(PQ pq, String tableName, String column) {
+    return ScalarPQ.of(pq, tableName, column);
+  }
+
+  /**
+   * Equivalent to {@link Lazy#of(Supplier)}.
+   *
+   * @param supplier the supplier
+   * @return the lazy item
+   */
+  public static Lazy lazy(Supplier<?> supplier) {
+    return Lazy.of(supplier);
+  }
+
   /**
    * Equivalent to {@code Group.builder().addItems(items).build()}.
    *
@@ -142,6 +199,16 @@ public class Functions {
     return PQSerialId.of(serialId);
   }
 
+  /**
+   * Equivalent to {@link Localization#parallel(int)}.
+   *
+   * @param parallelism the parallelism
+   * @return the localization
+   */
+  public static Localization parallel(int parallelism) {
+    return Localization.parallel(parallelism);
+  }
+
   // --------------------------------------------------------------------------------------------
 
   public static <T extends Item<?>> T item(T item) {
@@ -277,6 +344,17 @@ public class Functions {
     return item(object).withAttribute(key, value);
   }
 
+  /**
+   * Coerces the objects and attaches the attributes, in a single copy.
+   *
+   * @param object the object
+   * @param attributes the attributes
+   * @return the new item
+   */
+  public static Item<?> attrs(Object object, Map<String, ?> attributes) {
+    return item(object).withAttributes(attributes);
+  }
+
   // --------------------------------------------------------------------------------------------
 
   /** Should not be instantiated. */
@@ -306,6 +384,10 @@ public class Functions {
       return Functions.table(pq, tableName);
     }
 
+    public TableShardedPQ table(List<PQ> pqs, String tableName) {
+      return Functions.table(pqs, tableName);
+    }
+
     public FigureLocal figure(com.illumon.iris.db.plot.Figure figure) {
       return Functions.figure(figure);
     }
@@ -314,6 +396,22 @@ public class Functions {
       return Functions.figure(pq, figureName);
     }
 
+    public ScalarLocal scalar(Object value) {
+      return Functions.scalar(value);
+    }
+
+    public ScalarPQ scalar(PQ pq, String variableName) {
+      return Functions.scalar(pq, variableName);
+    }
+
+    public ScalarPQ scalar(PQ pq, String tableName, String column) {
+      return Functions.scalar(pq, tableName, column);
+    }
+
+    public Lazy lazy(Supplier<?> supplier) {
+      return Functions.lazy(supplier);
+    }
+
     public Group group(Item<?>... items) {
       return Functions.group(items);
     }
@@ -354,6 +452,10 @@ public class Functions {
       return Functions.attr(item, key, value);
     }
 
+    public Item<?> attrs(Object item, Map<String, ?> attributes) {
+      return Functions.attrs(item, attributes);
+    }
+
     public PQName pq(String owner, String name) {
       return Functions.pq(owner, name);
     }
@@ -361,5 +463,9 @@ public class Functions {
     public PQSerialId pq(long serialId) {
       return Functions.pq(serialId);
     }
+
+    public Localization parallel(int parallelism) {
+      return Functions.parallel(parallelism);
+    }
   }
 }
@@ -15,10 +15,16 @@
  */
 package io.deephaven.plugins.report;
 
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import org.immutables.value.Value.Immutable;
 
 /** A group is an ordered collection of {@link #items() Items}. */
-@Immutable(builder = true, copy = false)
+@ItemStyle
+@Immutable(builder = true, copy = true)
 public abstract class Group extends ItemBase<Group> {
 
   public static Builder builder() {
@@ -29,11 +35,37 @@ public abstract class Group extends ItemBase<Group> {
 
   public abstract java.util.List<Item<?>> items();
 
+  /**
+   * Creates a new group with the additional items, in a single copy. The attributes are shared with
+   * this group, and not copied.
+   *
+   * @param items the items to add
+   * @return the new group
+   */
+  public final Group addAll(Collection<? extends Item<?>> items) {
+    if (items.isEmpty()) {
+      return this;
+    }
+    final List<Item<?>> all = new ArrayList<>(items().size() + items.size());
+    all.addAll(items());
+    all.addAll(items);
+    return copyWithItems(all);
+  }
+
+  abstract Group copyWithItems(Iterable<? extends Item<?>> elements);
+
   @Override
   public final Group withAttribute(String key, Object value) {
-    return Group.builder().from(this).putAttributes(key, value).build();
+    return copyWithAttributes(plusAttribute(key, value));
   }
 
+  @Override
+  public final Group withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract Group copyWithAttributes(Map<String, ? extends Object> entries);
+
   @Override
   final Group self() {
     return this;
@@ -28,9 +28,13 @@ public interface Item<Self extends Item<Self>> extends Attributes<Self> {
 
     void visit(Figure<?> figure);
 
+    void visit(Scalar<?> scalar);
+
     void visit(Text text);
 
     void visit(Group group);
+
+    void visit(Lazy lazy);
   }
 
   /**
@@ -48,6 +52,20 @@ public interface Item<Self extends Item<Self>> extends Attributes<Self> {
    */
   Attribute<String, Self> name();
 
+  /**
+   * The content fingerprint. Covers the type, the attributes and the content of the item: text
+   * values, persistent-query references, nested items and, for local tables, the table definition
+   * plus the data, taken at one logical clock step for refreshing tables. The data of a local
+   * figure, what a lazy item resolves to, and attribute values or table cells that can't be
+   * compared by value can't be reached, so their fingerprint never matches another one.
+   *
+   * <p>The fingerprint is computed once and cached, unless the item is backed by live data, such as
+   * a refreshing table, a local figure or a lazy item, in which case it is computed on every call.
+   *
+   * @return the fingerprint
+   */
+  Fingerprint fingerprint();
+
   /**
    * The visitor-pattern dispatcher.
    *
@@ -15,6 +15,8 @@
  */
 package io.deephaven.plugins.report;
 
+import org.immutables.value.Value;
+
 /**
  * The base implementation.
  *
@@ -32,4 +34,20 @@ public abstract class ItemBase<Self extends ItemBase<Self>> extends AttributesBa
   public final Self withName(String name) {
     return name().with(name);
   }
+
+  @Override
+  public Fingerprint fingerprint() {
+    // note: the fingerprint of live data changes as it ticks, so it is never remembered
+    return isLive() ? Fingerprinter.of(this) : staticFingerprint();
+  }
+
+  @Value.Lazy
+  Fingerprint staticFingerprint() {
+    return Fingerprinter.of(this);
+  }
+
+  @Value.Lazy
+  boolean isLive() {
+    return Fingerprinter.findLive(this);
+  }
 }
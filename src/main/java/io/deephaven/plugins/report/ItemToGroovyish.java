@@ -20,7 +20,7 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 import org.apache.commons.lang.StringEscapeUtils;
 
-class ItemToGroovyish implements Visitor, Table.Visitor, Figure.Visitor {
+class ItemToGroovyish implements Visitor, Table.Visitor, Figure.Visitor, Scalar.Visitor {
 
   static String toString(Item<?> item) {
     return wrapName(item, item.walk(new ItemToGroovyish()).getOut());
@@ -70,6 +70,18 @@ class ItemToGroovyish implements Visitor, Table.Visitor, Figure.Visitor {
     }
   }
 
+  @Override
+  public void visit(FigureImage figure) {
+    if (figure.size().isPresent()) {
+      out =
+          String.format(
+              "figure(<image>).withSize(%d, %d)",
+              figure.size().get().width(), figure.size().get().height());
+    } else {
+      out = "<image>";
+    }
+  }
+
   @Override
   public void visit(Group group) {
     out =
@@ -95,11 +107,57 @@ class ItemToGroovyish implements Visitor, Table.Visitor, Figure.Visitor {
             "table(%s, %s)", PQToGroovyish.toString(table.pq()), toString(table.tableName()));
   }
 
+  @Override
+  public void visit(TableShardedPQ table) {
+    out =
+        String.format(
+            "table(%s, %s)",
+            table.pqs().stream()
+                .map(PQToGroovyish::toString)
+                .collect(Collectors.joining(", ", "[", "]")),
+            toString(table.tableName()));
+  }
+
+  @Override
+  public void visit(Scalar<?> scalar) {
+    scalar.walk((Scalar.Visitor) this);
+  }
+
+  @Override
+  public void visit(ScalarLocal scalar) {
+    out = String.format("scalar(%s)", toString(scalar.formatted()));
+  }
+
+  @Override
+  public void visit(ScalarPQ scalar) {
+    if (scalar.column().isPresent()) {
+      out =
+          String.format(
+              "scalar(%s, %s, %s)",
+              PQToGroovyish.toString(scalar.pq()),
+              toString(scalar.variableName()),
+              toString(scalar.column().get()));
+    } else {
+      out =
+          String.format(
+              "scalar(%s, %s)",
+              PQToGroovyish.toString(scalar.pq()), toString(scalar.variableName()));
+    }
+    if (scalar.row() != 0) {
+      out = String.format("%s.withRow(%d)", out, scalar.row());
+    }
+  }
+
   @Override
   public void visit(Text text) {
     out = toString(text.value());
   }
 
+  @Override
+  public void visit(Lazy lazy) {
+    out = "<lazy>";
+  }
+
   private static String wrapName(Item<?> item, String out) {
     if (item.name().isPresent()) {
       return String.format("named(%s, %s)", toString(item.name().get()), out);
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The most recent fetch latencies of one persistent-query, from which its latency percentiles are
+ * learned.
+ */
+final class Latencies {
+
+  /** The number of latencies that are kept. */
+  static final int CAPACITY = 64;
+
+  /** The number of latencies needed before any percentile is estimated. */
+  static final int MIN_SAMPLES = 8;
+
+  private final long[] nanos = new long[CAPACITY];
+  private int count;
+  private int next;
+
+  /**
+   * Records a latency, replacing the oldest once {@link #CAPACITY} are kept.
+   *
+   * @param latency the latency
+   */
+  synchronized void record(Duration latency) {
+    nanos[next] = latency.toNanos();
+    next = (next + 1) % CAPACITY;
+    count = Math.min(count + 1, CAPACITY);
+  }
+
+  /**
+   * The latency that the fraction {@code p} of the kept latencies are at or below.
+   *
+   * @param p the percentile, between 0 and 1
+   * @return the latency, or empty if fewer than {@link #MIN_SAMPLES} have been recorded
+   */
+  synchronized Optional<Duration> percentile(double p) {
+    if (count < MIN_SAMPLES) {
+      return Optional.empty();
+    }
+    final long[] sorted = Arrays.copyOf(nanos, count);
+    Arrays.sort(sorted);
+    final int index = Math.min(count - 1, (int) Math.ceil(p * count) - 1);
+    return Optional.of(Duration.ofNanos(sorted[Math.max(0, index)]));
+  }
+}
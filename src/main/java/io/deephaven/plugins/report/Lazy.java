@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Parameter;
+
+/**
+ * A lazy item is an {@link Item} whose underlying item is only created when it is visited, by
+ * invoking the {@link #supplier() supplier}. This allows the caller to defer expensive work, such
+ * as building tables or figures, until a sink actually needs the item.
+ *
+ * <p>Localization keeps lazy items lazy; a localized lazy item localizes what it resolves to when
+ * it is first resolved. The renderers resolve each lazy item at most once per render.
+ */
+@ItemStyle
+@Immutable(builder = true, copy = true)
+public abstract class Lazy extends ItemBase<Lazy> {
+
+  /**
+   * Constructs the lazy item.
+   *
+   * @param supplier the supplier of an {@link Item}, or of an object that can be coerced into one
+   * @return the lazy item
+   * @see Functions#item(Object)
+   */
+  public static Lazy of(Supplier<?> supplier) {
+    return ImmutableLazy.of(supplier);
+  }
+
+  /**
+   * The supplier of the underlying item.
+   *
+   * @return the supplier
+   */
+  @Parameter
+  public abstract Supplier<?> supplier();
+
+  /**
+   * Invokes the supplier and coerces the result into an {@link Item}. The attributes of this lazy
+   * item are applied on top of the resulting item.
+   *
+   * @return the item
+   */
+  public final Item<?> get() {
+    return Functions.item(supplier().get()).withAttributes(attributes());
+  }
+
+  @Override
+  public final Lazy withAttribute(String key, Object value) {
+    return copyWithAttributes(plusAttribute(key, value));
+  }
+
+  @Override
+  public final Lazy withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract Lazy copyWithAttributes(Map<String, ? extends Object> entries);
+
+  @Override
+  final Lazy self() {
+    return this;
+  }
+
+  @Override
+  public final <V extends Visitor> V walk(V visitor) {
+    visitor.visit(this);
+    return visitor;
+  }
+}
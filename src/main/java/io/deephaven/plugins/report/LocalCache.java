@@ -0,0 +1,321 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.illumon.iris.db.util.liveness.LivenessScope;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * An in-process cache of localized items, keyed by the {@link TablePQ}, {@link FigurePQ} and {@link
+ * ScalarPQ} values they were localized from. Once {@link #maxSize()} is reached, the least-recently
+ * used entry is evicted. Each entry expires after its time-to-live: the item's {@code cacheTtl}
+ * attribute if present, or else {@link #defaultTtl()}.
+ *
+ * <p>An expired table that was fetched along with its version is removed, but kept aside for one
+ * more time-to-live, so that it can be revalidated: the next fetch sends the version, and if the
+ * table has not updated since, the persistent-query answers without a snapshot and the expired
+ * table is reused. At most {@link #maxSize()} expired tables are kept aside.
+ *
+ * <p>A {@link TablePQ} with a {@link TableWindow} is never cached, as each localization must append
+ * to its window. Neither are the {@link Text#placeholder() placeholders} of items that failed, so
+ * that the next localization fetches them again.
+ *
+ * <p>The cache keeps the tables of its entries live on its own, so that they outlast the {@link
+ * LocalizedReports} they were first fetched for. They are released once their entries are removed.
+ *
+ * @see Localization#cache()
+ * @see TablePQ#withCacheTtl(Duration)
+ * @see FigurePQ#withCacheTtl(Duration)
+ * @see ScalarPQ#withCacheTtl(Duration)
+ */
+public final class LocalCache {
+
+  /** The attribute key for the per-item time-to-live. */
+  static final String CACHE_TTL = "cacheTtl";
+
+  /** The attribute key for the version of a fetched {@link TableLocal}. */
+  static final String VERSION = "version";
+
+  private final int maxSize;
+  private final Duration defaultTtl;
+  private final Map<Item<?>, Entry> entries;
+  private final Map<Item<?>, Entry> stale;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+
+  /**
+   * Constructs a new cache.
+   *
+   * @param maxSize the maximum number of entries
+   * @param defaultTtl the time-to-live for items without a {@code cacheTtl} attribute
+   */
+  public LocalCache(int maxSize, Duration defaultTtl) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    if (defaultTtl.isNegative()) {
+      throw new IllegalArgumentException("defaultTtl must be non-negative");
+    }
+    this.maxSize = maxSize;
+    this.defaultTtl = defaultTtl;
+    this.entries =
+        new LinkedHashMap<Item<?>, Entry>(16, 0.75f, true) {
+          private static final long serialVersionUID = 6107381622052512290L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Item<?>, Entry> eldest) {
+            if (size() > LocalCache.this.maxSize) {
+              ++evictions;
+              eldest.getValue().release();
+              return true;
+            }
+            return false;
+          }
+        };
+    this.stale =
+        new LinkedHashMap<Item<?>, Entry>(16, 0.75f, true) {
+          private static final long serialVersionUID = -2254079415287614327L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Item<?>, Entry> eldest) {
+            if (size() > LocalCache.this.maxSize) {
+              ++evictions;
+              eldest.getValue().release();
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * The maximum number of entries.
+   *
+   * @return the maximum size
+   */
+  public int maxSize() {
+    return maxSize;
+  }
+
+  /**
+   * The time-to-live for items without a {@code cacheTtl} attribute.
+   *
+   * @return the default time-to-live
+   */
+  public Duration defaultTtl() {
+    return defaultTtl;
+  }
+
+  /**
+   * The current number of entries, including any that have expired but not yet been removed. The
+   * expired tables kept aside for revalidation are not counted.
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * The number of lookups that found an unexpired entry.
+   *
+   * @return the hit count
+   */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /**
+   * The number of lookups that did not find an unexpired entry.
+   *
+   * @return the miss count
+   */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  /**
+   * The number of entries, or expired tables kept aside, removed to stay within {@link #maxSize()}.
+   *
+   * @return the eviction count
+   */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+  /**
+   * The number of entries removed because their time-to-live had passed.
+   *
+   * @return the expiration count
+   */
+  public synchronized long expirations() {
+    return expirations;
+  }
+
+  /** Removes every entry. The counters are not reset. */
+  public synchronized void clear() {
+    for (Entry entry : entries.values()) {
+      entry.release();
+    }
+    entries.clear();
+    for (Entry entry : stale.values()) {
+      entry.release();
+    }
+    stale.clear();
+  }
+
+  /**
+   * Gets the unexpired localized item for {@code remote}.
+   *
+   * @param remote the remote item
+   * @return the localized item, or null
+   */
+  synchronized Item<?> get(Item<?> remote) {
+    if (isWindowed(remote)) {
+      return null;
+    }
+    final Entry entry = entries.get(remote);
+    if (entry == null) {
+      ++misses;
+      return null;
+    }
+    if (entry.isExpired(System.nanoTime())) {
+      expire(remote, entry);
+      ++misses;
+      return null;
+    }
+    ++hits;
+    return entry.local;
+  }
+
+  /**
+   * Gets the expired localized table for {@code remote} that can still be revalidated.
+   *
+   * @param remote the remote item
+   * @return the expired localized table, or null
+   */
+  synchronized TableLocal stale(Item<?> remote) {
+    final long now = System.nanoTime();
+    final Entry expired = entries.get(remote);
+    if (expired != null && expired.isExpired(now)) {
+      expire(remote, expired);
+    }
+    final Entry entry = stale.get(remote);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.isPastRevalidation(now)) {
+      stale.remove(remote);
+      entry.release();
+      return null;
+    }
+    return (TableLocal) entry.local;
+  }
+
+  private void expire(Item<?> remote, Entry entry) {
+    entries.remove(remote);
+    ++expirations;
+    if (entry.local instanceof TableLocal
+        && version(entry.local).isPresent()
+        && !entry.isPastRevalidation(System.nanoTime())) {
+      final Entry previous = stale.put(remote, entry);
+      if (previous != null) {
+        previous.release();
+      }
+    } else {
+      entry.release();
+    }
+  }
+
+  /**
+   * The version of the localized item, if it was fetched along with one.
+   *
+   * @param local the localized item
+   * @return the version
+   */
+  static Optional<String> version(Item<?> local) {
+    final Attribute<String, ?> version = local.attribute(VERSION, String.class);
+    return version.isPresent() ? Optional.of(version.get()) : Optional.empty();
+  }
+
+  /**
+   * Puts the localized item for {@code remote}.
+   *
+   * @param remote the remote item
+   * @param local the localized item
+   */
+  synchronized void put(Item<?> remote, Item<?> local) {
+    if (isWindowed(remote) || isPlaceholder(local)) {
+      return;
+    }
+    final Duration ttl = remote.attribute(CACHE_TTL, Duration.class).orElse(defaultTtl);
+    if (ttl.isZero() || ttl.isNegative()) {
+      return;
+    }
+    final Entry previous = entries.put(remote, new Entry(local, System.nanoTime(), ttl.toNanos()));
+    if (previous != null) {
+      previous.release();
+    }
+    final Entry expired = stale.remove(remote);
+    if (expired != null) {
+      expired.release();
+    }
+  }
+
+  private static boolean isWindowed(Item<?> remote) {
+    return remote instanceof TablePQ && ((TablePQ) remote).window().isPresent();
+  }
+
+  private static boolean isPlaceholder(Item<?> local) {
+    return local instanceof Text && ((Text) local).placeholder().isPresent();
+  }
+
+  private static final class Entry {
+    private final Item<?> local;
+    private final long expiresAtNanos;
+    private final long ttlNanos;
+    private final LivenessScope retained;
+
+    Entry(Item<?> local, long nowNanos, long ttlNanos) {
+      this.local = Objects.requireNonNull(local);
+      this.expiresAtNanos = nowNanos + ttlNanos;
+      this.ttlNanos = ttlNanos;
+      this.retained = new LivenessScope();
+      if (local instanceof TableLocal) {
+        retained.manage(((TableLocal) local).value());
+      }
+    }
+
+    void release() {
+      retained.release();
+    }
+
+    boolean isExpired(long now) {
+      return now - expiresAtNanos >= 0;
+    }
+
+    boolean isPastRevalidation(long now) {
+      return now - expiresAtNanos - ttlNanos >= 0;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.illumon.iris.db.util.liveness.LivenessScope;
+import com.illumon.iris.db.util.liveness.LivenessScopeStack;
+import com.illumon.util.SafeCloseable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The resources acquired while localizing: the liveness of the fetched tables, the leases on the
+ * pooled clients they were fetched with, and the scopes of what lazy items fetched later on. Shared
+ * by every thread of a localization.
+ */
+final class LocalScope implements SafeCloseable {
+
+  private final LivenessScope liveness;
+  private final Queue<PQClientPool.Lease> leases;
+  private final Queue<LocalScope> later;
+  private final AtomicBoolean closed;
+  private volatile boolean detached;
+
+  LocalScope() {
+    this.liveness = new LivenessScope();
+    this.leases = new ConcurrentLinkedQueue<>();
+    this.later = new ConcurrentLinkedQueue<>();
+    this.closed = new AtomicBoolean();
+  }
+
+  /**
+   * Makes this the current liveness scope of the calling thread, until the result is closed.
+   *
+   * @return the closeable that restores the previous liveness scope
+   */
+  SafeCloseable enter() {
+    return LivenessScopeStack.open(liveness, false);
+  }
+
+  /**
+   * Holds the lease until this scope is closed or detached.
+   *
+   * @param lease the lease
+   */
+  void add(PQClientPool.Lease lease) {
+    leases.add(lease);
+    if (closed.get()) {
+      lease.close();
+    }
+  }
+
+  /**
+   * Holds the scope of a later localization until this scope is closed or detached. If this scope
+   * was already detached, {@code scope} is detached into the calling thread's liveness scope.
+   *
+   * @param scope the later scope
+   */
+  void add(LocalScope scope) {
+    later.add(scope);
+    if (closed.get()) {
+      closeLater();
+    }
+  }
+
+  /**
+   * Hands the liveness of the fetched tables to the calling thread's current liveness scope, and
+   * closes the leases. The later scopes are detached too.
+   */
+  void detach() {
+    // note: marked first, so that a later scope added meanwhile is detached too
+    if (!closed.get()) {
+      detached = true;
+    }
+    if (closed.compareAndSet(false, true)) {
+      liveness.transferTo(LivenessScopeStack.peek());
+      closeLeases();
+      closeLater();
+    }
+  }
+
+  /** Releases the fetched tables, and closes the leases and the later scopes. */
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true)) {
+      try {
+        liveness.release();
+      } finally {
+        closeLeases();
+        closeLater();
+      }
+    }
+  }
+
+  private void closeLeases() {
+    PQClientPool.Lease lease;
+    while ((lease = leases.poll()) != null) {
+      lease.close();
+    }
+  }
+
+  private void closeLater() {
+    LocalScope scope;
+    while ((scope = later.poll()) != null) {
+      if (detached) {
+        scope.detach();
+      } else {
+        scope.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.illumon.iris.db.tables.ColumnDefinition;
+import com.illumon.iris.db.tables.live.LiveTableMonitor;
+import com.illumon.iris.db.tables.utils.DBDateTime;
+import com.illumon.iris.db.tables.utils.TableTools;
+import com.illumon.iris.db.v2.sources.ColumnSource;
+import com.illumon.iris.db.v2.utils.ColumnHolder;
+import com.illumon.iris.db.v2.utils.Index;
+import com.illumon.util.FunctionalInterfaces.ThrowingSupplier;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes localized reports to a single file, and reads them back, so that they can be rendered
+ * again to any sink without touching a persistent-query: to render into several sinks, to reproduce
+ * an incident, or to resend a failed email.
+ *
+ * <p>The file holds the item tree, as {@link ReportCodec} would write it, every {@link TableLocal}
+ * in a columnar binary form, and every local figure rendered as a PNG image. Figures are read back
+ * as {@link FigureImage figure images}. Columns of primitive, {@link Boolean}, {@link String} and
+ * {@link DBDateTime} types are kept as they are, columns of any other type are kept as their string
+ * values. {@link Lazy} items are resolved as they are written.
+ */
+public final class LocalSnapshot {
+
+  private static final byte[] MAGIC = {'R', 'P', 'T', 'L', 1};
+
+  private static final byte BYTE = 'b';
+  private static final byte SHORT = 's';
+  private static final byte CHAR = 'c';
+  private static final byte INT = 'i';
+  private static final byte LONG = 'l';
+  private static final byte FLOAT = 'f';
+  private static final byte DOUBLE = 'd';
+  private static final byte BOOLEAN = 'z';
+  private static final byte DATE_TIME = 't';
+  private static final byte STRING = 'S';
+
+  /**
+   * Writes the localized {@code reports} to {@code file}. Local figures are rendered within {@code
+   * deadline}.
+   *
+   * @param reports the localized reports
+   * @param file the file
+   * @param deadline the deadline
+   * @throws IOException if the file can not be written
+   */
+  public static void write(List<Report> reports, Path file, Deadline deadline) throws IOException {
+    try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+      write(reports, out, deadline);
+    }
+  }
+
+  /**
+   * Reads the localized reports from {@code file}.
+   *
+   * @param file the file
+   * @return the localized reports
+   * @throws IOException if the file can not be read, or is not a snapshot
+   */
+  public static List<Report> read(Path file) throws IOException {
+    try (final InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Writes the localized {@code reports} to {@code out}.
+   *
+   * @param reports the localized reports
+   * @param out the output stream
+   * @param deadline the deadline
+   * @throws IOException if the stream can not be written
+   */
+  public static void write(List<Report> reports, OutputStream out, Deadline deadline)
+      throws IOException {
+    final Locals locals = new Locals(deadline);
+    final List<Object> trees = new ArrayList<>(reports.size());
+    for (Report report : reports) {
+      trees.add(ReportTree.of(report, locals));
+    }
+    final DataOutputStream data = new DataOutputStream(out);
+    data.write(MAGIC);
+    writeBytes(data, ReportBinary.write(trees));
+    data.writeInt(locals.tables.size());
+    for (com.illumon.iris.db.tables.Table table : locals.tables) {
+      writeTable(data, table);
+    }
+    data.writeInt(locals.images.size());
+    for (byte[] image : locals.images) {
+      writeBytes(data, image);
+    }
+    data.flush();
+  }
+
+  /**
+   * Reads the localized reports from {@code in}.
+   *
+   * @param in the input stream
+   * @return the localized reports
+   * @throws IOException if the stream can not be read, or is not a snapshot
+   */
+  public static List<Report> read(InputStream in) throws IOException {
+    final DataInputStream data = new DataInputStream(in);
+    final byte[] magic = new byte[MAGIC.length];
+    data.readFully(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException("Not a local snapshot, or an unsupported version");
+    }
+    final Object trees = ReportBinary.read(readBytes(data));
+    final List<com.illumon.iris.db.tables.Table> tables = new ArrayList<>();
+    for (int i = data.readInt(); i > 0; --i) {
+      tables.add(readTable(data));
+    }
+    final List<byte[]> images = new ArrayList<>();
+    for (int i = data.readInt(); i > 0; --i) {
+      images.add(readBytes(data));
+    }
+    final ReportTree.LocalsIn locals =
+        new ReportTree.LocalsIn() {
+          @Override
+          public com.illumon.iris.db.tables.Table table(long index) {
+            return tables.get(Math.toIntExact(index));
+          }
+
+          @Override
+          public byte[] image(long index) {
+            return images.get(Math.toIntExact(index));
+          }
+        };
+    if (!(trees instanceof List)) {
+      throw new IOException("Expected a list of reports");
+    }
+    final List<Report> out = new ArrayList<>();
+    for (Object tree : (List<?>) trees) {
+      out.add(ReportTree.toReport(tree, locals));
+    }
+    return out;
+  }
+
+  private static void writeTable(DataOutputStream out, com.illumon.iris.db.tables.Table table)
+      throws IOException {
+    if (!table.isLive()) {
+      writeColumns(out, table);
+      return;
+    }
+    // note: a ticking table is written at one logical clock step, so its columns agree
+    final IOException failure =
+        LiveTableMonitor.DEFAULT
+            .sharedLock()
+            .computeLocked(
+                (ThrowingSupplier<IOException, RuntimeException>)
+                    () -> {
+                      try {
+                        writeColumns(out, table);
+                        return null;
+                      } catch (IOException e) {
+                        return e;
+                      }
+                    });
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static void writeColumns(DataOutputStream out, com.illumon.iris.db.tables.Table table)
+      throws IOException {
+    out.writeInt(table.getDefinition().getColumnList().size());
+    out.writeInt(Math.toIntExact(table.size()));
+    for (ColumnDefinition<?> column : table.getDefinition().getColumnList()) {
+      final Class<?> type = column.getDataType();
+      final ColumnSource<?> source = table.getColumnSource(column.getName());
+      out.writeUTF(column.getName());
+      if (type == byte.class) {
+        out.writeByte(BYTE);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          out.writeByte(source.getByte(it.nextLong()));
+        }
+      } else if (type == short.class) {
+        out.writeByte(SHORT);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          out.writeShort(source.getShort(it.nextLong()));
+        }
+      } else if (type == char.class) {
+        out.writeByte(CHAR);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          out.writeChar(source.getChar(it.nextLong()));
+        }
+      } else if (type == int.class) {
+        out.writeByte(INT);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          out.writeInt(source.getInt(it.nextLong()));
+        }
+      } else if (type == long.class) {
+        out.writeByte(LONG);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          out.writeLong(source.getLong(it.nextLong()));
+        }
+      } else if (type == float.class) {
+        out.writeByte(FLOAT);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          out.writeFloat(source.getFloat(it.nextLong()));
+        }
+      } else if (type == double.class) {
+        out.writeByte(DOUBLE);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          out.writeDouble(source.getDouble(it.nextLong()));
+        }
+      } else if (type == Boolean.class) {
+        out.writeByte(BOOLEAN);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          final Object value = source.get(it.nextLong());
+          out.writeByte(value == null ? -1 : ((Boolean) value) ? 1 : 0);
+        }
+      } else if (type == DBDateTime.class) {
+        out.writeByte(DATE_TIME);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          final Object value = source.get(it.nextLong());
+          out.writeLong(value == null ? Long.MIN_VALUE : ((DBDateTime) value).getNanos());
+        }
+      } else {
+        // note: any other type is kept as its string value
+        out.writeByte(STRING);
+        for (final Index.Iterator it = table.getIndex().iterator(); it.hasNext(); ) {
+          final Object value = source.get(it.nextLong());
+          if (value == null) {
+            out.writeInt(-1);
+          } else {
+            writeBytes(out, value.toString().getBytes(StandardCharsets.UTF_8));
+          }
+        }
+      }
+    }
+  }
+
+  private static com.illumon.iris.db.tables.Table readTable(DataInputStream in)
+      throws IOException {
+    final int columns = in.readInt();
+    final int rows = in.readInt();
+    final ColumnHolder<?>[] holders = new ColumnHolder<?>[columns];
+    for (int c = 0; c < columns; ++c) {
+      final String name = in.readUTF();
+      final byte type = in.readByte();
+      switch (type) {
+        case BYTE:
+          {
+            final byte[] values = new byte[rows];
+            for (int r = 0; r < rows; ++r) {
+              values[r] = in.readByte();
+            }
+            holders[c] = TableTools.byteCol(name, values);
+            break;
+          }
+        case SHORT:
+          {
+            final short[] values = new short[rows];
+            for (int r = 0; r < rows; ++r) {
+              values[r] = in.readShort();
+            }
+            holders[c] = TableTools.shortCol(name, values);
+            break;
+          }
+        case CHAR:
+          {
+            final char[] values = new char[rows];
+            for (int r = 0; r < rows; ++r) {
+              values[r] = in.readChar();
+            }
+            holders[c] = TableTools.charCol(name, values);
+            break;
+          }
+        case INT:
+          {
+            final int[] values = new int[rows];
+            for (int r = 0; r < rows; ++r) {
+              values[r] = in.readInt();
+            }
+            holders[c] = TableTools.intCol(name, values);
+            break;
+          }
+        case LONG:
+          {
+            final long[] values = new long[rows];
+            for (int r = 0; r < rows; ++r) {
+              values[r] = in.readLong();
+            }
+            holders[c] = TableTools.longCol(name, values);
+            break;
+          }
+        case FLOAT:
+          {
+            final float[] values = new float[rows];
+            for (int r = 0; r < rows; ++r) {
+              values[r] = in.readFloat();
+            }
+            holders[c] = TableTools.floatCol(name, values);
+            break;
+          }
+        case DOUBLE:
+          {
+            final double[] values = new double[rows];
+            for (int r = 0; r < rows; ++r) {
+              values[r] = in.readDouble();
+            }
+            holders[c] = TableTools.doubleCol(name, values);
+            break;
+          }
+        case BOOLEAN:
+          {
+            final Boolean[] values = new Boolean[rows];
+            for (int r = 0; r < rows; ++r) {
+              final byte value = in.readByte();
+              values[r] = value < 0 ? null : value == 1;
+            }
+            holders[c] = TableTools.col(name, values);
+            break;
+          }
+        case DATE_TIME:
+          {
+            final DBDateTime[] values = new DBDateTime[rows];
+            for (int r = 0; r < rows; ++r) {
+              final long nanos = in.readLong();
+              values[r] = nanos == Long.MIN_VALUE ? null : new DBDateTime(nanos);
+            }
+            holders[c] = TableTools.col(name, values);
+            break;
+          }
+        case STRING:
+          {
+            final String[] values = new String[rows];
+            for (int r = 0; r < rows; ++r) {
+              final int length = in.readInt();
+              if (length >= 0) {
+                final byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                values[r] = new String(bytes, StandardCharsets.UTF_8);
+              }
+            }
+            holders[c] = TableTools.col(name, values);
+            break;
+          }
+        default:
+          throw new IOException("Unknown column type '" + (char) type + "'");
+      }
+    }
+    return TableTools.newTable(holders);
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid length " + length);
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /** Collects the local tables, and renders the local figures, as the tree is built. */
+  private static final class Locals implements ReportTree.LocalsOut {
+    private final Deadline deadline;
+    private final List<com.illumon.iris.db.tables.Table> tables = new ArrayList<>();
+    private final List<byte[]> images = new ArrayList<>();
+
+    Locals(Deadline deadline) {
+      this.deadline = deadline;
+    }
+
+    @Override
+    public long table(com.illumon.iris.db.tables.Table table) {
+      tables.add(table);
+      return tables.size() - 1;
+    }
+
+    @Override
+    public long image(Figure<?> figure) {
+      images.add(render(figure));
+      return images.size() - 1;
+    }
+
+    private byte[] render(Figure<?> figure) {
+      try {
+        final File file = File.createTempFile("snapshot", ".png");
+        try {
+          figure.walk(SaveFigure.builder().file(file).deadline(deadline).build());
+          return Files.readAllBytes(file.toPath());
+        } finally {
+          if (!file.delete()) {
+            file.deleteOnExit();
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private LocalSnapshot() {}
+}
@@ -0,0 +1,672 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportEntryException;
+import com.illumon.util.SafeCloseable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immutables.value.Value.Check;
+import org.immutables.value.Value.Default;
+import org.immutables.value.Value.Immutable;
+
+/**
+ * The strategy for localizing {@link Report reports}: resolving every {@link TablePQ}, {@link
+ * FigurePQ} and {@link ScalarPQ} into the equivalent {@link TableLocal}, {@link FigureLocal} and
+ * {@link ScalarLocal}.
+ */
+@Immutable(builder = true, copy = true)
+public abstract class Localization {
+
+  /** The attribute key of the reason on placeholder {@link Text texts}. */
+  static final String PLACEHOLDER = "placeholder";
+
+  /** The attribute key of the time spent before giving up on placeholder {@link Text texts}. */
+  static final String ELAPSED = "elapsed";
+
+  private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+  private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /** What to do when a remote item fails to localize, or misses its timeout. */
+  public enum OnFailure {
+    /** Fail the whole localization. */
+    FAIL,
+
+    /**
+     * Replace the remote item with a {@link Text} placeholder that holds the reason and the time
+     * spent, and localize the rest of the reports as usual. Placeholders are never cached.
+     *
+     * @see Text#placeholder()
+     */
+    PLACEHOLDER
+  }
+
+  /** The builder. */
+  public static class Builder extends ImmutableLocalization.Builder {}
+
+  /**
+   * A new builder.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Localizes one remote item at a time, on the calling thread.
+   *
+   * @return the localization
+   */
+  public static Localization sequential() {
+    return builder().build();
+  }
+
+  /**
+   * Fetches from up to {@code parallelism} persistent-queries concurrently.
+   *
+   * @param parallelism the parallelism
+   * @return the localization
+   */
+  public static Localization parallel(int parallelism) {
+    return builder().parallelism(parallelism).build();
+  }
+
+  /**
+   * The maximum number of persistent-queries to fetch from concurrently. The remote items that
+   * reference the same persistent-query are always fetched together, in one round-trip. Defaults to
+   * {@code 1}, in which case all remote items are localized on the calling thread. The shards of a
+   * {@link TableShardedPQ} are fetched concurrently regardless, with one thread per shard, in
+   * addition to the threads for the other persistent-queries.
+   *
+   * @return the parallelism
+   */
+  @Default
+  public int parallelism() {
+    return 1;
+  }
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #parallelism()}.
+   *
+   * @param parallelism the parallelism
+   * @return the new instance
+   */
+  public abstract Localization withParallelism(int parallelism);
+
+  /**
+   * Whether the tables fetched from the same persistent-query are all captured at the same logical
+   * clock step, so that related tables in a report agree with each other. The persistent-query
+   * holds off its updates for as long as the tables take to snapshot. Tables found in the {@link
+   * #cache()} are not refetched, so they may have been captured at an earlier step. Defaults to
+   * {@code false}.
+   *
+   * @return true if snapshots are consistent per persistent-query
+   * @see ReportBatchCARQ#consistent()
+   */
+  @Default
+  public boolean consistentSnapshots() {
+    return false;
+  }
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #consistentSnapshots()}.
+   *
+   * @param consistentSnapshots whether snapshots are consistent per persistent-query
+   * @return the new instance
+   */
+  public abstract Localization withConsistentSnapshots(boolean consistentSnapshots);
+
+  /**
+   * The pool of persistent-query clients that fetches are made with. Defaults to {@link
+   * PQClientPool#getDefault()}.
+   *
+   * @return the client pool
+   */
+  @Default
+  public PQClientPool clientPool() {
+    return PQClientPool.getDefault();
+  }
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #clientPool()}.
+   *
+   * @param clientPool the client pool
+   * @return the new instance
+   */
+  public abstract Localization withClientPool(PQClientPool clientPool);
+
+  /**
+   * The limits on concurrent fetches per persistent-query and per worker host. Fetches over a limit
+   * wait their turn, within their deadline. Share the same bulkheads between localizations to limit
+   * them together. Defaults to {@link Bulkheads#unlimited()}.
+   *
+   * @return the bulkheads
+   */
+  @Default
+  public Bulkheads bulkheads() {
+    return Bulkheads.unlimited();
+  }
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #bulkheads()}.
+   *
+   * @param bulkheads the bulkheads
+   * @return the new instance
+   */
+  public abstract Localization withBulkheads(Bulkheads bulkheads);
+
+  /**
+   * The circuit breakers of the persistent-queries. The fetches from a persistent-query that keeps
+   * failing fail fast, and are handled by {@link #onFailure()}, until a probe succeeds. Share the
+   * same circuit breakers between localizations, such as between the runs of a recurring report, so
+   * that failures are counted across them. Defaults to {@link CircuitBreakers#disabled()}.
+   *
+   * @return the circuit breakers
+   */
+  @Default
+  public CircuitBreakers circuitBreakers() {
+    return CircuitBreakers.disabled();
+  }
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #circuitBreakers()}.
+   *
+   * @param circuitBreakers the circuit breakers
+   * @return the new instance
+   */
+  public abstract Localization withCircuitBreakers(CircuitBreakers circuitBreakers);
+
+  /**
+   * The cache of localized items. Remote items found in the cache are not fetched.
+   *
+   * @return the cache
+   */
+  public abstract Optional<LocalCache> cache();
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #cache()}.
+   *
+   * @param cache the cache
+   * @return the new instance
+   */
+  public abstract Localization withCache(LocalCache cache);
+
+  /**
+   * What to do when a remote item fails to localize, or misses its timeout. Defaults to {@link
+   * OnFailure#FAIL}.
+   *
+   * @return the failure policy
+   */
+  @Default
+  public OnFailure onFailure() {
+    return OnFailure.FAIL;
+  }
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #onFailure()}.
+   *
+   * @param onFailure the failure policy
+   * @return the new instance
+   */
+  public abstract Localization withOnFailure(OnFailure onFailure);
+
+  /**
+   * The timeout for the remote items of each persistent-query, measured from when their fetch
+   * starts. Fetches are always bounded by the deadline of the whole localization as well.
+   *
+   * @return the item timeout
+   */
+  public abstract Optional<Duration> itemTimeout();
+
+  /**
+   * Creates a copy of this localization but with the new value for {@link #itemTimeout()}.
+   *
+   * @param itemTimeout the item timeout
+   * @return the new instance
+   */
+  public abstract Localization withItemTimeout(Duration itemTimeout);
+
+  /**
+   * Localizes the report.
+   *
+   * @param report the report
+   * @param log the log
+   * @param timeout the timeout
+   * @return the localized report
+   */
+  public final Report toLocal(Report report, Logger log, Duration timeout) {
+    return toLocal(report, log, Deadline.after(timeout));
+  }
+
+  /**
+   * Localizes the report.
+   *
+   * @param report the report
+   * @param log the log
+   * @param deadline the deadline
+   * @return the localized report
+   */
+  public final Report toLocal(Report report, Logger log, Deadline deadline) {
+    return toLocal(Collections.singletonList(report), log, deadline).get(0);
+  }
+
+  /**
+   * Localizes the reports.
+   *
+   * @param reports the reports
+   * @param log the log
+   * @param timeout the timeout
+   * @return the localized reports
+   */
+  public final List<Report> toLocal(List<Report> reports, Logger log, Duration timeout) {
+    return toLocal(reports, log, Deadline.after(timeout));
+  }
+
+  /**
+   * Localizes the reports. All of the remote items across all of the reports are fetched before the
+   * reports are rebuilt, in their original order. Identical remote items are only fetched once, and
+   * the same localized item is shared by every place that references it.
+   *
+   * <p>Every fetch draws from the remaining budget of {@code deadline}, no matter how many
+   * persistent-queries are involved.
+   *
+   * <p>Lazy items are left lazy: each is resolved when it is first rendered, and the remote items
+   * it resolves to are only then fetched, within what is left of {@code deadline}.
+   *
+   * @param reports the reports
+   * @param log the log
+   * @param deadline the deadline
+   * @return the localized reports
+   */
+  public final List<Report> toLocal(List<Report> reports, Logger log, Deadline deadline) {
+    // note: hands the fetched tables to the caller's liveness scope, as before leases existed
+    return open(reports, log, deadline).detach();
+  }
+
+  /**
+   * Localizes the reports, as {@link #toLocal(List, Logger, Deadline)} does, but holds on to the
+   * fetched tables and the persistent-query clients they were fetched with until the result is
+   * closed. Close it once the reports have been rendered and delivered.
+   *
+   * @param reports the reports
+   * @param log the log
+   * @param deadline the deadline
+   * @return the localized reports
+   */
+  @SuppressWarnings("try")
+  public final LocalizedReports open(List<Report> reports, Logger log, Deadline deadline) {
+    final LocalScope scope = new LocalScope();
+    try {
+      final List<Report> out = new ArrayList<>(reports.size());
+      try (final SafeCloseable entered = scope.enter()) {
+        final RemoteItems remote = new RemoteItems();
+        for (Report report : reports) {
+          report.item().walk(remote);
+        }
+        final Map<Item<?>, Item<?>> localized = localize(remote, log, deadline, scope);
+        final ToLocalVisitor.Lazies lazies =
+            new ToLocalVisitor.Lazies(later -> localizeLater(later, log, deadline, scope));
+        for (Report report : reports) {
+          out.add(
+              Report.of(
+                  report.title(),
+                  ToLocalVisitor.toLocal(report.item(), localized, lazies),
+                  report.timestamp()));
+        }
+      }
+      return new LocalizedReports(out, scope);
+    } catch (RuntimeException | Error e) {
+      scope.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Localizes the remote items that a lazy item resolved to, once it is rendered. What is fetched
+   * is held by {@code scope}, or handed to the rendering thread's liveness scope if {@code scope}
+   * was detached.
+   */
+  @SuppressWarnings("try")
+  private Map<Item<?>, Item<?>> localizeLater(
+      RemoteItems remote, Logger log, Deadline deadline, LocalScope scope) {
+    final LocalScope later = new LocalScope();
+    try {
+      final Map<Item<?>, Item<?>> out;
+      try (final SafeCloseable entered = later.enter()) {
+        out = localize(remote, log, deadline, later);
+      }
+      scope.add(later);
+      return out;
+    } catch (RuntimeException | Error e) {
+      later.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Explains what localizing {@code reports} would fetch, without fetching any table or figure:
+   * only the definitions and row counts of the tables are asked for. Up to {@link #parallelism()}
+   * persistent-queries are asked concurrently, through the {@link #bulkheads()} and {@link
+   * #circuitBreakers()}. The cache is not consulted. A persistent-query that fails, or misses the
+   * deadline, is listed in {@link Explanation#failures()} instead of failing the explanation.
+   *
+   * @param reports the reports
+   * @param log the log
+   * @param deadline the deadline
+   * @return the explanation
+   */
+  public final Explanation explain(List<Report> reports, Logger log, Deadline deadline) {
+    final RemoteItems remote = new RemoteItems();
+    for (Report report : reports) {
+      report.item().walk(remote);
+    }
+    final List<PQBatch> batches = PQBatch.of(remote, Collections.emptyMap());
+    final Explanation.Builder out = Explanation.builder();
+    if (batches.isEmpty()) {
+      return out.build();
+    }
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(parallelism(), batches.size()), Localization::newThread);
+    try {
+      final List<Future<Explanation>> futures = new ArrayList<>(batches.size());
+      for (PQBatch batch : batches) {
+        futures.add(executor.submit(() -> batch.explain(this, log, deadline)));
+      }
+      for (int i = 0; i < batches.size(); ++i) {
+        final PQBatch batch = batches.get(i);
+        final Future<Explanation> future = futures.get(i);
+        try {
+          final Duration remaining =
+              deadline.check("explaining " + PQToGroovyish.toString(batch.pq()));
+          final Explanation explained = future.get(remaining.toNanos(), TimeUnit.NANOSECONDS);
+          out.addAllPqs(explained.pqs())
+              .addAllTables(explained.tables())
+              .addAllFigures(explained.figures());
+        } catch (ExecutionException e) {
+          out.addAllPqs(batch.sources()).putFailures(batch.pq(), why(e.getCause()));
+        } catch (TimeoutException e) {
+          future.cancel(true);
+          out.addAllPqs(batch.sources()).putFailures(batch.pq(), why(e));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+      return out.build();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Check
+  final void check() {
+    if (parallelism() <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+    if (itemTimeout().isPresent()
+        && (itemTimeout().get().isNegative() || itemTimeout().get().isZero())) {
+      throw new IllegalArgumentException("itemTimeout must be positive");
+    }
+  }
+
+  private Map<Item<?>, Item<?>> localize(
+      RemoteItems remote, Logger log, Deadline deadline, LocalScope scope) {
+    final Map<Item<?>, Item<?>> failed = new HashMap<>();
+    if (!cache().isPresent()) {
+      final Map<Item<?>, Item<?>> out =
+          fetch(remote, Collections.emptyMap(), log, deadline, scope, failed);
+      out.putAll(failed);
+      return out;
+    }
+    final LocalCache cache = cache().get();
+    final Map<Item<?>, Item<?>> out = new HashMap<>();
+    final RemoteItems misses = new RemoteItems();
+    final Map<TablePQ, TableLocal> stale = new HashMap<>();
+    for (TablePQ table : remote.tables()) {
+      final Item<?> cached = cache.get(table);
+      if (cached != null) {
+        out.put(table, cached);
+        continue;
+      }
+      misses.visit(table);
+      final TableLocal expired = cache.stale(table);
+      if (expired != null) {
+        stale.put(table, expired);
+      }
+    }
+    for (FigurePQ figure : remote.figures()) {
+      final Item<?> cached = cache.get(figure);
+      if (cached != null) {
+        out.put(figure, cached);
+      } else {
+        misses.visit(figure);
+      }
+    }
+    for (ScalarPQ scalar : remote.scalars()) {
+      final Item<?> cached = cache.get(scalar);
+      if (cached != null) {
+        out.put(scalar, cached);
+      } else {
+        misses.visit(scalar);
+      }
+    }
+    // note: revalidated tables are put again, which renews their time-to-live
+    final Map<Item<?>, Item<?>> fetched =
+        fetch(misses, stale, log, deadline, scope, failed);
+    for (Map.Entry<Item<?>, Item<?>> e : fetched.entrySet()) {
+      cache.put(e.getKey(), e.getValue());
+    }
+    out.putAll(fetched);
+    out.putAll(failed);
+    return out;
+  }
+
+  private Map<Item<?>, Item<?>> fetch(
+      RemoteItems remote,
+      Map<TablePQ, TableLocal> stale,
+      Logger log,
+      Deadline deadline,
+      LocalScope scope,
+      Map<Item<?>, Item<?>> failed) {
+    final List<PQBatch> batches = PQBatch.of(remote, stale);
+    final Map<Item<?>, Item<?>> out = new HashMap<>();
+    if (batches.isEmpty()) {
+      return out;
+    }
+    final List<PQBatch> shardBatches = new ArrayList<>();
+    final List<PQBatch> otherBatches = new ArrayList<>();
+    for (PQBatch batch : batches) {
+      (batch.hasShard() ? shardBatches : otherBatches).add(batch);
+    }
+    if (!itemTimeout().isPresent()
+        && shardBatches.size() <= 1
+        && (parallelism() == 1 || batches.size() <= 1)) {
+      for (PQBatch batch : batches) {
+        final long start = System.nanoTime();
+        try {
+          out.putAll(batch.fetch(this, log, deadline, scope));
+        } catch (Exception e) {
+          failed.putAll(onFailure(batch, e, Duration.ofNanos(System.nanoTime() - start)));
+        }
+      }
+      return out;
+    }
+    // note: with an item timeout, even a single batch is fetched on another thread so that the
+    // wait for it can be bounded
+    // note: the shards of a sharded table are always fetched concurrently, on their own threads,
+    // so that they neither wait for nor hold up the other batches bounded by the parallelism
+    final List<ExecutorService> executors = new ArrayList<>(2);
+    try {
+      final List<Attempt> attempts = new ArrayList<>(batches.size());
+      submit(otherBatches, parallelism(), executors, attempts, log, deadline, scope);
+      submit(shardBatches, shardBatches.size(), executors, attempts, log, deadline, scope);
+      for (Attempt attempt : attempts) {
+        attempt.await(out, failed);
+      }
+      return out;
+    } finally {
+      for (ExecutorService executor : executors) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private void submit(
+      List<PQBatch> batches,
+      int threads,
+      List<ExecutorService> executors,
+      List<Attempt> attempts,
+      Logger log,
+      Deadline deadline,
+      LocalScope scope) {
+    if (batches.isEmpty()) {
+      return;
+    }
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(threads, batches.size()), Localization::newThread);
+    executors.add(executor);
+    for (PQBatch batch : batches) {
+      final Attempt attempt = new Attempt(batch, log, deadline, scope);
+      attempt.future = executor.submit(attempt);
+      attempts.add(attempt);
+    }
+  }
+
+  private Map<Item<?>, Item<?>> onFailure(PQBatch batch, Throwable reason, Duration elapsed) {
+    if (onFailure() == OnFailure.FAIL) {
+      throw new RuntimeException(reason);
+    }
+    return batch.placeholders(reason, elapsed);
+  }
+
+  /**
+   * Creates the placeholder for a remote item that could not be localized, as {@link
+   * OnFailure#PLACEHOLDER} does. The placeholder keeps the name of the item.
+   *
+   * @param item the remote item
+   * @param reason the reason
+   * @param elapsed the time spent before giving up
+   * @return the placeholder
+   */
+  public static Text placeholder(Item<?> item, Throwable reason, Duration elapsed) {
+    final String why = why(reason);
+    Text text =
+        Text.of(String.format("Unavailable after %d ms: %s", elapsed.toMillis(), why))
+            .withAttribute(PLACEHOLDER, why)
+            .withAttribute(ELAPSED, elapsed);
+    if (item.name().isPresent()) {
+      text = text.withName(item.name().get());
+    }
+    return text;
+  }
+
+  private static String why(Throwable reason) {
+    if (reason instanceof ReportEntryException) {
+      // note: already describes the remote failure
+      return reason.getMessage();
+    }
+    return reason.getMessage() == null
+        ? reason.getClass().getSimpleName()
+        : reason.getClass().getSimpleName() + ": " + reason.getMessage();
+  }
+
+  /** A batch fetched on the executor, with its own deadline from when the fetch starts. */
+  private final class Attempt implements Callable<Map<Item<?>, Item<?>>> {
+
+    private final PQBatch batch;
+    private final Logger log;
+    private final Deadline deadline;
+    private final LocalScope scope;
+    private volatile Deadline started;
+    private Future<Map<Item<?>, Item<?>>> future;
+
+    Attempt(PQBatch batch, Logger log, Deadline deadline, LocalScope scope) {
+      this.batch = batch;
+      this.log = log;
+      this.deadline = deadline;
+      this.scope = scope;
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public Map<Item<?>, Item<?>> call() throws Exception {
+      final Deadline started = deadline.within(itemTimeout().orElseGet(deadline::remaining));
+      this.started = started;
+      try (final SafeCloseable entered = scope.enter()) {
+        return batch.fetch(Localization.this, log, started, scope);
+      }
+    }
+
+    void await(Map<Item<?>, Item<?>> out, Map<Item<?>, Item<?>> failed) {
+      try {
+        out.putAll(get());
+      } catch (ExecutionException e) {
+        failed.putAll(onFailure(batch, e.getCause(), elapsed()));
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        failed.putAll(onFailure(batch, e, elapsed()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+
+    private Map<Item<?>, Item<?>> get()
+        throws ExecutionException, TimeoutException, InterruptedException {
+      // note: polls, since the item timeout only starts once the fetch does
+      while (true) {
+        final Deadline bound = started != null ? started : deadline;
+        final Duration remaining =
+            bound.check("fetching from " + PQToGroovyish.toString(batch.pq()));
+        final long waitNanos = Math.min(remaining.toNanos(), POLL_NANOS);
+        try {
+          return future.get(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          // check the bound again
+        }
+      }
+    }
+
+    private Duration elapsed() {
+      final Deadline started = this.started;
+      return started != null ? started.elapsed() : deadline.elapsed();
+    }
+  }
+
+  private static Thread newThread(Runnable runnable) {
+    final Thread thread = new Thread(runnable, "Localization-" + THREAD_ID.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
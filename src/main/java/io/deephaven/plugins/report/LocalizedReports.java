@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.illumon.util.SafeCloseable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Localized {@link Report reports}, along with the resources they hold: the fetched tables, and the
+ * leases on the persistent-query clients they were fetched with. Closing releases all of them, so
+ * it should only be done once the reports have been rendered and delivered.
+ *
+ * @see Localization#open(List, com.fishlib.io.logger.Logger, Deadline)
+ */
+public final class LocalizedReports implements SafeCloseable {
+
+  private final List<Report> reports;
+  private final LocalScope scope;
+
+  LocalizedReports(List<Report> reports, LocalScope scope) {
+    this.reports = Collections.unmodifiableList(reports);
+    this.scope = Objects.requireNonNull(scope);
+  }
+
+  /**
+   * The localized reports, in the original order.
+   *
+   * @return the reports
+   */
+  public List<Report> reports() {
+    return reports;
+  }
+
+  /** Releases the fetched tables, and returns the clients to the pool. */
+  @Override
+  public void close() {
+    scope.close();
+  }
+
+  List<Report> detach() {
+    scope.detach();
+    return reports;
+  }
+}
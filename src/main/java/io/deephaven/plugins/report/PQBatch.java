@@ -0,0 +1,591 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.db.plot.FigureWidget;
+import com.illumon.iris.db.tables.remote.Inflatable;
+import com.illumon.iris.db.tables.remote.RemoteDatabase;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportBatchCARQResult;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportEntryException;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportScalarSpec;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportTableSpec;
+import com.illumon.iris.db.tables.remote.ReportExplainCARQ;
+import com.illumon.iris.db.tables.remote.ReportExplainCARQ.ReportExplainCARQResult;
+import com.illumon.iris.db.tables.remote.ReportExplainCARQ.ReportTableExplain;
+import com.illumon.iris.db.tables.remote.ReportTableCARQ.ReportTableCARQResult;
+import com.illumon.util.SafeCloseable;
+import io.deephaven.plugins.report.Explanation.FigureExplanation;
+import io.deephaven.plugins.report.Explanation.TableExplanation;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The remote items that reference the same persistent-query, fetched together in one round-trip via
+ * {@link ReportBatchCARQ}.
+ *
+ * <p>When the items name replicas of the persistent-query, the fetch is hedged: it is sent to the
+ * primary first, and if that has not answered within its learned {@link #HEDGE_PERCENTILE} latency,
+ * to the next replica as well. The first answer is taken, and the other fetches are cancelled. Only
+ * the slowest fetches are hedged, so replicas add little load.
+ */
+final class PQBatch {
+
+  /** The latency percentile of the primary after which a fetch is hedged. */
+  static final double HEDGE_PERCENTILE = 0.95;
+
+  /** The hedge delay until enough latencies of the primary have been learned. */
+  static final Duration DEFAULT_HEDGE_DELAY = Duration.ofSeconds(1);
+
+  /** The number of persistent-queries whose latencies are kept, the least recently used evicted. */
+  static final int MAX_LATENCIES = 1024;
+
+  private static final Map<PQ, Latencies> LATENCIES =
+      new LinkedHashMap<PQ, Latencies>(16, 0.75f, true) {
+        private static final long serialVersionUID = 4139213476123385781L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PQ, Latencies> eldest) {
+          return size() > MAX_LATENCIES;
+        }
+      };
+
+  private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+  private static final ExecutorService HEDGE_EXECUTOR =
+      Executors.newCachedThreadPool(PQBatch::newThread);
+
+  private static final ExecutorService REMOTE_EXECUTOR =
+      Executors.newCachedThreadPool(PQBatch::newThread);
+
+  /**
+   * Groups the remote items by {@link PQ} and replicas, in the order each persistent-query is first
+   * referenced. The tables with an expired localized table in {@code stale} are revalidated rather
+   * than fetched again.
+   *
+   * @param remote the remote items
+   * @param stale the expired localized tables, keyed by the remote tables
+   * @return the batches
+   */
+  static List<PQBatch> of(RemoteItems remote, Map<TablePQ, TableLocal> stale) {
+    final Map<List<PQ>, PQBatch> batches = new LinkedHashMap<>();
+    for (TablePQ table : remote.tables()) {
+      final PQBatch batch =
+          batches.computeIfAbsent(sources(table.pq(), table.replicas()), PQBatch::new);
+      batch.tables.add(table);
+      batch.hasShard |= remote.isShard(table);
+      if (stale.containsKey(table)) {
+        batch.stale.put(table, stale.get(table));
+      }
+    }
+    for (FigurePQ figure : remote.figures()) {
+      batches
+          .computeIfAbsent(sources(figure.pq(), figure.replicas()), PQBatch::new)
+          .figures
+          .add(figure);
+    }
+    for (ScalarPQ scalar : remote.scalars()) {
+      batches
+          .computeIfAbsent(sources(scalar.pq(), scalar.replicas()), PQBatch::new)
+          .scalars
+          .add(scalar);
+    }
+    return new ArrayList<>(batches.values());
+  }
+
+  private static List<PQ> sources(PQ pq, List<PQ> replicas) {
+    final List<PQ> sources = new ArrayList<>(replicas.size() + 1);
+    sources.add(pq);
+    sources.addAll(replicas);
+    return sources;
+  }
+
+  private final PQ pq;
+  private final List<PQ> sources;
+  private final Set<TablePQ> tables;
+  private final Set<FigurePQ> figures;
+  private final Set<ScalarPQ> scalars;
+  private final Map<TablePQ, TableLocal> stale;
+  private boolean hasShard;
+
+  private PQBatch(List<PQ> sources) {
+    this.pq = Objects.requireNonNull(sources.get(0));
+    this.sources = sources;
+    this.tables = new LinkedHashSet<>();
+    this.figures = new LinkedHashSet<>();
+    this.scalars = new LinkedHashSet<>();
+    this.stale = new HashMap<>();
+  }
+
+  PQ pq() {
+    return pq;
+  }
+
+  List<PQ> sources() {
+    return sources;
+  }
+
+  /**
+   * Whether the batch fetches a shard of a {@link TableShardedPQ}. The shards of a sharded table
+   * are always fetched concurrently, whatever the parallelism.
+   *
+   * @return true if the batch fetches a shard
+   */
+  boolean hasShard() {
+    return hasShard;
+  }
+
+  /**
+   * Creates a placeholder for every item of the batch.
+   *
+   * @param reason the reason the batch could not be fetched
+   * @param elapsed the time spent before giving up
+   * @return the placeholders, keyed by the remote items
+   */
+  Map<Item<?>, Item<?>> placeholders(Throwable reason, Duration elapsed) {
+    final Map<Item<?>, Item<?>> out = new HashMap<>();
+    for (TablePQ table : tables) {
+      out.put(table, Localization.placeholder(table, reason, elapsed));
+    }
+    for (FigurePQ figure : figures) {
+      out.put(figure, Localization.placeholder(figure, reason, elapsed));
+    }
+    for (ScalarPQ scalar : scalars) {
+      out.put(scalar, Localization.placeholder(scalar, reason, elapsed));
+    }
+    return out;
+  }
+
+  /**
+   * Fetches every item of the batch, checking {@code deadline} before each stage.
+   *
+   * @param localization the localization, for its options
+   * @param log the log
+   * @param deadline the deadline
+   * @param scope the scope that holds the leases on the clients until the localization is closed
+   * @return the localized items, keyed by the remote items
+   * @throws Exception if the fetch fails
+   */
+  Map<Item<?>, Item<?>> fetch(
+      Localization localization, Logger log, Deadline deadline, LocalScope scope)
+      throws Exception {
+    final long start = System.nanoTime();
+    // note: different remote items may still share the same spec or figure name, such as when
+    // they only differ by attributes
+    // note: the spec of a windowed table depends on its window, so it is only taken once
+    final Map<TablePQ, ReportTableSpec> tableSpecs = new HashMap<>();
+    final Map<ReportTableSpec, Integer> specs = new LinkedHashMap<>();
+    for (TablePQ table : tables) {
+      final Optional<String> lastSeen =
+          stale.containsKey(table) ? LocalCache.version(stale.get(table)) : Optional.empty();
+      final ReportTableSpec spec = table.spec(lastSeen);
+      tableSpecs.put(table, spec);
+      specs.putIfAbsent(spec, specs.size());
+    }
+    final Map<String, Integer> figureNames = new LinkedHashMap<>();
+    for (FigurePQ figure : figures) {
+      figureNames.putIfAbsent(figure.figureName(), figureNames.size());
+    }
+    final Map<ReportScalarSpec, Integer> scalarSpecs = new LinkedHashMap<>();
+    for (ScalarPQ scalar : scalars) {
+      scalarSpecs.putIfAbsent(scalar.spec(), scalarSpecs.size());
+    }
+    final ReportBatchCARQ query =
+        ReportBatchCARQ.of(
+            new ArrayList<>(specs.keySet()),
+            new ArrayList<>(figureNames.keySet()),
+            new ArrayList<>(scalarSpecs.keySet()),
+            localization.consistentSnapshots());
+
+    final Fetched fetched =
+        sources.size() == 1
+            ? fetchFrom(pq, query, localization, log, deadline, scope)
+            : hedge(query, localization, log, deadline, scope);
+
+    // note: only the fetch that was taken is localized, so windows are only appended to once
+    // note: an entry that failed on its own, such as a missing table, only fails its items
+    final Map<Item<?>, Item<?>> out = new HashMap<>();
+    for (TablePQ table : tables) {
+      final int index = specs.get(tableSpecs.get(table));
+      try {
+        final ReportTableCARQResult result = fetched.result.table(index);
+        if (result.isUnchanged()) {
+          out.put(table, stale.get(table));
+        } else {
+          out.put(
+              table,
+              table.toLocal(
+                  fetched.tables.get(index),
+                  result.firstRow(),
+                  result.version(),
+                  fetched.source.equals(pq)));
+        }
+      } catch (ReportEntryException e) {
+        out.put(table, failed(table, e, localization, start));
+      }
+    }
+    for (FigurePQ figure : figures) {
+      final int index = figureNames.get(figure.figureName());
+      try {
+        fetched.result.figure(index);
+        out.put(figure, figure.toLocal(fetched.figures.get(index)));
+      } catch (ReportEntryException e) {
+        out.put(figure, failed(figure, e, localization, start));
+      }
+    }
+    for (ScalarPQ scalar : scalars) {
+      try {
+        out.put(
+            scalar,
+            scalar.toLocal(fetched.result.scalar(scalarSpecs.get(scalar.spec())).value()));
+      } catch (ReportEntryException e) {
+        out.put(scalar, failed(scalar, e, localization, start));
+      }
+    }
+    return out;
+  }
+
+  private static Item<?> failed(
+      Item<?> item, ReportEntryException reason, Localization localization, long start) {
+    if (localization.onFailure() == Localization.OnFailure.FAIL) {
+      throw reason;
+    }
+    return Localization.placeholder(item, reason, Duration.ofNanos(System.nanoTime() - start));
+  }
+
+  /**
+   * Explains every table and figure of the batch, from the primary persistent-query only, without
+   * fetching them. Scalars are a single value each, so they are not explained.
+   *
+   * @param localization the localization, for its options
+   * @param log the log
+   * @param deadline the deadline
+   * @return the explanation of the batch
+   * @throws Exception if the explanation fails
+   */
+  @SuppressWarnings("try")
+  Explanation explain(Localization localization, Logger log, Deadline deadline) throws Exception {
+    final Map<ReportTableSpec, Integer> specs = new LinkedHashMap<>();
+    for (TablePQ table : tables) {
+      specs.putIfAbsent(table.explainSpec(), specs.size());
+    }
+    final Map<String, Integer> figureNames = new LinkedHashMap<>();
+    for (FigurePQ figure : figures) {
+      figureNames.putIfAbsent(figure.figureName(), figureNames.size());
+    }
+    final ReportExplainCARQ query =
+        ReportExplainCARQ.of(
+            new ArrayList<>(specs.keySet()), new ArrayList<>(figureNames.keySet()));
+    final String pqString = PQToGroovyish.toString(pq);
+    localization.circuitBreakers().check(pq);
+    final ReportExplainCARQResult result;
+    try (final PQClientPool.Lease lease =
+            localization.clientPool().lease(pq, log, deadline.check("connecting to " + pqString));
+        final Bulkheads.Permit permit =
+            localization.bulkheads().acquire(pq, lease.client(), deadline)) {
+      final RemoteDatabase db = lease.client().getPersistentQueryClient().getRemoteDatabase();
+      result =
+          within(pq, "explaining " + pqString, () -> query.execute(db), localization, deadline);
+    }
+
+    final Explanation.Builder out = Explanation.builder().addAllPqs(sources);
+    for (TablePQ table : tables) {
+      final ReportTableExplain explained = result.tables().get(specs.get(table.explainSpec()));
+      out.addTables(
+          TableExplanation.of(
+              table, explained.definition(), explained.size(), explained.rows()));
+    }
+    for (FigurePQ figure : figures) {
+      out.addFigures(
+          FigureExplanation.of(
+              figure, result.figures().get(figureNames.get(figure.figureName()))));
+    }
+    return out.build();
+  }
+
+  private Fetched fetchFrom(
+      PQ source,
+      ReportBatchCARQ query,
+      Localization localization,
+      Logger log,
+      Deadline deadline,
+      LocalScope scope)
+      throws Exception {
+    // note: an open breaker fails fast, before connecting, so a hedge moves on to the next replica
+    localization.circuitBreakers().check(source);
+    return execute(source, query, localization, log, deadline, scope);
+  }
+
+  private Fetched execute(
+      PQ source,
+      ReportBatchCARQ query,
+      Localization localization,
+      Logger log,
+      Deadline deadline,
+      LocalScope scope)
+      throws Exception {
+    final String pqString = PQToGroovyish.toString(source);
+    final PQClientPool.Lease lease =
+        localization
+            .clientPool()
+            .lease(source, log, deadline.check("connecting to " + pqString));
+    scope.add(lease);
+    final RemoteDatabase db = lease.client().getPersistentQueryClient().getRemoteDatabase();
+
+    // note: the turn is held until the figures are inflated, as converting the tables and
+    // inflating the figures still load the worker
+    // note: only the fetch itself is recorded as a latency of the source, connecting and waiting
+    // for a turn are not
+    final Bulkheads.Permit permit =
+        localization.bulkheads().acquire(source, lease.client(), deadline);
+    final long start = System.nanoTime();
+    try {
+      final ReportBatchCARQResult result =
+          within(
+              source, "fetching from " + pqString, () -> query.execute(db), localization, deadline);
+
+      final Map<Integer, com.illumon.iris.db.tables.Table> tables = new HashMap<>();
+      for (Map.Entry<Integer, ReportTableCARQResult> table : result.tables().entrySet()) {
+        // note: an unchanged table has no snapshot, its stale table is reused instead
+        if (!table.getValue().isUnchanged()) {
+          tables.put(table.getKey(), table.getValue().toTable());
+        }
+      }
+      final Map<String, Callable<FigureWidget>> inflaters = new LinkedHashMap<>();
+      for (Map.Entry<Integer, Inflatable<FigureWidget>> deflated : result.figures().entrySet()) {
+        inflaters.put(
+            query.figures().get(deflated.getKey()),
+            () -> deflated.getValue().inflate(db.getProcessorConnection()));
+      }
+      final Iterator<FigureWidget> inflated =
+          FigureData.await(pqString, inflaters, log, deadline).iterator();
+      final Map<Integer, FigureWidget> figures = new HashMap<>();
+      for (Integer index : result.figures().keySet()) {
+        figures.put(index, inflated.next());
+      }
+
+      record(source, start);
+      return new Fetched(source, result, tables, figures);
+    } catch (TimeoutException | InterruptedException e) {
+      // note: a fetch that timed out, or lost a hedge, took at least this long, so a slow
+      // persistent-query raises its learned latency even when it never answers
+      record(source, start);
+      throw e;
+    } finally {
+      permit.close();
+    }
+  }
+
+  /**
+   * The latencies of {@code pq}, new if they were never recorded or have been evicted.
+   *
+   * @param pq the persistent-query
+   * @return the latencies
+   */
+  static Latencies latencies(PQ pq) {
+    synchronized (LATENCIES) {
+      return LATENCIES.computeIfAbsent(pq, k -> new Latencies());
+    }
+  }
+
+  private static void record(PQ source, long start) {
+    latencies(source).record(Duration.ofNanos(System.nanoTime() - start));
+  }
+
+  private Fetched hedge(
+      ReportBatchCARQ query,
+      Localization localization,
+      Logger log,
+      Deadline deadline,
+      LocalScope scope)
+      throws Exception {
+    final CompletionService<Fetched> completion = new ExecutorCompletionService<>(HEDGE_EXECUTOR);
+    final List<Future<Fetched>> attempts = new ArrayList<>(sources.size());
+    final long delayNanos =
+        latencies(pq).percentile(HEDGE_PERCENTILE).orElse(DEFAULT_HEDGE_DELAY).toNanos();
+    final String pqString = PQToGroovyish.toString(pq);
+    final ReportBatchCARQ replicaQuery = forReplica(query);
+    Exception failure = null;
+    int failed = 0;
+    try {
+      attempts.add(
+          completion.submit(attempt(sources.get(0), query, localization, log, deadline, scope)));
+      while (true) {
+        final long remaining = deadline.check("fetching from " + pqString).toNanos();
+        final boolean canHedge = attempts.size() < sources.size();
+        final Future<Fetched> done =
+            completion.poll(
+                canHedge ? Math.min(delayNanos, remaining) : remaining, TimeUnit.NANOSECONDS);
+        if (done == null) {
+          if (canHedge) {
+            // note: slower than usual, so the next replica is asked as well
+            attempts.add(
+                completion.submit(
+                    attempt(
+                        sources.get(attempts.size()),
+                        replicaQuery,
+                        localization,
+                        log,
+                        deadline,
+                        scope)));
+          }
+          continue;
+        }
+        try {
+          return done.get();
+        } catch (ExecutionException e) {
+          final Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+          if (failure != null) {
+            cause.addSuppressed(failure);
+          }
+          failure = cause;
+          ++failed;
+        }
+        if (attempts.size() < sources.size()) {
+          // note: failed, so the next replica is asked right away
+          attempts.add(
+              completion.submit(
+                  attempt(
+                      sources.get(attempts.size()),
+                      replicaQuery,
+                      localization,
+                      log,
+                      deadline,
+                      scope)));
+        } else if (failed == attempts.size()) {
+          throw failure;
+        }
+      }
+    } finally {
+      for (Future<Fetched> attempt : attempts) {
+        attempt.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * The query to send to a replica. The versions last seen, and the watermarks of the windows, are
+   * those of the primary's tables, so they are left out: a replica sends its latest rows, which are
+   * not appended to the windows.
+   */
+  private static ReportBatchCARQ forReplica(ReportBatchCARQ query) {
+    final List<ReportTableSpec> tables = new ArrayList<>(query.tables().size());
+    for (ReportTableSpec spec : query.tables()) {
+      tables.add(
+          ReportTableSpec.of(
+              spec.name(),
+              spec.maxRows(),
+              spec.columns(),
+              0,
+              Optional.empty(),
+              spec.latest()));
+    }
+    return ReportBatchCARQ.of(tables, query.figures(), query.scalars(), query.consistent());
+  }
+
+  @SuppressWarnings("try")
+  private Callable<Fetched> attempt(
+      PQ source,
+      ReportBatchCARQ query,
+      Localization localization,
+      Logger log,
+      Deadline deadline,
+      LocalScope scope) {
+    return () -> {
+      try (final SafeCloseable entered = scope.enter()) {
+        return fetchFrom(source, query, localization, log, deadline, scope);
+      }
+    };
+  }
+
+  /**
+   * Calls {@code remote} on {@code source} within the remaining budget of {@code deadline}. The
+   * remote call has no timeout of its own, so it is made from another thread, and interrupted once
+   * the deadline passes. Only the remote call goes through the circuit breaker of {@code source}: a
+   * deadline already spent, such as on connecting or waiting for a turn, is not its failure.
+   */
+  private static <T> T within(
+      PQ source, String stage, Callable<T> remote, Localization localization, Deadline deadline)
+      throws Exception {
+    final long remaining = deadline.check(stage).toNanos();
+    return localization
+        .circuitBreakers()
+        .call(
+            source,
+            () -> {
+              final Future<T> future = REMOTE_EXECUTOR.submit(remote);
+              try {
+                return future.get(remaining, TimeUnit.NANOSECONDS);
+              } catch (TimeoutException e) {
+                throw new TimeoutException(
+                    String.format("Deadline of %s exceeded %s", deadline.budget(), stage));
+              } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                  throw (Exception) cause;
+                }
+                throw e;
+              } finally {
+                future.cancel(true);
+              }
+            });
+  }
+
+  private static Thread newThread(Runnable runnable) {
+    final Thread thread = new Thread(runnable, "PQBatch-" + THREAD_ID.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /** The results of one fetch, before they are localized. */
+  private static final class Fetched {
+    private final PQ source;
+    private final ReportBatchCARQResult result;
+    private final Map<Integer, com.illumon.iris.db.tables.Table> tables;
+    private final Map<Integer, FigureWidget> figures;
+
+    Fetched(
+        PQ source,
+        ReportBatchCARQResult result,
+        Map<Integer, com.illumon.iris.db.tables.Table> tables,
+        Map<Integer, FigureWidget> figures) {
+      this.source = Objects.requireNonNull(source);
+      this.result = Objects.requireNonNull(result);
+      this.tables = Objects.requireNonNull(tables);
+      this.figures = Objects.requireNonNull(figures);
+    }
+  }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.controller.utils.PersistentQueryTableHelper.HelperPersistentQueryClient;
+import com.illumon.util.SafeCloseable;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of persistent-query clients, keyed by {@link PQ}. Every remote item that references the
+ * same persistent-query shares one {@link HelperPersistentQueryClient}, and hence one connection to
+ * the worker.
+ *
+ * <p>Clients that have not been used for {@link #idleTimeout()}, and are not leased, are shut down.
+ * Clients that fail their health check the next time they are requested are replaced, and shut down
+ * once their last lease is closed. Every pool shares one daemon thread for eviction.
+ */
+public final class PQClientPool implements SafeCloseable {
+
+  private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+  private static final ScheduledExecutorService EVICTOR =
+      Executors.newSingleThreadScheduledExecutor(PQClientPool::newThread);
+
+  /**
+   * The default pool, used by {@link Localization}, {@link TablePQ#toLocal(Logger, Duration)} and
+   * {@link FigurePQ#toLocal(Logger, Duration)}.
+   *
+   * @return the default pool
+   */
+  public static PQClientPool getDefault() {
+    return Holder.DEFAULT;
+  }
+
+  private static class Holder {
+    private static final PQClientPool DEFAULT = new PQClientPool(DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /** Connects a new client to a persistent-query. */
+  interface Connector {
+    HelperPersistentQueryClient connect(PQ pq, Logger log, Duration timeout);
+  }
+
+  private final Duration idleTimeout;
+  private final Connector connector;
+  private final Map<PQ, Entry> entries;
+  private final ScheduledFuture<?> eviction;
+  private boolean closed;
+
+  /**
+   * Constructs a new pool.
+   *
+   * @param idleTimeout the duration after which an unused client is shut down
+   */
+  public PQClientPool(Duration idleTimeout) {
+    this(idleTimeout, PQToHelperClient::of);
+  }
+
+  PQClientPool(Duration idleTimeout, Connector connector) {
+    if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+      throw new IllegalArgumentException("idleTimeout must be positive");
+    }
+    this.idleTimeout = idleTimeout;
+    this.connector = Objects.requireNonNull(connector);
+    this.entries = new HashMap<>();
+    this.eviction = Eviction.schedule(this, Math.max(1, idleTimeout.toMillis() / 2));
+  }
+
+  /**
+   * The duration after which an unused client is shut down.
+   *
+   * @return the idle timeout
+   */
+  public Duration idleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * The number of persistent-queries with a pooled client.
+   *
+   * @return the size
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Leases the pooled client for {@code pq}, connecting if there is no healthy client. A leased
+   * client is never evicted; it becomes idle once every lease on it is closed.
+   *
+   * @param pq the persistent-query
+   * @param log the log
+   * @param timeout the timeout used when connecting
+   * @return the lease
+   */
+  Lease lease(PQ pq, Logger log, Duration timeout) {
+    while (true) {
+      final Entry entry;
+      synchronized (this) {
+        if (closed) {
+          throw new IllegalStateException("PQClientPool is closed");
+        }
+        entry = entries.computeIfAbsent(pq, Entry::new);
+      }
+      final Pooled pooled = entry.acquire(log, timeout);
+      if (pooled != null) {
+        return new Lease(entry, pooled);
+      }
+      // the entry was evicted concurrently, retry with a new entry
+    }
+  }
+
+  /** Shuts down every client that is not leased, and is unused for {@link #idleTimeout()}. */
+  public void evictIdle() {
+    final long now = System.nanoTime();
+    final List<Entry> evicted = new ArrayList<>();
+    synchronized (this) {
+      final Iterator<Entry> it = entries.values().iterator();
+      while (it.hasNext()) {
+        final Entry entry = it.next();
+        if (entry.retireIfIdle(now)) {
+          it.remove();
+          evicted.add(entry);
+        }
+      }
+    }
+    for (Entry entry : evicted) {
+      entry.shutdown();
+    }
+  }
+
+  /**
+   * Removes every client from the pool. Idle clients are shut down now; leased clients are shut
+   * down once their last lease is closed. The pool remains usable.
+   */
+  public void clear() {
+    final List<Entry> cleared;
+    synchronized (this) {
+      cleared = new ArrayList<>(entries.values());
+      entries.clear();
+    }
+    for (Entry entry : cleared) {
+      if (entry.retire()) {
+        entry.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Removes every client from the pool, as {@link #clear()} does, and prevents any further use of
+   * the pool.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    eviction.cancel(false);
+    clear();
+  }
+
+  private static boolean isHealthy(HelperPersistentQueryClient client) {
+    try {
+      return client
+          .getPersistentQueryClient()
+          .getRemoteDatabase()
+          .getProcessorConnection()
+          .isConnected();
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static void shutdown(HelperPersistentQueryClient client) {
+    try {
+      client.getPersistentQueryClient().shutdown();
+    } catch (RuntimeException e) {
+      // best-effort, the client is being discarded either way
+    }
+  }
+
+  private static Thread newThread(Runnable runnable) {
+    final Thread thread = new Thread(runnable, "PQClientPool-evictor");
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * Evicts the idle clients of a pool, on the shared evictor thread. Only holds the pool weakly, so
+   * that a pool that is never closed can still be collected, which cancels its eviction.
+   */
+  private static final class Eviction implements Runnable {
+    private final WeakReference<PQClientPool> pool;
+    private volatile ScheduledFuture<?> future;
+
+    static ScheduledFuture<?> schedule(PQClientPool pool, long periodMillis) {
+      final Eviction eviction = new Eviction(pool);
+      eviction.future =
+          EVICTOR.scheduleWithFixedDelay(
+              eviction, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+      return eviction.future;
+    }
+
+    private Eviction(PQClientPool pool) {
+      this.pool = new WeakReference<>(pool);
+    }
+
+    @Override
+    public void run() {
+      final PQClientPool current = pool.get();
+      if (current != null) {
+        current.evictIdle();
+        return;
+      }
+      final ScheduledFuture<?> scheduled = future;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+    }
+  }
+
+  /** A lease on a pooled client. Closing the lease returns the client to the pool. */
+  static final class Lease implements SafeCloseable {
+    private final Entry entry;
+    private final Pooled pooled;
+    private final AtomicBoolean closed;
+
+    private Lease(Entry entry, Pooled pooled) {
+      this.entry = Objects.requireNonNull(entry);
+      this.pooled = Objects.requireNonNull(pooled);
+      this.closed = new AtomicBoolean();
+    }
+
+    HelperPersistentQueryClient client() {
+      return pooled.client;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        entry.release(pooled);
+      }
+    }
+  }
+
+  /** A client, and the number of leases on it. Guarded by its {@link Entry}. */
+  private static final class Pooled {
+    private final HelperPersistentQueryClient client;
+    private int leases;
+    private boolean retired;
+
+    Pooled(HelperPersistentQueryClient client) {
+      this.client = Objects.requireNonNull(client);
+    }
+  }
+
+  private final class Entry {
+    private final PQ pq;
+    // note: the number of leases n, or -(n + 1) once retired
+    private final AtomicInteger leases;
+    private volatile long lastUsedNanos;
+    private Pooled current;
+
+    Entry(PQ pq) {
+      this.pq = Objects.requireNonNull(pq);
+      this.leases = new AtomicInteger();
+      this.lastUsedNanos = System.nanoTime();
+    }
+
+    Pooled acquire(Logger log, Duration timeout) {
+      int current;
+      do {
+        current = leases.get();
+        if (current < 0) {
+          return null;
+        }
+      } while (!leases.compareAndSet(current, current + 1));
+      lastUsedNanos = System.nanoTime();
+      try {
+        return connect(log, timeout);
+      } catch (RuntimeException | Error e) {
+        release();
+        throw e;
+      }
+    }
+
+    void release(Pooled pooled) {
+      synchronized (this) {
+        if (--pooled.leases == 0 && pooled.retired) {
+          // note: the last lease on a client that failed its health check
+          PQClientPool.shutdown(pooled.client);
+        }
+      }
+      release();
+    }
+
+    private void release() {
+      lastUsedNanos = System.nanoTime();
+      final int previous =
+          leases.getAndUpdate(
+              current -> current > 0 ? current - 1 : current < -1 ? current + 1 : current);
+      if (previous == -2) {
+        // note: the last lease on a retired client
+        shutdown();
+      }
+    }
+
+    boolean retireIfIdle(long now) {
+      return now - lastUsedNanos >= idleTimeout.toNanos() && leases.compareAndSet(0, -1);
+    }
+
+    /**
+     * Prevents any further lease. The client is shut down by the last lease, if any.
+     *
+     * @return true if the client is not leased, and should be shut down by the caller
+     */
+    boolean retire() {
+      final int previous = leases.getAndUpdate(current -> current >= 0 ? -(current + 1) : current);
+      return previous == 0;
+    }
+
+    private synchronized Pooled connect(Logger log, Duration timeout) {
+      if (current != null && !isHealthy(current.client)) {
+        // note: other leases may still be calling the unhealthy client, so it is only shut down
+        // once the last of them is closed
+        retireCurrent();
+      }
+      if (current == null) {
+        current = new Pooled(connector.connect(pq, log, timeout));
+      }
+      ++current.leases;
+      return current;
+    }
+
+    synchronized void shutdown() {
+      if (current != null) {
+        retireCurrent();
+      }
+    }
+
+    private void retireCurrent() {
+      current.retired = true;
+      if (current.leases == 0) {
+        PQClientPool.shutdown(current.client);
+      }
+      current = null;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.db.plot.PlottingConvenience;
+import io.deephaven.plugins.report.styling.Size2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.immutables.value.Value.Default;
+import org.immutables.value.Value.Immutable;
+
+/**
+ * Sets up, in the background, what the first report after a restart would otherwise pay for: the
+ * pooled clients of {@link #pqs()}, and the headless chart and font initialization of {@link
+ * SaveFigure}, at each of {@link #figureSizes()}.
+ *
+ * <p>The clients are kept by {@link PQClientPool#getDefault()} for its idle timeout, so start the
+ * prewarm shortly before the first scheduled send.
+ */
+@Immutable
+public abstract class Prewarm {
+
+  private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+  private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(Prewarm::newThread);
+
+  /** The builder. */
+  public static class Builder extends ImmutablePrewarm.Builder {}
+
+  /**
+   * A new builder.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The persistent-queries to connect to.
+   *
+   * @return the persistent-queries
+   */
+  public abstract Set<PQ> pqs();
+
+  /**
+   * The sizes to render a placeholder figure at.
+   *
+   * @return the figure sizes
+   */
+  public abstract List<Size2D> figureSizes();
+
+  /**
+   * The log.
+   *
+   * @return the log
+   */
+  @Default
+  public Logger log() {
+    return Logger.NULL;
+  }
+
+  /**
+   * The time budget for the whole prewarm, from when it starts. Defaults to 1 minute.
+   *
+   * @return the timeout
+   */
+  @Default
+  public Duration timeout() {
+    return Duration.ofMinutes(1);
+  }
+
+  /**
+   * Starts the prewarm in the background. Every persistent-query is connected to concurrently, and
+   * each is attempted even if others fail.
+   *
+   * @return the future, completed exceptionally if any of the prewarm failed
+   */
+  public final CompletableFuture<Void> start() {
+    final Deadline deadline = Deadline.after(timeout());
+    final List<CompletableFuture<Void>> steps = new ArrayList<>(pqs().size() + 1);
+    for (PQ pq : pqs()) {
+      steps.add(CompletableFuture.runAsync(() -> connect(pq, deadline), EXECUTOR));
+    }
+    if (!figureSizes().isEmpty()) {
+      steps.add(CompletableFuture.runAsync(() -> render(deadline), EXECUTOR));
+    }
+    return CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[0]));
+  }
+
+  private void connect(PQ pq, Deadline deadline) {
+    final Duration timeout;
+    try {
+      timeout = deadline.check("connecting to " + PQToGroovyish.toString(pq));
+    } catch (TimeoutException e) {
+      throw new RuntimeException(e);
+    }
+    // note: the client stays pooled once the lease is closed, until it is idle for too long
+    PQClientPool.getDefault().lease(pq, log(), timeout).close();
+  }
+
+  private void render(Deadline deadline) {
+    final com.illumon.iris.db.plot.Figure plot =
+        PlottingConvenience.plot("prewarm", new double[] {0, 1}, new double[] {0, 1});
+    for (Size2D size : figureSizes()) {
+      final File file;
+      try {
+        file = File.createTempFile("prewarm", ".png");
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      try {
+        FigureLocal.of(plot)
+            .withSize(size)
+            .walk(SaveFigure.builder().file(file).log(log()).deadline(deadline).build());
+      } finally {
+        if (!file.delete()) {
+          file.deleteOnExit();
+        }
+      }
+    }
+  }
+
+  private static Thread newThread(Runnable runnable) {
+    final Thread thread = new Thread(runnable, "Prewarm-" + THREAD_ID.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Collects the distinct remote items, in walk order, that need to be localized. Remote items are
+ * distinct by value, so identical references from anywhere in the walked items are only collected
+ * once. Lazy items are not resolved: the items they resolve to are only collected once they are
+ * rendered.
+ *
+ * @see ToLocalVisitor.Lazies
+ */
+class RemoteItems implements Item.Visitor, Table.Visitor, Figure.Visitor, Scalar.Visitor {
+
+  private final Set<TablePQ> tables = new LinkedHashSet<>();
+  private final Set<FigurePQ> figures = new LinkedHashSet<>();
+  private final Set<ScalarPQ> scalars = new LinkedHashSet<>();
+  private final Set<TablePQ> shardTables = new HashSet<>();
+
+  public Set<TablePQ> tables() {
+    return tables;
+  }
+
+  public Set<FigurePQ> figures() {
+    return figures;
+  }
+
+  public Set<ScalarPQ> scalars() {
+    return scalars;
+  }
+
+  /**
+   * Whether {@code table} is a shard of a {@link TableShardedPQ}.
+   *
+   * @param table the table
+   * @return true if the table is a shard
+   */
+  public boolean isShard(TablePQ table) {
+    return shardTables.contains(table);
+  }
+
+  /**
+   * Whether there is no remote item to localize.
+   *
+   * @return true if there is none
+   */
+  public boolean isEmpty() {
+    return tables.isEmpty() && figures.isEmpty() && scalars.isEmpty();
+  }
+
+  @Override
+  public void visit(Table<?> table) {
+    table.walk((Table.Visitor) this);
+  }
+
+  @Override
+  public void visit(TableLocal table) {
+    // already local
+  }
+
+  @Override
+  public void visit(TablePQ table) {
+    tables.add(table);
+  }
+
+  @Override
+  public void visit(TableShardedPQ table) {
+    tables.addAll(table.shards());
+    shardTables.addAll(table.shards());
+  }
+
+  @Override
+  public void visit(Figure<?> figure) {
+    figure.walk((Figure.Visitor) this);
+  }
+
+  @Override
+  public void visit(FigureLocal figure) {
+    // already local
+  }
+
+  @Override
+  public void visit(FigureImage figure) {
+    // already local
+  }
+
+  @Override
+  public void visit(FigurePQ figure) {
+    figures.add(figure);
+  }
+
+  @Override
+  public void visit(Scalar<?> scalar) {
+    scalar.walk((Scalar.Visitor) this);
+  }
+
+  @Override
+  public void visit(ScalarLocal scalar) {
+    // already local
+  }
+
+  @Override
+  public void visit(ScalarPQ scalar) {
+    scalars.add(scalar);
+  }
+
+  @Override
+  public void visit(Text text) {
+    // nothing to localize
+  }
+
+  @Override
+  public void visit(Group group) {
+    for (Item<?> item : group.items()) {
+      item.walk(this);
+    }
+  }
+
+  @Override
+  public void visit(Lazy lazy) {
+    // resolved when rendered
+  }
+}
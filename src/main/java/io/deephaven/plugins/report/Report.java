@@ -18,6 +18,7 @@ package io.deephaven.plugins.report;
 import com.fishlib.io.logger.Logger;
 import java.time.Duration;
 import java.time.Instant;
+import org.immutables.value.Value;
 import org.immutables.value.Value.Check;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Parameter;
@@ -76,13 +77,55 @@ public abstract class Report {
   @Parameter
   public abstract Instant timestamp();
 
+  /**
+   * The content fingerprint of the title and the item, cached as the item's is. The timestamp is
+   * not included, so the same report generated on different runs has the same fingerprint.
+   *
+   * @return the fingerprint
+   * @see Item#fingerprint()
+   */
+  public Fingerprint fingerprint() {
+    return Fingerprinter.isLive(item()) ? Fingerprinter.of(this) : staticFingerprint();
+  }
+
+  @Value.Lazy
+  Fingerprint staticFingerprint() {
+    return Fingerprinter.of(this);
+  }
+
   public final String toGroovyishDebug() {
     return String.format(
         "report(%s, %s)", ItemToGroovyish.toString(title()), ItemToGroovyish.toString(item()));
   }
 
   public final Report toLocal(Logger log, Duration duration) {
-    return of(title(), ToLocalVisitor.toLocal(item(), log, duration), timestamp());
+    return toLocal(log, duration, Localization.sequential());
+  }
+
+  /**
+   * Localizes this report with the given localization strategy.
+   *
+   * @param log the log
+   * @param duration the timeout
+   * @param localization the localization
+   * @return the localized report
+   * @see Localization#toLocal(Report, Logger, Duration)
+   */
+  public final Report toLocal(Logger log, Duration duration, Localization localization) {
+    return localization.toLocal(this, log, duration);
+  }
+
+  /**
+   * Localizes this report with the given localization strategy, within the given deadline.
+   *
+   * @param log the log
+   * @param deadline the deadline
+   * @param localization the localization
+   * @return the localized report
+   * @see Localization#toLocal(Report, Logger, Deadline)
+   */
+  public final Report toLocal(Logger log, Deadline deadline, Localization localization) {
+    return localization.toLocal(this, log, deadline);
   }
 
   @Check
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A compact binary writer and reader for the trees of {@link ReportTree}. Every value is written
+ * with a one byte tag, lengths and integers as variable-length integers, and every repeated string,
+ * such as the keys of the objects, as a reference to its first occurrence.
+ */
+final class ReportBinary {
+
+  private static final byte[] MAGIC = {'R', 'P', 'T', 1};
+
+  private static final int NULL = 0;
+  private static final int FALSE = 1;
+  private static final int TRUE = 2;
+  private static final int LONG = 3;
+  private static final int STRING = 4;
+  private static final int STRING_REF = 5;
+  private static final int LIST = 6;
+  private static final int MAP = 7;
+
+  static byte[] write(Object tree) {
+    final Writer writer = new Writer();
+    writer.out.write(MAGIC, 0, MAGIC.length);
+    writer.value(tree);
+    return writer.out.toByteArray();
+  }
+
+  static Object read(byte[] bytes) {
+    for (int i = 0; i < MAGIC.length; ++i) {
+      if (bytes.length <= i || bytes[i] != MAGIC[i]) {
+        throw new IllegalArgumentException("Not a serialized report, or an unsupported version");
+      }
+    }
+    final Reader reader = new Reader(bytes, MAGIC.length);
+    final Object tree = reader.value();
+    if (reader.pos != bytes.length) {
+      throw new IllegalArgumentException("Unexpected trailing bytes at position " + reader.pos);
+    }
+    return tree;
+  }
+
+  private ReportBinary() {}
+
+  private static final class Writer {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    void value(Object tree) {
+      if (tree == null) {
+        out.write(NULL);
+      } else if (tree instanceof Boolean) {
+        out.write((Boolean) tree ? TRUE : FALSE);
+      } else if (tree instanceof Long) {
+        out.write(LONG);
+        final long value = (Long) tree;
+        varint((value << 1) ^ (value >> 63));
+      } else if (tree instanceof String) {
+        string((String) tree);
+      } else if (tree instanceof List) {
+        final List<?> list = (List<?>) tree;
+        out.write(LIST);
+        varint(list.size());
+        for (Object value : list) {
+          value(value);
+        }
+      } else if (tree instanceof Map) {
+        final Map<?, ?> map = (Map<?, ?>) tree;
+        out.write(MAP);
+        varint(map.size());
+        for (Entry<?, ?> e : map.entrySet()) {
+          string((String) e.getKey());
+          value(e.getValue());
+        }
+      } else {
+        throw new IllegalArgumentException("Unexpected tree value " + tree.getClass().getName());
+      }
+    }
+
+    private void string(String value) {
+      final Integer index = strings.get(value);
+      if (index != null) {
+        out.write(STRING_REF);
+        varint(index);
+        return;
+      }
+      strings.put(value, strings.size());
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.write(STRING);
+      varint(bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+
+    private void varint(long value) {
+      while ((value & ~0x7FL) != 0) {
+        out.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.write((int) value);
+    }
+  }
+
+  private static final class Reader {
+    private final byte[] bytes;
+    private final List<String> strings = new ArrayList<>();
+    private int pos;
+
+    Reader(byte[] bytes, int pos) {
+      this.bytes = bytes;
+      this.pos = pos;
+    }
+
+    Object value() {
+      final int tag = next();
+      switch (tag) {
+        case NULL:
+          return null;
+        case FALSE:
+          return Boolean.FALSE;
+        case TRUE:
+          return Boolean.TRUE;
+        case LONG:
+          {
+            final long value = varint();
+            return (value >>> 1) ^ -(value & 1);
+          }
+        case STRING:
+        case STRING_REF:
+          return string(tag);
+        case LIST:
+          {
+            final int size = size();
+            final List<Object> out = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+              out.add(value());
+            }
+            return out;
+          }
+        case MAP:
+          {
+            final int size = size();
+            final Map<String, Object> out = new LinkedHashMap<>(size * 2);
+            for (int i = 0; i < size; ++i) {
+              final String key = string(next());
+              out.put(key, value());
+            }
+            return out;
+          }
+        default:
+          throw new IllegalArgumentException(
+              String.format("Unknown tag %d at position %d", tag, pos - 1));
+      }
+    }
+
+    private String string(int tag) {
+      if (tag == STRING_REF) {
+        final int index = size();
+        if (index >= strings.size()) {
+          throw new IllegalArgumentException("Invalid string reference at position " + pos);
+        }
+        return strings.get(index);
+      }
+      if (tag != STRING) {
+        throw new IllegalArgumentException("Expected a string at position " + (pos - 1));
+      }
+      final int length = size();
+      if (length > bytes.length - pos) {
+        throw new IllegalArgumentException("Truncated string at position " + pos);
+      }
+      final String value = new String(bytes, pos, length, StandardCharsets.UTF_8);
+      pos += length;
+      strings.add(value);
+      return value;
+    }
+
+    private int size() {
+      final long size = varint();
+      if (size < 0 || size > bytes.length) {
+        throw new IllegalArgumentException("Invalid size at position " + pos);
+      }
+      return (int) size;
+    }
+
+    private long varint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        final int b = next();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Invalid integer at position " + pos);
+    }
+
+    private int next() {
+      if (pos >= bytes.length) {
+        throw new IllegalArgumentException("Unexpected end of input");
+      }
+      return bytes[pos++] & 0xFF;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+/**
+ * Serializes the persistent-query backed parts of reports, so that report definitions can be
+ * stored, diffed, and rendered by another JVM without the session that built them. There are two
+ * formats of the same content: JSON, which is readable and diffable, and a compact binary format.
+ *
+ * <p>Only {@link Text}, {@link Group}, {@link TablePQ}, {@link TableShardedPQ}, {@link FigurePQ},
+ * {@link ScalarPQ} and {@link ScalarLocal} can be serialized, with attributes and scalar values
+ * that are strings, booleans, numbers, {@link java.time.Duration durations}, {@link
+ * java.time.Instant instants}, {@link io.deephaven.plugins.report.styling.Markdown markdown},
+ * {@link io.deephaven.plugins.report.styling.Size2D sizes}, {@link PQ persistent-queries}, items or
+ * {@link TableWindow table windows}, which are written without their rows. Any other item or
+ * attribute fails with an {@link IllegalArgumentException}, as do malformed inputs.
+ */
+public final class ReportCodec {
+
+  /**
+   * Serializes {@code report} to JSON.
+   *
+   * @param report the report
+   * @return the JSON
+   */
+  public static String toJson(Report report) {
+    return ReportJson.write(ReportTree.of(report));
+  }
+
+  /**
+   * Serializes {@code item} to JSON.
+   *
+   * @param item the item
+   * @return the JSON
+   */
+  public static String toJson(Item<?> item) {
+    return ReportJson.write(ReportTree.of(item));
+  }
+
+  /**
+   * Deserializes a report from JSON.
+   *
+   * @param json the JSON
+   * @return the report
+   */
+  public static Report reportFromJson(String json) {
+    return ReportTree.toReport(ReportJson.read(json));
+  }
+
+  /**
+   * Deserializes an item from JSON.
+   *
+   * @param json the JSON
+   * @return the item
+   */
+  public static Item<?> itemFromJson(String json) {
+    return ReportTree.toItem(ReportJson.read(json));
+  }
+
+  /**
+   * Serializes {@code report} to the binary format.
+   *
+   * @param report the report
+   * @return the bytes
+   */
+  public static byte[] toBinary(Report report) {
+    return ReportBinary.write(ReportTree.of(report));
+  }
+
+  /**
+   * Serializes {@code item} to the binary format.
+   *
+   * @param item the item
+   * @return the bytes
+   */
+  public static byte[] toBinary(Item<?> item) {
+    return ReportBinary.write(ReportTree.of(item));
+  }
+
+  /**
+   * Deserializes a report from the binary format.
+   *
+   * @param bytes the bytes
+   * @return the report
+   */
+  public static Report reportFromBinary(byte[] bytes) {
+    return ReportTree.toReport(ReportBinary.read(bytes));
+  }
+
+  /**
+   * Deserializes an item from the binary format.
+   *
+   * @param bytes the bytes
+   * @return the item
+   */
+  public static Item<?> itemFromBinary(byte[] bytes) {
+    return ReportTree.toItem(ReportBinary.read(bytes));
+  }
+
+  private ReportCodec() {}
+}
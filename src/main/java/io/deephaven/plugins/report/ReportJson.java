@@ -0,0 +1,291 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A minimal JSON writer and reader for the trees of {@link ReportTree}. Numbers are always
+ * integers, as the trees hold no other kind.
+ */
+final class ReportJson {
+
+  static String write(Object tree) {
+    final StringBuilder out = new StringBuilder();
+    write(tree, out);
+    return out.toString();
+  }
+
+  static Object read(String json) {
+    final ReportJson reader = new ReportJson(json);
+    final Object tree = reader.value();
+    reader.whitespace();
+    if (reader.pos != json.length()) {
+      throw reader.error("Unexpected trailing content");
+    }
+    return tree;
+  }
+
+  private static void write(Object tree, StringBuilder out) {
+    if (tree == null) {
+      out.append("null");
+    } else if (tree instanceof String) {
+      writeString((String) tree, out);
+    } else if (tree instanceof Long || tree instanceof Boolean) {
+      out.append(tree);
+    } else if (tree instanceof List) {
+      out.append('[');
+      boolean first = true;
+      for (Object value : (List<?>) tree) {
+        if (!first) {
+          out.append(',');
+        }
+        first = false;
+        write(value, out);
+      }
+      out.append(']');
+    } else if (tree instanceof Map) {
+      out.append('{');
+      boolean first = true;
+      for (Entry<?, ?> e : ((Map<?, ?>) tree).entrySet()) {
+        if (!first) {
+          out.append(',');
+        }
+        first = false;
+        writeString((String) e.getKey(), out);
+        out.append(':');
+        write(e.getValue(), out);
+      }
+      out.append('}');
+    } else {
+      throw new IllegalArgumentException("Unexpected tree value " + tree.getClass().getName());
+    }
+  }
+
+  private static void writeString(String value, StringBuilder out) {
+    out.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+
+  private final String json;
+  private int pos;
+
+  private ReportJson(String json) {
+    this.json = json;
+  }
+
+  private Object value() {
+    whitespace();
+    if (pos >= json.length()) {
+      throw error("Unexpected end of input");
+    }
+    final char c = json.charAt(pos);
+    switch (c) {
+      case '{':
+        return object();
+      case '[':
+        return array();
+      case '"':
+        return string();
+      case 't':
+        return literal("true", Boolean.TRUE);
+      case 'f':
+        return literal("false", Boolean.FALSE);
+      case 'n':
+        return literal("null", null);
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          return number();
+        }
+        throw error("Unexpected character '" + c + "'");
+    }
+  }
+
+  private Map<String, Object> object() {
+    expect('{');
+    final Map<String, Object> out = new LinkedHashMap<>();
+    whitespace();
+    if (peek('}')) {
+      expect('}');
+      return out;
+    }
+    while (true) {
+      whitespace();
+      final String key = string();
+      whitespace();
+      expect(':');
+      out.put(key, value());
+      whitespace();
+      if (peek(',')) {
+        ++pos;
+        continue;
+      }
+      expect('}');
+      return out;
+    }
+  }
+
+  private List<Object> array() {
+    expect('[');
+    final List<Object> out = new ArrayList<>();
+    whitespace();
+    if (peek(']')) {
+      ++pos;
+      return out;
+    }
+    while (true) {
+      out.add(value());
+      whitespace();
+      if (peek(',')) {
+        ++pos;
+        continue;
+      }
+      expect(']');
+      return out;
+    }
+  }
+
+  private String string() {
+    expect('"');
+    final StringBuilder out = new StringBuilder();
+    while (true) {
+      if (pos >= json.length()) {
+        throw error("Unterminated string");
+      }
+      final char c = json.charAt(pos++);
+      if (c == '"') {
+        return out.toString();
+      }
+      if (c != '\\') {
+        out.append(c);
+        continue;
+      }
+      if (pos >= json.length()) {
+        throw error("Unterminated escape");
+      }
+      final char escaped = json.charAt(pos++);
+      switch (escaped) {
+        case '"':
+        case '\\':
+        case '/':
+          out.append(escaped);
+          break;
+        case 'b':
+          out.append('\b');
+          break;
+        case 'f':
+          out.append('\f');
+          break;
+        case 'n':
+          out.append('\n');
+          break;
+        case 'r':
+          out.append('\r');
+          break;
+        case 't':
+          out.append('\t');
+          break;
+        case 'u':
+          if (pos + 4 > json.length()) {
+            throw error("Unterminated unicode escape");
+          }
+          try {
+            out.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+          } catch (NumberFormatException e) {
+            throw error("Invalid unicode escape");
+          }
+          pos += 4;
+          break;
+        default:
+          throw error("Invalid escape '\\" + escaped + "'");
+      }
+    }
+  }
+
+  private Long number() {
+    final int start = pos;
+    if (json.charAt(pos) == '-') {
+      ++pos;
+    }
+    while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') {
+      ++pos;
+    }
+    try {
+      return Long.parseLong(json.substring(start, pos));
+    } catch (NumberFormatException e) {
+      throw error("Expected an integer");
+    }
+  }
+
+  private Object literal(String literal, Object value) {
+    if (!json.startsWith(literal, pos)) {
+      throw error("Expected '" + literal + "'");
+    }
+    pos += literal.length();
+    return value;
+  }
+
+  private void whitespace() {
+    while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+      ++pos;
+    }
+  }
+
+  private boolean peek(char c) {
+    return pos < json.length() && json.charAt(pos) == c;
+  }
+
+  private void expect(char c) {
+    if (pos >= json.length() || json.charAt(pos) != c) {
+      throw error("Expected '" + c + "'");
+    }
+    ++pos;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(String.format("%s at position %d", message, pos));
+  }
+}
@@ -0,0 +1,581 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import io.deephaven.plugins.report.styling.Markdown;
+import io.deephaven.plugins.report.styling.Size2D;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+
+/**
+ * Converts reports to and from a tree of plain values, shared by the JSON and binary formats of
+ * {@link ReportCodec}. The tree is made of {@link Map maps} with {@link String} keys, {@link List
+ * lists}, {@link String strings}, {@link Long longs}, {@link Boolean booleans} and {@code null}.
+ *
+ * <p>Only the items that can be rebuilt anywhere are supported: {@link Text}, {@link Group}, {@link
+ * TablePQ}, {@link TableShardedPQ}, {@link FigurePQ}, {@link ScalarPQ} and {@link ScalarLocal}.
+ * Attribute values, and the values of local scalars, are tagged with their type, unless they are
+ * strings, booleans or longs. A {@link TableWindow} is written without its rows, as an index that
+ * is shared by the items with the same window, so that they share a new, empty window once read.
+ *
+ * <p>For a {@link LocalSnapshot}, local tables and figures are supported as well: they are kept
+ * outside of the tree, and referenced from it by index. Lazy items are resolved. Attribute values
+ * that can not be serialized, such as a {@link TableWindow}, are then left out rather than
+ * rejected, as rendering does not depend on them; so are the values of local scalars, which are
+ * kept as they are rendered.
+ */
+final class ReportTree
+    implements Item.Visitor, Table.Visitor, Figure.Visitor, Scalar.Visitor, PQ.Visitor {
+
+  /** Where the local tables and figures of a snapshot are written to, outside of the tree. */
+  interface LocalsOut {
+
+    /**
+     * Adds a table.
+     *
+     * @param table the table
+     * @return the index of the table
+     */
+    long table(com.illumon.iris.db.tables.Table table);
+
+    /**
+     * Adds a figure, rendered as an image.
+     *
+     * @param figure the figure
+     * @return the index of the image
+     */
+    long image(Figure<?> figure);
+  }
+
+  /** Where the local tables and figures of a snapshot are read from. */
+  interface LocalsIn {
+
+    /**
+     * The table at {@code index}.
+     *
+     * @param index the index
+     * @return the table
+     */
+    com.illumon.iris.db.tables.Table table(long index);
+
+    /**
+     * The PNG image at {@code index}.
+     *
+     * @param index the index
+     * @return the image
+     */
+    byte[] image(long index);
+  }
+
+  static Map<String, Object> of(Report report) {
+    return new ReportTree(null, null).report(report);
+  }
+
+  static Map<String, Object> of(Report report, LocalsOut locals) {
+    return new ReportTree(Objects.requireNonNull(locals), null).report(report);
+  }
+
+  static Map<String, Object> of(Item<?> item) {
+    return new ReportTree(null, null).item(item);
+  }
+
+  static Report toReport(Object tree) {
+    return new ReportTree(null, null).report(tree);
+  }
+
+  static Report toReport(Object tree, LocalsIn locals) {
+    return new ReportTree(null, Objects.requireNonNull(locals)).report(tree);
+  }
+
+  static Item<?> toItem(Object tree) {
+    return new ReportTree(null, null).item(tree);
+  }
+
+  private static final Object UNSUPPORTED = new Object();
+
+  private final LocalsOut localsOut;
+  private final LocalsIn localsIn;
+  private final Map<TableWindow, Long> windowsOut = new IdentityHashMap<>();
+  private final Map<Long, TableWindow> windowsIn = new HashMap<>();
+  private Map<String, Object> out;
+
+  private ReportTree(LocalsOut localsOut, LocalsIn localsIn) {
+    this.localsOut = localsOut;
+    this.localsIn = localsIn;
+  }
+
+  private Map<String, Object> report(Report report) {
+    final Map<String, Object> node = new LinkedHashMap<>();
+    node.put("title", report.title());
+    node.put("timestamp", report.timestamp().toString());
+    node.put("item", item(report.item()));
+    return node;
+  }
+
+  private Map<String, Object> item(Item<?> item) {
+    item.walk(this);
+    return out;
+  }
+
+  private Report report(Object tree) {
+    final Map<String, Object> map = map(tree, "report");
+    return Report.of(
+        string(map, "title"), item(map.get("item")), Instant.parse(string(map, "timestamp")));
+  }
+
+  private Item<?> item(Object tree) {
+    final Map<String, Object> map = map(tree, "item");
+    final Map<String, Object> attributes = toAttributes(map.get("attributes"));
+    final String type = string(map, "type");
+    switch (type) {
+      case "text":
+        return Text.of(string(map, "value")).withAttributes(attributes);
+      case "group":
+        {
+          final Group.Builder builder = Group.builder().attributes(attributes);
+          for (Object item : list(map.get("items"), "items")) {
+            builder.addItems(item(item));
+          }
+          return builder.build();
+        }
+      case "tablePQ":
+        return TablePQ.builder()
+            .pq(toPq(map.get("pq")))
+            .tableName(string(map, "tableName"))
+            .maxRows(Math.toIntExact(number(map, "maxRows")))
+            .addAllReplicas(toPqs(map.get("replicas")))
+            .attributes(attributes)
+            .build();
+      case "tableShardedPQ":
+        return TableShardedPQ.builder()
+            .addAllPqs(toPqs(map.get("pqs")))
+            .tableName(string(map, "tableName"))
+            .maxRows(Math.toIntExact(number(map, "maxRows")))
+            .addAllSortColumns(strings(map.get("sortColumns")))
+            .descending(bool(map, "descending"))
+            .attributes(attributes)
+            .build();
+      case "figurePQ":
+        return FigurePQ.of(toPq(map.get("pq")), string(map, "figureName"))
+            .withReplicas(toPqs(map.get("replicas")).toArray(new PQ[0]))
+            .withAttributes(attributes);
+      case "scalarPQ":
+        {
+          final ScalarPQ.Builder builder =
+              ScalarPQ.builder()
+                  .pq(toPq(map.get("pq")))
+                  .variableName(string(map, "variableName"))
+                  .row(number(map, "row"))
+                  .addAllReplicas(toPqs(map.get("replicas")))
+                  .attributes(attributes);
+          if (map.containsKey("column")) {
+            builder.column(string(map, "column"));
+          }
+          return builder.build();
+        }
+      case "scalarLocal":
+        return ScalarLocal.of(toValue(map.get("value"))).withAttributes(attributes);
+      case "tableLocal":
+        return TableLocal.of(localsIn(type).table(number(map, "table"))).withAttributes(attributes);
+      case "figureImage":
+        return FigureImage.of(localsIn(type).image(number(map, "image")))
+            .withAttributes(attributes);
+      default:
+        throw new IllegalArgumentException("Unknown item type '" + type + "'");
+    }
+  }
+
+  @Override
+  public void visit(Table<?> table) {
+    table.walk((Table.Visitor) this);
+  }
+
+  @Override
+  public void visit(TableLocal table) {
+    if (localsOut == null) {
+      throw unsupported(table);
+    }
+    final Map<String, Object> node = node("tableLocal", table.attributes());
+    node.put("table", localsOut.table(table.value()));
+    out = node;
+  }
+
+  @Override
+  public void visit(TablePQ table) {
+    final Map<String, Object> node = node("tablePQ", table.attributes());
+    node.put("pq", pq(table.pq()));
+    node.put("tableName", table.tableName());
+    node.put("maxRows", (long) table.maxRows());
+    node.put("replicas", pqs(table.replicas()));
+    out = node;
+  }
+
+  @Override
+  public void visit(TableShardedPQ table) {
+    final Map<String, Object> node = node("tableShardedPQ", table.attributes());
+    node.put("pqs", pqs(table.pqs()));
+    node.put("tableName", table.tableName());
+    node.put("maxRows", (long) table.maxRows());
+    node.put("sortColumns", new ArrayList<Object>(table.sortColumns()));
+    node.put("descending", table.descending());
+    out = node;
+  }
+
+  @Override
+  public void visit(Figure<?> figure) {
+    figure.walk((Figure.Visitor) this);
+  }
+
+  @Override
+  public void visit(FigureLocal figure) {
+    if (localsOut == null) {
+      throw unsupported(figure);
+    }
+    image(figure, figure.attributes());
+  }
+
+  @Override
+  public void visit(FigureImage figure) {
+    if (localsOut == null) {
+      throw unsupported(figure);
+    }
+    image(figure, figure.attributes());
+  }
+
+  @Override
+  public void visit(FigurePQ figure) {
+    final Map<String, Object> node = node("figurePQ", figure.attributes());
+    node.put("pq", pq(figure.pq()));
+    node.put("figureName", figure.figureName());
+    node.put("replicas", pqs(figure.replicas()));
+    out = node;
+  }
+
+  @Override
+  public void visit(Scalar<?> scalar) {
+    scalar.walk((Scalar.Visitor) this);
+  }
+
+  @Override
+  public void visit(ScalarLocal scalar) {
+    final Object value = scalar.value().isPresent() ? value(scalar.value().get()) : null;
+    if (value != UNSUPPORTED) {
+      final Map<String, Object> node = node("scalarLocal", scalar.attributes());
+      if (value != null) {
+        node.put("value", value);
+      }
+      out = node;
+      return;
+    }
+    if (localsOut == null) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Scalar value of type %s can not be serialized",
+              scalar.value().get().getClass().getName()));
+    }
+    // note: a snapshot only needs to render the same, so the value is kept as it is rendered,
+    // without the format that was already applied to it
+    final Map<String, Object> attributes = new LinkedHashMap<>(scalar.attributes());
+    attributes.remove("format");
+    final Map<String, Object> node = node("scalarLocal", attributes);
+    node.put("value", scalar.formatted());
+    out = node;
+  }
+
+  @Override
+  public void visit(ScalarPQ scalar) {
+    final Map<String, Object> node = node("scalarPQ", scalar.attributes());
+    node.put("pq", pq(scalar.pq()));
+    node.put("variableName", scalar.variableName());
+    if (scalar.column().isPresent()) {
+      node.put("column", scalar.column().get());
+    }
+    node.put("row", scalar.row());
+    node.put("replicas", pqs(scalar.replicas()));
+    out = node;
+  }
+
+  @Override
+  public void visit(Text text) {
+    final Map<String, Object> node = node("text", text.attributes());
+    node.put("value", text.value());
+    out = node;
+  }
+
+  @Override
+  public void visit(Group group) {
+    final Map<String, Object> node = node("group", group.attributes());
+    final List<Object> items = new ArrayList<>(group.items().size());
+    for (Item<?> item : group.items()) {
+      items.add(item(item));
+    }
+    node.put("items", items);
+    out = node;
+  }
+
+  @Override
+  public void visit(Lazy lazy) {
+    if (localsOut == null) {
+      throw unsupported(lazy);
+    }
+    // note: a snapshot is rendered, so the lazy item is resolved as a renderer would
+    lazy.get().walk(this);
+  }
+
+  @Override
+  public void visit(PQName pq) {
+    final Map<String, Object> node = new LinkedHashMap<>();
+    node.put("owner", pq.owner());
+    node.put("name", pq.name());
+    out = node;
+  }
+
+  @Override
+  public void visit(PQSerialId pq) {
+    final Map<String, Object> node = new LinkedHashMap<>();
+    node.put("serialId", pq.serialId());
+    out = node;
+  }
+
+  private void image(Figure<?> figure, Map<String, Object> attributes) {
+    final Map<String, Object> node = node("figureImage", attributes);
+    node.put("image", localsOut.image(figure));
+    out = node;
+  }
+
+  private Map<String, Object> node(String type, Map<String, Object> attributes) {
+    final Map<String, Object> node = new LinkedHashMap<>();
+    node.put("type", type);
+    final Map<String, Object> values = new LinkedHashMap<>();
+    for (Entry<String, Object> e : attributes.entrySet()) {
+      final Object value = value(e.getValue());
+      if (value != UNSUPPORTED) {
+        values.put(e.getKey(), value);
+      } else if (localsOut == null) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Attribute '%s' of type %s can not be serialized",
+                e.getKey(), e.getValue() == null ? null : e.getValue().getClass().getName()));
+      }
+    }
+    if (!values.isEmpty()) {
+      node.put("attributes", values);
+    }
+    return node;
+  }
+
+  private Object value(Object value) {
+    if (value instanceof String || value instanceof Boolean || value instanceof Long) {
+      return value;
+    }
+    if (value instanceof Integer) {
+      return tagged("int", (long) (Integer) value);
+    }
+    if (value instanceof Double) {
+      return tagged("double", value.toString());
+    }
+    if (value instanceof Duration) {
+      return tagged("duration", value.toString());
+    }
+    if (value instanceof Instant) {
+      return tagged("instant", value.toString());
+    }
+    if (value instanceof Markdown) {
+      return tagged("markdown", ((Markdown) value).value());
+    }
+    if (value instanceof Size2D) {
+      final List<Object> size = new ArrayList<>(2);
+      size.add((long) ((Size2D) value).width());
+      size.add((long) ((Size2D) value).height());
+      return tagged("size2D", size);
+    }
+    if (value instanceof PQ) {
+      return tagged("pq", pq((PQ) value));
+    }
+    if (value instanceof Item) {
+      return tagged("item", item((Item<?>) value));
+    }
+    if (value instanceof TableWindow && localsOut == null) {
+      return tagged(
+          "window", windowsOut.computeIfAbsent((TableWindow) value, w -> (long) windowsOut.size()));
+    }
+    return UNSUPPORTED;
+  }
+
+  private static Map<String, Object> tagged(String tag, Object value) {
+    final Map<String, Object> out = new LinkedHashMap<>();
+    out.put(tag, value);
+    return out;
+  }
+
+  private Map<String, Object> toAttributes(Object tree) {
+    final Map<String, Object> out = new LinkedHashMap<>();
+    if (tree != null) {
+      for (Entry<String, Object> e : map(tree, "attributes").entrySet()) {
+        out.put(e.getKey(), toValue(e.getValue()));
+      }
+    }
+    return out;
+  }
+
+  private Object toValue(Object tree) {
+    if (!(tree instanceof Map)) {
+      return tree;
+    }
+    final Map<String, Object> map = map(tree, "attribute");
+    if (map.size() != 1) {
+      throw new IllegalArgumentException("Expected a tagged attribute, found " + map.keySet());
+    }
+    final Entry<String, Object> e = map.entrySet().iterator().next();
+    switch (e.getKey()) {
+      case "int":
+        return Math.toIntExact(number(map, "int"));
+      case "double":
+        return Double.parseDouble(string(map, "double"));
+      case "duration":
+        return Duration.parse(string(map, "duration"));
+      case "instant":
+        return Instant.parse(string(map, "instant"));
+      case "markdown":
+        return Markdown.of(string(map, "markdown"));
+      case "size2D":
+        {
+          final List<Object> size = list(e.getValue(), "size2D");
+          return Size2D.of(
+              Math.toIntExact(number(size.get(0), "width")),
+              Math.toIntExact(number(size.get(1), "height")));
+        }
+      case "pq":
+        return toPq(e.getValue());
+      case "item":
+        return item(e.getValue());
+      case "window":
+        return windowsIn.computeIfAbsent(number(map, "window"), index -> new TableWindow());
+      default:
+        throw new IllegalArgumentException("Unknown attribute type '" + e.getKey() + "'");
+    }
+  }
+
+  private LocalsIn localsIn(String type) {
+    if (localsIn == null) {
+      throw new IllegalArgumentException(
+          "Item type '" + type + "' is only supported in a local snapshot");
+    }
+    return localsIn;
+  }
+
+  private Map<String, Object> pq(PQ pq) {
+    pq.walk(this);
+    return out;
+  }
+
+  private List<Object> pqs(List<PQ> pqs) {
+    final List<Object> out = new ArrayList<>(pqs.size());
+    for (PQ pq : pqs) {
+      out.add(pq(pq));
+    }
+    return out;
+  }
+
+  private static PQ toPq(Object tree) {
+    final Map<String, Object> map = map(tree, "pq");
+    if (map.containsKey("serialId")) {
+      return PQSerialId.of(number(map, "serialId"));
+    }
+    return PQName.of(string(map, "owner"), string(map, "name"));
+  }
+
+  private static List<PQ> toPqs(Object tree) {
+    final List<PQ> out = new ArrayList<>();
+    if (tree != null) {
+      for (Object pq : list(tree, "pqs")) {
+        out.add(toPq(pq));
+      }
+    }
+    return out;
+  }
+
+  private static List<String> strings(Object tree) {
+    final List<String> out = new ArrayList<>();
+    if (tree != null) {
+      for (Object value : list(tree, "strings")) {
+        out.add(string(value, "string"));
+      }
+    }
+    return out;
+  }
+
+  private static IllegalArgumentException unsupported(Item<?> item) {
+    return new IllegalArgumentException(
+        String.format(
+            "Only persistent-query backed items can be serialized, found %s",
+            ItemToGroovyish.toString(item)));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> map(Object tree, String what) {
+    if (!(tree instanceof Map)) {
+      throw new IllegalArgumentException("Expected an object for " + what + ", found " + tree);
+    }
+    return (Map<String, Object>) tree;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> list(Object tree, String what) {
+    if (!(tree instanceof List)) {
+      throw new IllegalArgumentException("Expected an array for " + what + ", found " + tree);
+    }
+    return (List<Object>) tree;
+  }
+
+  private static String string(Map<String, Object> map, String key) {
+    return string(map.get(key), key);
+  }
+
+  private static String string(Object tree, String what) {
+    if (!(tree instanceof String)) {
+      throw new IllegalArgumentException("Expected a string for " + what + ", found " + tree);
+    }
+    return (String) tree;
+  }
+
+  private static long number(Map<String, Object> map, String key) {
+    return number(map.get(key), key);
+  }
+
+  private static long number(Object tree, String what) {
+    if (!(tree instanceof Long)) {
+      throw new IllegalArgumentException("Expected an integer for " + what + ", found " + tree);
+    }
+    return (Long) tree;
+  }
+
+  private static boolean bool(Map<String, Object> map, String key) {
+    final Object tree = map.get(key);
+    if (!(tree instanceof Boolean)) {
+      throw new IllegalArgumentException("Expected a boolean for " + key + ", found " + tree);
+    }
+    return (Boolean) tree;
+  }
+}
@@ -17,7 +17,11 @@ package io.deephaven.plugins.report;
 
 import com.fishlib.io.logger.Logger;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.time.Duration;
+import java.util.concurrent.TimeoutException;
 import org.immutables.value.Value.Default;
 import org.immutables.value.Value.Immutable;
 
@@ -42,16 +46,35 @@ public abstract class SaveFigure implements Figure.Visitor {
     return Duration.ofSeconds(10);
   }
 
+  /**
+   * The deadline to save the figure by. Defaults to {@link #timeout()} from when this is built.
+   *
+   * @return the deadline
+   */
+  @Default
+  public Deadline deadline() {
+    return Deadline.after(timeout());
+  }
+
   @Override
   public void visit(FigureLocal figure) {
     saveLocal(figure);
   }
 
+  @Override
+  public void visit(FigureImage figure) {
+    try {
+      Files.write(file().toPath(), figure.png());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   @Override
   public void visit(FigurePQ figure) {
     final FigureLocal local;
     try {
-      local = figure.toLocal(log(), timeout());
+      local = figure.toLocal(log(), deadline().check("localizing a figure"));
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -59,6 +82,12 @@ public abstract class SaveFigure implements Figure.Visitor {
   }
 
   private void saveLocal(FigureLocal figure) {
+    final long timeoutSeconds;
+    try {
+      timeoutSeconds = ceilSeconds(deadline().check("saving a figure"));
+    } catch (TimeoutException e) {
+      throw new RuntimeException(e);
+    }
     if (figure.size().isPresent()) {
       figure
           .figure()
@@ -67,9 +96,13 @@ public abstract class SaveFigure implements Figure.Visitor {
               figure.size().get().width(),
               figure.size().get().height(),
               true,
-              timeout().getSeconds());
+              timeoutSeconds);
     } else {
-      figure.figure().save(file().getAbsolutePath(), true, timeout().getSeconds());
+      figure.figure().save(file().getAbsolutePath(), true, timeoutSeconds);
     }
   }
+
+  private static long ceilSeconds(Duration duration) {
+    return duration.getSeconds() + (duration.getNano() > 0 ? 1 : 0);
+  }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+/**
+ * A single value, such as a key performance indicator, rendered as a compact block rather than as a
+ * table.
+ *
+ * @param <Self> the scalar type
+ */
+public interface Scalar<Self extends Scalar<Self>> extends Item<Self> {
+
+  /** The visitor-pattern visitor. */
+  interface Visitor {
+    void visit(ScalarLocal scalar);
+
+    void visit(ScalarPQ scalar);
+  }
+
+  /** @return the {@code format} attribute */
+  Attribute<String, Self> format();
+
+  /**
+   * Sets the {@code format} attribute, the {@link String#format(String, Object...)} pattern the
+   * value is rendered with, such as {@code "%,.2f"}. Values are rendered with {@link
+   * String#valueOf(Object)} by default.
+   *
+   * @param format the format
+   * @return the new scalar
+   */
+  Self withFormat(String format);
+
+  /**
+   * The visitor-pattern dispatcher.
+   *
+   * @param visitor the visitor
+   * @param <V> the visitor type
+   * @return the visitor
+   */
+  <V extends Visitor> V walk(V visitor);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+public abstract class ScalarBase<Self extends ScalarBase<Self>> extends ItemBase<Self>
+    implements Scalar<Self> {
+
+  @Override
+  public final Attribute<String, Self> format() {
+    return attribute("format", String.class);
+  }
+
+  @Override
+  public final Self withFormat(String format) {
+    return format().with(format);
+  }
+
+  @Override
+  public final <V extends Item.Visitor> V walk(V visitor) {
+    visitor.visit(this);
+    return visitor;
+  }
+}
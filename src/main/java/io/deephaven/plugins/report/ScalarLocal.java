@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.util.Map;
+import java.util.Optional;
+import org.immutables.value.Value.Immutable;
+import org.immutables.value.Value.Parameter;
+
+/** This scalar is an {@link Item} wrapping a value. */
+@ItemStyle
+@Immutable(builder = true, copy = true)
+public abstract class ScalarLocal extends ScalarBase<ScalarLocal> {
+
+  /** How a missing value is rendered. */
+  static final String MISSING = "n/a";
+
+  /**
+   * Constructs a new scalar item.
+   *
+   * @param value the value, possibly null
+   * @return the scalar item
+   */
+  public static ScalarLocal of(Object value) {
+    return ImmutableScalarLocal.of(Optional.ofNullable(value));
+  }
+
+  /**
+   * The underlying value, or empty if it is null.
+   *
+   * @return the value
+   */
+  @Parameter
+  public abstract Optional<Object> value();
+
+  /**
+   * The value as it is rendered: formatted with the {@link #format()} if present, {@link #MISSING}
+   * if there is no value.
+   *
+   * @return the rendered value
+   */
+  public final String formatted() {
+    if (!value().isPresent()) {
+      return MISSING;
+    }
+    return format().isPresent()
+        ? String.format(format().get(), value().get())
+        : String.valueOf(value().get());
+  }
+
+  @Override
+  public final ScalarLocal withAttribute(String key, Object value) {
+    return copyWithAttributes(plusAttribute(key, value));
+  }
+
+  @Override
+  public final ScalarLocal withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract ScalarLocal copyWithAttributes(Map<String, ? extends Object> entries);
+
+  @Override
+  final ScalarLocal self() {
+    return this;
+  }
+
+  @Override
+  public final <V extends Scalar.Visitor> V walk(V visitor) {
+    visitor.visit(this);
+    return visitor;
+  }
+}
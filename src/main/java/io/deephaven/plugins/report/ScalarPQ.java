@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.db.tables.remote.RemoteDatabase;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportScalarSpec;
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.immutables.value.Value.Check;
+import org.immutables.value.Value.Default;
+import org.immutables.value.Value.Immutable;
+
+/**
+ * A single value exported by a persistent-query: either a variable that holds the value itself, or
+ * one cell of a table. Only the value is fetched, in the same round-trip as the other items of the
+ * persistent-query, so a dashboard of numbers doesn't cost a table snapshot per number.
+ */
+@ItemStyle
+@Immutable(builder = true, copy = true)
+public abstract class ScalarPQ extends ScalarBase<ScalarPQ> {
+
+  /**
+   * Constructs a new instance for a variable that holds the value itself, such as a number.
+   *
+   * @param pq the pq
+   * @param variableName the variable name
+   * @return the scalar
+   */
+  public static ScalarPQ of(PQ pq, String variableName) {
+    return builder().pq(pq).variableName(variableName).build();
+  }
+
+  /**
+   * Constructs a new instance for the value of {@code column} in the first row of a table.
+   *
+   * @param pq the pq
+   * @param tableName the table name
+   * @param column the column
+   * @return the scalar
+   */
+  public static ScalarPQ of(PQ pq, String tableName, String column) {
+    return builder().pq(pq).variableName(tableName).column(column).build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder extends ImmutableScalarPQ.Builder {}
+
+  /**
+   * The persistent-query.
+   *
+   * @return the pq
+   */
+  public abstract PQ pq();
+
+  /**
+   * The variable name for the value, or for the table that holds the value.
+   *
+   * @return the variable name
+   */
+  public abstract String variableName();
+
+  /**
+   * The column that holds the value, when {@link #variableName()} is a table. Empty when the
+   * variable holds the value itself.
+   *
+   * @return the column
+   */
+  public abstract Optional<String> column();
+
+  /**
+   * The position of the row that holds the value, when {@link #variableName()} is a table. Zero by
+   * default.
+   *
+   * @return the row
+   */
+  @Default
+  public long row() {
+    return 0;
+  }
+
+  /**
+   * The replicas of {@link #pq()}: equivalent persistent-queries that export the same value. When
+   * localizing, a fetch that is slower than usual or fails is also sent to the next replica, and
+   * the first answer is taken. Empty by default.
+   *
+   * @return the replicas
+   */
+  public abstract List<PQ> replicas();
+
+  /**
+   * Creates a copy of this scalar but with the new value for {@link #row()}.
+   *
+   * @param row the position of the row
+   * @return the new scalar
+   */
+  public final ScalarPQ withRow(long row) {
+    return copyWithRow(row);
+  }
+
+  abstract ScalarPQ copyWithRow(long row);
+
+  /**
+   * Creates a copy of this scalar but with the new value for {@link #replicas()}.
+   *
+   * @param replicas the replicas, in the order they are asked
+   * @return the new scalar
+   */
+  public final ScalarPQ withReplicas(PQ... replicas) {
+    return copyWithReplicas(Arrays.asList(replicas));
+  }
+
+  abstract ScalarPQ copyWithReplicas(Iterable<? extends PQ> elements);
+
+  /** @return the {@code cacheTtl} attribute */
+  public final Attribute<Duration, ScalarPQ> cacheTtl() {
+    return attribute(LocalCache.CACHE_TTL, Duration.class);
+  }
+
+  /**
+   * Sets the {@code cacheTtl} attribute, the time-to-live of this item in a {@link LocalCache}.
+   *
+   * @param ttl the time-to-live
+   * @return the new scalar
+   */
+  public final ScalarPQ withCacheTtl(Duration ttl) {
+    return cacheTtl().with(ttl);
+  }
+
+  @Override
+  public final ScalarPQ withAttribute(String key, Object value) {
+    return copyWithAttributes(plusAttribute(key, value));
+  }
+
+  @Override
+  public final ScalarPQ withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract ScalarPQ copyWithAttributes(Map<String, ? extends Object> entries);
+
+  @Override
+  final ScalarPQ self() {
+    return this;
+  }
+
+  @Override
+  public final <V extends Scalar.Visitor> V walk(V visitor) {
+    visitor.visit(this);
+    return visitor;
+  }
+
+  @SuppressWarnings("try")
+  public final ScalarLocal toLocal(Logger log, Duration timeout) throws Exception {
+    final Deadline deadline = Deadline.after(timeout);
+    final String pqString = PQToGroovyish.toString(pq());
+    // note: the client is returned to PQClientPool, which shuts it down once idle
+    try (final PQClientPool.Lease lease =
+            PQClientPool.getDefault()
+                .lease(pq(), log, deadline.check("connecting to " + pqString));
+        final Bulkheads.Permit permit =
+            Bulkheads.getDefault().acquire(pq(), lease.client(), deadline)) {
+      final RemoteDatabase db = lease.client().getPersistentQueryClient().getRemoteDatabase();
+      final Optional<Object> value =
+          ReportBatchCARQ.of(
+                  Collections.emptyList(),
+                  Collections.emptyList(),
+                  Collections.singletonList(spec()),
+                  false)
+              .execute(db)
+              .scalar(0)
+              .value();
+      return toLocal(value);
+    }
+  }
+
+  /**
+   * The batch specification for this scalar.
+   *
+   * @return the spec
+   */
+  final ReportScalarSpec spec() {
+    return ReportScalarSpec.of(variableName(), column(), row());
+  }
+
+  /**
+   * Creates the local scalar from the fetched value.
+   *
+   * @param value the value, as fetched via {@link #spec()}
+   * @return the local scalar
+   */
+  final ScalarLocal toLocal(Optional<Object> value) {
+    return ImmutableScalarLocal.builder()
+        .value(value)
+        .attributes(attributes())
+        .putAttributes("scalarPQ", this)
+        .build();
+  }
+
+  @Check
+  final void check() {
+    if (variableName().isEmpty()) {
+      throw new IllegalArgumentException("variableName must be non-empty");
+    }
+    if (column().isPresent() && column().get().isEmpty()) {
+      throw new IllegalArgumentException("column must be non-empty");
+    }
+    if (row() < 0) {
+      throw new IllegalArgumentException("row must be non-negative");
+    }
+    if (!column().isPresent() && row() != 0) {
+      throw new IllegalArgumentException("row is only meaningful with a column");
+    }
+    if (replicas().contains(pq())) {
+      throw new IllegalArgumentException("replicas must not contain pq");
+    }
+  }
+}
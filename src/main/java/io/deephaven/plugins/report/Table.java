@@ -27,6 +27,8 @@ public interface Table<Self extends Table<Self>> extends Item<Self> {
     void visit(TableLocal table);
 
     void visit(TablePQ table);
+
+    void visit(TableShardedPQ table);
   }
 
   /**
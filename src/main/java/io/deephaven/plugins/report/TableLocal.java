@@ -15,13 +15,16 @@
  */
 package io.deephaven.plugins.report;
 
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.util.Map;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Parameter;
 
 /**
  * This table is an {@link Item} wrapping an underlying {@link com.illumon.iris.db.tables.Table}.
  */
-@Immutable(builder = true, copy = false)
+@ItemStyle
+@Immutable(builder = true, copy = true)
 public abstract class TableLocal extends TableBase<TableLocal> {
 
   /**
@@ -44,9 +47,16 @@ public abstract class TableLocal extends TableBase<TableLocal> {
 
   @Override
   public final TableLocal withAttribute(String key, Object value) {
-    return ImmutableTableLocal.builder().from(this).putAttributes(key, value).build();
+    return copyWithAttributes(plusAttribute(key, value));
   }
 
+  @Override
+  public final TableLocal withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract TableLocal copyWithAttributes(Map<String, ? extends Object> entries);
+
   @Override
   final TableLocal self() {
     return this;
@@ -17,18 +17,25 @@ package io.deephaven.plugins.report;
 
 import com.fishlib.io.logger.Logger;
 import com.illumon.iris.controller.PersistentQueryClient;
-import com.illumon.iris.controller.utils.PersistentQueryTableHelper.HelperPersistentQueryClient;
 import com.illumon.iris.db.tables.remote.RemoteDatabase;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ;
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportTableSpec;
 import com.illumon.iris.db.tables.remote.ReportTableCARQ;
+import com.illumon.iris.db.tables.remote.ReportTableCARQ.ReportTableCARQResult;
+import io.deephaven.plugins.annotations.ItemStyle;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import org.immutables.value.Value.Check;
 import org.immutables.value.Value.Default;
 import org.immutables.value.Value.Immutable;
 
 /** A table represented via a persistent-query. */
-@Immutable(builder = true, copy = false)
+@ItemStyle
+@Immutable(builder = true, copy = true)
 public abstract class TablePQ extends TableBase<TablePQ> {
 
   /**
@@ -62,6 +69,27 @@ public abstract class TablePQ extends TableBase<TablePQ> {
    */
   public abstract String tableName();
 
+  /**
+   * The replicas of {@link #pq()}: equivalent persistent-queries that export the same table. When
+   * localizing, a fetch that is slower than usual or fails is also sent to the next replica, and
+   * the first answer is taken. Empty by default.
+   *
+   * @return the replicas
+   */
+  public abstract List<PQ> replicas();
+
+  /**
+   * Creates a copy of this table but with the new value for {@link #replicas()}.
+   *
+   * @param replicas the replicas, in the order they are asked
+   * @return the new table
+   */
+  public final TablePQ withReplicas(PQ... replicas) {
+    return copyWithReplicas(Arrays.asList(replicas));
+  }
+
+  abstract TablePQ copyWithReplicas(Iterable<? extends PQ> elements);
+
   /**
    * The columns to view. An empty list represents all columns, and is the default.
    *
@@ -81,11 +109,50 @@ public abstract class TablePQ extends TableBase<TablePQ> {
     return 100;
   }
 
+  /** @return the {@code cacheTtl} attribute */
+  public final Attribute<Duration, TablePQ> cacheTtl() {
+    return attribute(LocalCache.CACHE_TTL, Duration.class);
+  }
+
+  /**
+   * Sets the {@code cacheTtl} attribute, the time-to-live of this item in a {@link LocalCache}.
+   *
+   * @param ttl the time-to-live
+   * @return the new table
+   */
+  public final TablePQ withCacheTtl(Duration ttl) {
+    return cacheTtl().with(ttl);
+  }
+
+  /** @return the {@code window} attribute */
+  public final Attribute<TableWindow, TablePQ> window() {
+    return attribute(TableWindow.WINDOW, TableWindow.class);
+  }
+
+  /**
+   * Sets the {@code window} attribute. The table is then fetched incrementally: each localization
+   * only fetches the rows appended since the previous one, and represents the latest {@link
+   * #maxRows()} rows retained by {@code window}. Only meant for append-only tables.
+   *
+   * @param window the window
+   * @return the new table
+   */
+  public final TablePQ withWindow(TableWindow window) {
+    return window().with(window);
+  }
+
   @Override
   public final TablePQ withAttribute(String key, Object value) {
-    return ImmutableTablePQ.builder().from(this).putAttributes(key, value).build();
+    return copyWithAttributes(plusAttribute(key, value));
+  }
+
+  @Override
+  public final TablePQ withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
   }
 
+  abstract TablePQ copyWithAttributes(Map<String, ? extends Object> entries);
+
   @Override
   final TablePQ self() {
     return this;
@@ -97,12 +164,129 @@ public abstract class TablePQ extends TableBase<TablePQ> {
     return visitor;
   }
 
+  @SuppressWarnings("try")
   public final TableLocal toLocal(Logger log, Duration timeout) throws Exception {
-    final com.illumon.iris.db.tables.Table actualTable = executeInternal(log, timeout);
+    final Deadline deadline = Deadline.after(timeout);
+    final String pqString = PQToGroovyish.toString(pq());
+    // note: the client is returned to PQClientPool, which shuts it down once idle
+    try (final PQClientPool.Lease lease =
+            PQClientPool.getDefault()
+                .lease(pq(), log, deadline.check("connecting to " + pqString));
+        final Bulkheads.Permit permit =
+            Bulkheads.getDefault().acquire(pq(), lease.client(), deadline)) {
+      final PersistentQueryClient client = lease.client().getPersistentQueryClient();
+      final RemoteDatabase db = client.getRemoteDatabase();
+      if (!window().isPresent()) {
+        // note: doing +1 so we can now if the table is over size, and is represented in a
+        // truncated form
+        return toLocal(ReportTableCARQ.of(tableName(), maxRows() + 1, columns()).execute(db));
+      }
+      final ReportTableCARQResult result =
+          ReportBatchCARQ.of(Collections.singletonList(spec()), Collections.emptyList())
+              .execute(db)
+              .table(0);
+      return toLocal(result.toTable(), result.firstRow(), result.version());
+    }
+  }
+
+  /**
+   * The batch specification for this table.
+   *
+   * @return the spec
+   */
+  final ReportTableSpec spec() {
+    return spec(Optional.empty());
+  }
+
+  /**
+   * The specification for explaining this table. Unlike {@link #spec()}, it asks for {@link
+   * #maxRows()} rows, as the explanation reports the rows that would be represented.
+   *
+   * @return the spec
+   */
+  final ReportTableSpec explainSpec() {
+    final long fromRow = window().isPresent() ? window().get().watermark() : 0;
+    return ReportTableSpec.of(tableName(), maxRows(), columns(), fromRow);
+  }
+
+  /**
+   * The batch specification for this table, to be revalidated against the version {@code lastSeen}.
+   *
+   * @param lastSeen the version of the table when it was last fetched
+   * @return the spec
+   */
+  final ReportTableSpec spec(Optional<String> lastSeen) {
+    // note: doing +1 so we can now if the table is over size, and is represented in a truncated
+    // form
+    // note: a window keeps the latest rows, so only the latest rows of the delta are fetched
+    if (!window().isPresent()) {
+      return ReportTableSpec.of(tableName(), maxRows() + 1, columns(), 0, lastSeen);
+    }
+    return ReportTableSpec.of(
+        tableName(), maxRows() + 1, columns(), window().get().watermark(), lastSeen, true);
+  }
+
+  /**
+   * Creates the local table from the fetched table. With a {@link #window()}, the fetched rows are
+   * appended to the window first.
+   *
+   * @param actualTable the table, as fetched via {@link #spec()}
+   * @param firstRow the position of the first fetched row
+   * @param version the version of the fetched table
+   * @return the local table, with the {@code version} attribute
+   */
+  final TableLocal toLocal(
+      com.illumon.iris.db.tables.Table actualTable, long firstRow, String version) {
+    return toLocal(actualTable, firstRow, version, true);
+  }
+
+  /**
+   * Creates the local table from the fetched table, as {@link
+   * #toLocal(com.illumon.iris.db.tables.Table, long, String)} does. The rows of a replica are at
+   * other positions than those of the primary, so a table fetched from a replica is not appended to
+   * the {@link #window()}: the window starts over instead, and the next fetch from the primary
+   * takes its latest rows.
+   *
+   * @param actualTable the table, as fetched via {@link #spec()}
+   * @param firstRow the position of the first fetched row
+   * @param version the version of the fetched table
+   * @param fromPrimary whether the table was fetched from the primary persistent-query
+   * @return the local table, with the {@code version} attribute
+   */
+  final TableLocal toLocal(
+      com.illumon.iris.db.tables.Table actualTable,
+      long firstRow,
+      String version,
+      boolean fromPrimary) {
+    if (!window().isPresent()) {
+      return toLocal(actualTable).withAttribute(LocalCache.VERSION, version);
+    }
+    if (!fromPrimary) {
+      window().get().reset();
+      return toLocal(actualTable.tail(maxRows()), actualTable.size() > maxRows())
+          .withAttribute(LocalCache.VERSION, version);
+    }
+    final com.illumon.iris.db.tables.Table retained =
+        window().get().append(firstRow, actualTable, maxRows() + 1);
+    return toLocal(retained.tail(maxRows()), retained.size() > maxRows())
+        .withAttribute(LocalCache.VERSION, version);
+  }
+
+  /**
+   * Creates the local table from the fetched table.
+   *
+   * @param actualTable the table, as fetched via {@link #spec()}
+   * @return the local table
+   */
+  final TableLocal toLocal(com.illumon.iris.db.tables.Table actualTable) {
     final boolean truncated =
         actualTable.size() > maxRows(); // note: we perform the query as limit() + 1
+    return toLocal(actualTable.head(maxRows()), truncated);
+  }
+
+  private TableLocal toLocal(com.illumon.iris.db.tables.Table value, boolean truncated) {
     return ImmutableTableLocal.builder()
-        .value(actualTable.head(maxRows()))
+        .value(value)
         .attributes(attributes())
         .putAttributes("tablePQ", this)
         .putAttributes("truncated", truncated)
@@ -117,16 +301,8 @@ public abstract class TablePQ extends TableBase<TablePQ> {
     if (maxRows() <= 0) {
       throw new IllegalArgumentException("limit must be positive");
     }
-  }
-
-  private com.illumon.iris.db.tables.Table executeInternal(Logger log, Duration timeout)
-      throws Exception {
-    final HelperPersistentQueryClient helperClient = PQToHelperClient.of(pq(), log, timeout);
-    final PersistentQueryClient client = helperClient.getPersistentQueryClient();
-    final RemoteDatabase db = client.getRemoteDatabase();
-    // note: doing +1 so we can now if the table is over size, and is represented in a truncated
-    // form
-    return ReportTableCARQ.of(tableName(), maxRows() + 1, columns()).execute(db);
-    // todo: shutdown stuff?
+    if (replicas().contains(pq())) {
+      throw new IllegalArgumentException("replicas must not contain pq");
+    }
   }
 }
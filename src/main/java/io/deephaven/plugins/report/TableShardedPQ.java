@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.fishlib.io.logger.Logger;
+import com.illumon.iris.db.tables.utils.TableTools;
+import io.deephaven.plugins.annotations.ItemStyle;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.immutables.value.Value.Check;
+import org.immutables.value.Value.Default;
+import org.immutables.value.Value.Immutable;
+
+/**
+ * A table sharded across many persistent-queries that all export the same table, such as one
+ * persistent-query per region or symbol range. Each shard is fetched as its own {@link TablePQ},
+ * concurrently with the other shards, and the shards are merged into a single table.
+ *
+ * <p>The merge happens locally: the optional {@link #sortColumns()} sort the merged rows, and then
+ * the first {@link #maxRows()} are kept. Each shard contributes at most {@link #maxRows()} rows, so
+ * for a true top-N the shards should already be sorted the same way.
+ */
+@ItemStyle
+@Immutable(builder = true, copy = true)
+public abstract class TableShardedPQ extends TableBase<TableShardedPQ> {
+
+  /**
+   * Constructs a new instance.
+   *
+   * @param pqs the persistent-queries, one per shard
+   * @param tableName the table name
+   * @return the sharded table
+   */
+  public static TableShardedPQ of(List<PQ> pqs, String tableName) {
+    return builder().addAllPqs(pqs).tableName(tableName).build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder extends ImmutableTableShardedPQ.Builder {}
+
+  /**
+   * The persistent-queries, one per shard. Must not contain duplicates.
+   *
+   * @return the pqs
+   */
+  public abstract List<PQ> pqs();
+
+  /**
+   * The variable name for the table, the same in every shard.
+   *
+   * @return the table name
+   */
+  public abstract String tableName();
+
+  /**
+   * The maximum number of rows to represent, and to fetch from each shard.
+   *
+   * @return the limit
+   */
+  @Default
+  public int maxRows() {
+    return 100;
+  }
+
+  /**
+   * The columns to sort the merged rows by. An empty list keeps the rows in shard order, and is the
+   * default.
+   *
+   * @return the sort columns
+   */
+  public abstract List<String> sortColumns();
+
+  /**
+   * Whether {@link #sortColumns()} sort in descending order. Defaults to {@code false}.
+   *
+   * @return true if descending
+   */
+  @Default
+  public boolean descending() {
+    return false;
+  }
+
+  /** @return the {@code cacheTtl} attribute */
+  public final Attribute<Duration, TableShardedPQ> cacheTtl() {
+    return attribute(LocalCache.CACHE_TTL, Duration.class);
+  }
+
+  /**
+   * Sets the {@code cacheTtl} attribute, the time-to-live of each shard in a {@link LocalCache}.
+   *
+   * @param ttl the time-to-live
+   * @return the new table
+   */
+  public final TableShardedPQ withCacheTtl(Duration ttl) {
+    return cacheTtl().with(ttl);
+  }
+
+  /**
+   * The shards, in the order of {@link #pqs()}.
+   *
+   * @return the shards
+   */
+  public final List<TablePQ> shards() {
+    final List<TablePQ> shards = new ArrayList<>(pqs().size());
+    for (PQ pq : pqs()) {
+      TablePQ shard = TablePQ.builder().pq(pq).tableName(tableName()).maxRows(maxRows()).build();
+      if (cacheTtl().isPresent()) {
+        shard = shard.withCacheTtl(cacheTtl().get());
+      }
+      shards.add(shard);
+    }
+    return shards;
+  }
+
+  @Override
+  public final TableShardedPQ withAttribute(String key, Object value) {
+    return copyWithAttributes(plusAttribute(key, value));
+  }
+
+  @Override
+  public final TableShardedPQ withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract TableShardedPQ copyWithAttributes(Map<String, ? extends Object> entries);
+
+  @Override
+  final TableShardedPQ self() {
+    return this;
+  }
+
+  @Override
+  public final <V extends Table.Visitor> V walk(V visitor) {
+    visitor.visit(this);
+    return visitor;
+  }
+
+  /**
+   * Fetches every shard concurrently, and merges them.
+   *
+   * @param log the log
+   * @param timeout the timeout
+   * @return the local table
+   * @throws Exception if a shard fails to fetch
+   */
+  public final TableLocal toLocal(Logger log, Duration timeout) throws Exception {
+    final Report report = Report.of(tableName(), this);
+    return (TableLocal)
+        Localization.parallel(pqs().size())
+            .withBulkheads(Bulkheads.getDefault())
+            .toLocal(report, log, timeout)
+            .item();
+  }
+
+  /**
+   * Creates the local table by merging the fetched shards.
+   *
+   * @param shards the local shards, in the order of {@link #shards()}
+   * @return the local table
+   */
+  final TableLocal merge(List<TableLocal> shards) {
+    final List<com.illumon.iris.db.tables.Table> tables = new ArrayList<>(shards.size());
+    boolean truncated = false;
+    for (TableLocal shard : shards) {
+      tables.add(shard.value());
+      truncated |= shard.attribute("truncated", Boolean.class).orElse(false);
+    }
+    com.illumon.iris.db.tables.Table merged =
+        TableTools.merge(tables.toArray(new com.illumon.iris.db.tables.Table[0]));
+    if (!sortColumns().isEmpty()) {
+      final String[] columns = sortColumns().toArray(new String[0]);
+      merged = descending() ? merged.sortDescending(columns) : merged.sort(columns);
+    }
+    truncated |= merged.size() > maxRows();
+    return ImmutableTableLocal.builder()
+        .value(merged.head(maxRows()))
+        .attributes(attributes())
+        .putAttributes("tableShardedPQ", this)
+        .putAttributes("truncated", truncated)
+        .build();
+  }
+
+  @Check
+  final void check() {
+    if (pqs().isEmpty()) {
+      throw new IllegalArgumentException("pqs must be non-empty");
+    }
+    if (new HashSet<>(pqs()).size() != pqs().size()) {
+      throw new IllegalArgumentException("pqs must not contain duplicates");
+    }
+    if (tableName().isEmpty()) {
+      throw new IllegalArgumentException("tableName must be non-empty");
+    }
+    if (maxRows() <= 0) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report;
+
+import com.illumon.iris.db.tables.utils.TableTools;
+import com.illumon.iris.db.util.liveness.LivenessScope;
+import java.util.Optional;
+
+/**
+ * The rows of an append-only {@link TablePQ} retained locally between localizations, so that each
+ * localization only fetches the rows appended since the previous one. The window remembers a
+ * watermark, the size of the table as of the last fetch, and keeps the latest rows of the table.
+ * When more rows were appended since than the window keeps, only the latest of them are fetched.
+ *
+ * <p>Use one window per table of a recurring report, and reuse it for every run. The rows at a
+ * position of the table must never change: if the persistent-query restarts, and its table has
+ * fewer rows than the watermark, the window starts over from the first row. A windowed table is
+ * never served from a {@link LocalCache}, as each localization must append to its window.
+ *
+ * <p>{@link ReportCodec} writes a window without its rows: the tables that shared a window share a
+ * new, empty window once read back.
+ *
+ * @see TablePQ#withWindow(TableWindow)
+ */
+public final class TableWindow {
+
+  /** The attribute key for the window of a {@link TablePQ}. */
+  static final String WINDOW = "window";
+
+  private long watermark;
+  private long previousWatermark;
+  private com.illumon.iris.db.tables.Table table;
+  private LivenessScope retained;
+
+  /** Constructs a new, empty window. */
+  public TableWindow() {}
+
+  /**
+   * The position of the next row to fetch, which is the size of the table as of the last fetch.
+   * Zero until the first fetch.
+   *
+   * @return the watermark
+   */
+  public synchronized long watermark() {
+    return watermark;
+  }
+
+  /**
+   * The retained rows, if any have been fetched.
+   *
+   * @return the retained rows
+   */
+  public synchronized Optional<com.illumon.iris.db.tables.Table> table() {
+    return Optional.ofNullable(table);
+  }
+
+  /** Releases the retained rows, so that the next fetch starts over from the first row. */
+  public synchronized void reset() {
+    if (retained != null) {
+      retained.release();
+    }
+    watermark = 0;
+    previousWatermark = 0;
+    table = null;
+    retained = null;
+  }
+
+  /**
+   * Appends the fetched rows, and keeps the latest {@code maxRows} of them.
+   *
+   * @param firstRow the position of the first fetched row
+   * @param delta the fetched rows
+   * @param maxRows the maximum number of rows to keep
+   * @return the retained rows
+   */
+  synchronized com.illumon.iris.db.tables.Table append(
+      long firstRow, com.illumon.iris.db.tables.Table delta, long maxRows) {
+    if (table != null && firstRow == previousWatermark && firstRow + delta.size() == watermark) {
+      // note: the same rows, for another item that shares this window
+      return table;
+    }
+    // note: the persistent-query returns rows from the start when its table was restarted, and
+    // only the latest rows when more were appended than are kept; either way the fetched rows
+    // replace the retained ones
+    final com.illumon.iris.db.tables.Table merged =
+        table == null || firstRow != watermark ? delta : TableTools.merge(table, delta);
+    // note: select copies the rows, so the retained rows never reference older merges
+    final com.illumon.iris.db.tables.Table next = merged.tail(maxRows).select();
+    final LivenessScope nextRetained = new LivenessScope();
+    nextRetained.manage(next);
+    if (retained != null) {
+      retained.release();
+    }
+    previousWatermark = firstRow;
+    watermark = firstRow + delta.size();
+    table = next;
+    retained = nextRetained;
+    return next;
+  }
+}
@@ -15,13 +15,16 @@
  */
 package io.deephaven.plugins.report;
 
+import io.deephaven.plugins.annotations.ItemStyle;
 import io.deephaven.plugins.report.styling.Markdown;
+import java.util.Map;
 import org.immutables.value.Value.Check;
 import org.immutables.value.Value.Immutable;
 import org.immutables.value.Value.Parameter;
 
 /** A text is an {@link Item} that represents a raw {@link String}. */
-@Immutable(builder = true, copy = false)
+@ItemStyle
+@Immutable(builder = true, copy = true)
 public abstract class Text extends ItemBase<Text> {
 
   /**
@@ -57,11 +60,29 @@ public abstract class Text extends ItemBase<Text> {
     return markdown().with(Markdown.of(markdown));
   }
 
+  /**
+   * The {@code placeholder} attribute, present when this text stands in for a remote item that
+   * could not be localized. The value is the reason.
+   *
+   * @return the {@code placeholder} attribute
+   * @see Localization.OnFailure#PLACEHOLDER
+   */
+  public final Attribute<String, Text> placeholder() {
+    return attribute(Localization.PLACEHOLDER, String.class);
+  }
+
   @Override
   public final Text withAttribute(String key, Object value) {
-    return ImmutableText.builder().from(this).putAttributes(key, value).build();
+    return copyWithAttributes(plusAttribute(key, value));
   }
 
+  @Override
+  public final Text withAttributes(Map<String, ?> attributes) {
+    return attributes.isEmpty() ? this : copyWithAttributes(plusAttributes(attributes));
+  }
+
+  abstract Text copyWithAttributes(Map<String, ? extends Object> entries);
+
   @Override
   final Text self() {
     return this;
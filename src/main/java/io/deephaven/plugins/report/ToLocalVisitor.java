@@ -15,24 +15,34 @@
  */
 package io.deephaven.plugins.report;
 
-import com.fishlib.io.logger.Logger;
-import io.deephaven.plugins.report.Group.Builder;
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-class ToLocalVisitor implements Item.Visitor, Table.Visitor, Figure.Visitor {
+/**
+ * Rebuilds an item, replacing each remote item with its localized equivalent, and each lazy item
+ * with a lazy item that localizes what it resolves to.
+ *
+ * @see RemoteItems
+ */
+class ToLocalVisitor implements Item.Visitor, Table.Visitor, Figure.Visitor, Scalar.Visitor {
 
-  public static Item<?> toLocal(Item<?> item, Logger log, Duration duration) {
-    return item.walk(new ToLocalVisitor(log, duration)).getOut();
+  public static Item<?> toLocal(Item<?> item, Map<Item<?>, Item<?>> localized, Lazies lazies) {
+    return item.walk(new ToLocalVisitor(localized, lazies)).getOut();
   }
 
-  private final Logger log;
-  private final Duration duration;
+  private final Map<Item<?>, Item<?>> localized;
+  private final Lazies lazies;
   private Item<?> out;
 
-  private ToLocalVisitor(Logger log, Duration duration) {
-    this.log = Objects.requireNonNull(log);
-    this.duration = Objects.requireNonNull(duration);
+  private ToLocalVisitor(Map<Item<?>, Item<?>> localized, Lazies lazies) {
+    this.localized = Objects.requireNonNull(localized);
+    this.lazies = Objects.requireNonNull(lazies);
   }
 
   public Item<?> getOut() {
@@ -51,11 +61,22 @@ class ToLocalVisitor implements Item.Visitor, Table.Visitor, Figure.Visitor {
 
   @Override
   public void visit(TablePQ table) {
-    try {
-      out = table.toLocal(log, duration);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
+    out = localized(table);
+  }
+
+  @Override
+  public void visit(TableShardedPQ table) {
+    final List<TableLocal> shards = new ArrayList<>(table.pqs().size());
+    for (TablePQ shard : table.shards()) {
+      final Item<?> local = localized(shard);
+      if (!(local instanceof TableLocal)) {
+        // note: the placeholder of a failed shard stands in for the whole table
+        out = table.name().isPresent() ? local.withName(table.name().get()) : local;
+        return;
+      }
+      shards.add((TableLocal) local);
     }
+    out = table.merge(shards);
   }
 
   @Override
@@ -68,13 +89,29 @@ class ToLocalVisitor implements Item.Visitor, Table.Visitor, Figure.Visitor {
     out = figure;
   }
 
+  @Override
+  public void visit(FigureImage figure) {
+    out = figure;
+  }
+
   @Override
   public void visit(FigurePQ figure) {
-    try {
-      out = figure.toLocal(log, duration);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+    out = localized(figure);
+  }
+
+  @Override
+  public void visit(Scalar<?> scalar) {
+    scalar.walk((Scalar.Visitor) this);
+  }
+
+  @Override
+  public void visit(ScalarLocal scalar) {
+    out = scalar;
+  }
+
+  @Override
+  public void visit(ScalarPQ scalar) {
+    out = localized(scalar);
   }
 
   @Override
@@ -84,10 +121,76 @@ class ToLocalVisitor implements Item.Visitor, Table.Visitor, Figure.Visitor {
 
   @Override
   public void visit(Group group) {
-    final Builder builder = Group.builder().attributes(group.attributes());
+    final List<Item<?>> items = new ArrayList<>(group.items().size());
     for (Item<?> item : group.items()) {
-      builder.addItems(toLocal(item, log, duration));
+      items.add(toLocal(item, localized, lazies));
+    }
+    // note: shares the attributes with the remote group, as render plans compare them by identity
+    out = group.copyWithItems(items);
+  }
+
+  @Override
+  public void visit(Lazy lazy) {
+    out = lazies.local(lazy);
+  }
+
+  private Item<?> localized(Item<?> item) {
+    final Item<?> local = localized.get(item);
+    if (local == null) {
+      throw new IllegalStateException("Remote item was not localized: " + item);
+    }
+    return local;
+  }
+
+  /**
+   * The lazy items of a localization. Each lazy item is replaced by a lazy item that, once it is
+   * first resolved, localizes the remote items it resolves to and remembers the result.
+   */
+  static final class Lazies {
+
+    private final Function<RemoteItems, Map<Item<?>, Item<?>>> localize;
+    private final Map<Lazy, Lazy> local;
+
+    /**
+     * Constructs the lazy items of a localization.
+     *
+     * @param localize localizes the remote items that a lazy item resolves to
+     */
+    Lazies(Function<RemoteItems, Map<Item<?>, Item<?>>> localize) {
+      this.localize = Objects.requireNonNull(localize);
+      this.local = new ConcurrentHashMap<>();
+    }
+
+    private Lazy local(Lazy lazy) {
+      return local.computeIfAbsent(
+          lazy, l -> Lazy.of(new Memoized(() -> resolve(l))).withAttributes(l.attributes()));
+    }
+
+    private Item<?> resolve(Lazy lazy) {
+      final Item<?> item = lazy.get();
+      final RemoteItems remote = new RemoteItems();
+      item.walk(remote);
+      final Map<Item<?>, Item<?>> localized =
+          remote.isEmpty() ? Collections.emptyMap() : localize.apply(remote);
+      return toLocal(item, localized, this);
+    }
+  }
+
+  private static final class Memoized implements Supplier<Item<?>> {
+
+    private final Supplier<Item<?>> supplier;
+    private Item<?> item;
+
+    Memoized(Supplier<Item<?>> supplier) {
+      this.supplier = Objects.requireNonNull(supplier);
+    }
+
+    @Override
+    public synchronized Item<?> get() {
+      if (item == null) {
+        item = supplier.get();
+      }
+      return item;
     }
-    out = builder.build();
   }
 }
@@ -24,6 +24,9 @@ import com.slack.api.methods.request.chat.ChatPostMessageRequest;
 import com.slack.api.methods.response.chat.ChatPostMessageResponse;
 import com.slack.api.model.block.SectionBlock;
 import com.slack.api.model.block.composition.MarkdownTextObject;
+import io.deephaven.plugins.report.Deadline;
+import io.deephaven.plugins.report.Localization;
+import io.deephaven.plugins.report.LocalizedReports;
 import io.deephaven.plugins.report.Report;
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -83,7 +86,12 @@ public abstract class ClientImpl implements Client {
   }
 
   /**
-   * The timeout. Defaults to {@code Duration.ofSeconds(5)}.
+   * The timeout for sending a whole report. Localization, figure saving and delivery all draw from
+   * the same budget, and the send fails once it is spent. Defaults to {@code
+   * Duration.ofSeconds(5)}.
+   *
+   * <p>Note: this used to be the timeout of each remote fetch on its own. It now bounds the whole
+   * send, so a send of many items may need a larger timeout than before.
    *
    * @return the timeout
    */
@@ -92,6 +100,16 @@ public abstract class ClientImpl implements Client {
     return Duration.ofSeconds(5);
   }
 
+  /**
+   * The localization strategy. Defaults to {@link Localization#sequential()}.
+   *
+   * @return the localization
+   */
+  @Default
+  public Localization localization() {
+    return Localization.sequential();
+  }
+
   /**
    * Creates a copy of this config but with the new value for {@link #lockType()}.
    *
@@ -108,6 +126,14 @@ public abstract class ClientImpl implements Client {
    */
   public abstract ClientImpl withTimeout(Duration timeout);
 
+  /**
+   * Creates a copy of this config but with the new value for {@link #localization()}.
+   *
+   * @param localization the localization
+   * @return the new instance
+   */
+  public abstract ClientImpl withLocalization(Localization localization);
+
   @Override
   public void send(String message) {
     final Slack slack = Slack.getInstance();
@@ -133,9 +159,17 @@ public abstract class ClientImpl implements Client {
 
   @Override
   public void send(Report report) {
+    final Deadline deadline = Deadline.after(timeout());
     final SlackMessagePerItemRenderer renderer =
-        ImmutableSlackMessagePerItemRenderer.builder().config(config()).client(client()).build();
-    final Report local = report.toLocal(Logger.NULL, timeout());
-    lockType().doVisit(renderer, local);
+        ImmutableSlackMessagePerItemRenderer.builder()
+            .config(config())
+            .client(client())
+            .deadline(deadline)
+            .onFailure(localization().onFailure())
+            .build();
+    try (final LocalizedReports localized =
+        localization().open(Collections.singletonList(report), Logger.NULL, deadline)) {
+      lockType().doVisit(renderer, localized.reports().get(0));
+    }
   }
 }
@@ -15,6 +15,7 @@
  */
 package io.deephaven.plugins.slack;
 
+import com.fishlib.io.logger.Logger;
 import com.slack.api.methods.MethodsClient;
 import com.slack.api.methods.SlackApiException;
 import com.slack.api.methods.request.chat.ChatPostMessageRequest;
@@ -27,30 +28,66 @@ import com.slack.api.model.block.LayoutBlock;
 import com.slack.api.model.block.SectionBlock;
 import com.slack.api.model.block.composition.MarkdownTextObject;
 import com.slack.api.model.block.composition.PlainTextObject;
+import io.deephaven.plugins.report.Deadline;
 import io.deephaven.plugins.report.Figure;
 import io.deephaven.plugins.report.Group;
 import io.deephaven.plugins.report.Item;
+import io.deephaven.plugins.report.Lazy;
+import io.deephaven.plugins.report.Localization;
 import io.deephaven.plugins.report.Report;
 import io.deephaven.plugins.report.SaveFigure;
+import io.deephaven.plugins.report.Scalar;
+import io.deephaven.plugins.report.ScalarLocal;
+import io.deephaven.plugins.report.ScalarPQ;
 import io.deephaven.plugins.report.Table;
 import io.deephaven.plugins.report.TableLocal;
 import io.deephaven.plugins.report.TablePQ;
+import io.deephaven.plugins.report.TableShardedPQ;
 import io.deephaven.plugins.report.Text;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+import org.immutables.value.Value.Default;
 import org.immutables.value.Value.Immutable;
 
 @Immutable(builder = true, copy = false)
-abstract class SlackMessagePerItemRenderer implements Item.Visitor, Table.Visitor {
+abstract class SlackMessagePerItemRenderer
+    implements Item.Visitor, Table.Visitor, Scalar.Visitor {
+
+  // note: each lazy item is resolved once per render
+  private final Map<Lazy, Item<?>> lazies = new HashMap<>();
 
   public abstract Config config();
 
   public abstract MethodsClient client();
 
+  /**
+   * The deadline that saving figures and sending messages draw from.
+   *
+   * @return the deadline
+   */
+  public abstract Deadline deadline();
+
+  /**
+   * What to do when a remote item that is still remote at render time fails to localize, or misses
+   * the deadline. Under {@link Localization.OnFailure#PLACEHOLDER}, only that item is sent as a
+   * placeholder. Defaults to {@link Localization.OnFailure#FAIL}.
+   *
+   * @return the failure policy
+   */
+  @Default
+  public Localization.OnFailure onFailure() {
+    return Localization.OnFailure.FAIL;
+  }
+
   void visit(Report report) {
     final ChatPostMessageRequest message =
         ChatPostMessageRequest.builder()
@@ -99,7 +136,17 @@ abstract class SlackMessagePerItemRenderer implements Item.Visitor, Table.Visito
 
   @Override
   public void visit(TablePQ table) {
-    throw new UnsupportedOperationException("todo");
+    localOrUnavailable(
+            table, () -> table.toLocal(Logger.NULL, deadline().check("localizing a table")))
+        .walk(this);
+  }
+
+  @Override
+  public void visit(TableShardedPQ table) {
+    localOrUnavailable(
+            table,
+            () -> table.toLocal(Logger.NULL, deadline().check("localizing a sharded table")))
+        .walk(this);
   }
 
   @Override
@@ -107,6 +154,45 @@ abstract class SlackMessagePerItemRenderer implements Item.Visitor, Table.Visito
     uploadFigureInChannel(figure);
   }
 
+  @Override
+  public void visit(Scalar<?> scalar) {
+    scalar.walk((Scalar.Visitor) this);
+  }
+
+  @Override
+  public void visit(ScalarLocal scalar) {
+    final String value = scalar.formatted();
+    final ChatPostMessageRequestBuilder builder =
+        ChatPostMessageRequest.builder()
+            .channel(config().channel())
+            .text(value); // fallback from blocks
+
+    final List<LayoutBlock> blocks = new ArrayList<>();
+    if (scalar.name().isPresent()) {
+      blocks.add(
+          ContextBlock.builder()
+              .elements(
+                  Collections.singletonList(
+                      PlainTextObject.builder().text(scalar.name().get()).build()))
+              .build());
+    }
+
+    blocks.add(
+        SectionBlock.builder()
+            .text(MarkdownTextObject.builder().text("*" + value + "*").build())
+            .build());
+
+    final ChatPostMessageRequest request = builder.blocks(blocks).build();
+    final ChatPostMessageResponse response = sendMessage(request);
+  }
+
+  @Override
+  public void visit(ScalarPQ scalar) {
+    localOrUnavailable(
+            scalar, () -> scalar.toLocal(Logger.NULL, deadline().check("localizing a scalar")))
+        .walk(this);
+  }
+
   @Override
   public void visit(Text text) {
     final ChatPostMessageRequestBuilder builder =
@@ -141,7 +227,28 @@ abstract class SlackMessagePerItemRenderer implements Item.Visitor, Table.Visito
     final ChatPostMessageResponse response = sendMessage(request);
   }
 
+  /**
+   * Localizes a remote item that was not localized before rendering. If that fails, either the
+   * render fails, or under {@link Localization.OnFailure#PLACEHOLDER} the item is replaced by its
+   * placeholder, so that only that item is lost.
+   */
+  private Item<?> localOrUnavailable(Item<?> item, Callable<? extends Item<?>> localize) {
+    final long start = System.nanoTime();
+    try {
+      return localize.call();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (Exception e) {
+      if (onFailure() == Localization.OnFailure.FAIL) {
+        throw new RuntimeException(e);
+      }
+      return Localization.placeholder(item, e, Duration.ofNanos(System.nanoTime() - start));
+    }
+  }
+
   private ChatPostMessageResponse sendMessage(ChatPostMessageRequest request) {
+    checkDeadline("sending a slack message");
     final ChatPostMessageResponse response;
     try {
       response = client().chatPostMessage(request);
@@ -161,6 +268,11 @@ abstract class SlackMessagePerItemRenderer implements Item.Visitor, Table.Visito
     }
   }
 
+  @Override
+  public void visit(Lazy lazy) {
+    lazies.computeIfAbsent(lazy, Lazy::get).walk(this);
+  }
+
   private com.slack.api.model.File uploadFigureInChannel(Figure<?> figure) {
     final File file;
     try {
@@ -169,7 +281,8 @@ abstract class SlackMessagePerItemRenderer implements Item.Visitor, Table.Visito
       throw new UncheckedIOException(e);
     }
 
-    figure.walk(SaveFigure.builder().file(file).build());
+    figure.walk(SaveFigure.builder().file(file).deadline(deadline()).build());
+    checkDeadline("uploading a figure to slack");
 
     final FilesUploadRequest request =
         FilesUploadRequest.builder()
@@ -190,4 +303,12 @@ abstract class SlackMessagePerItemRenderer implements Item.Visitor, Table.Visito
 
     return response.getFile();
   }
+
+  private void checkDeadline(String stage) {
+    try {
+      deadline().check(stage);
+    } catch (TimeoutException e) {
+      throw new RuntimeException(e);
+    }
+  }
 }
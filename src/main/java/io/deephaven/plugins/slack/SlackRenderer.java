@@ -15,6 +15,7 @@
  */
 package io.deephaven.plugins.slack;
 
+import com.fishlib.io.logger.Logger;
 import com.slack.api.Slack;
 import com.slack.api.methods.SlackApiException;
 import com.slack.api.methods.request.chat.ChatPostMessageRequest;
@@ -32,20 +33,29 @@ import com.slack.api.model.block.composition.PlainTextObject;
 import io.deephaven.plugins.report.Figure;
 import io.deephaven.plugins.report.Group;
 import io.deephaven.plugins.report.Item;
+import io.deephaven.plugins.report.Lazy;
 import io.deephaven.plugins.report.Report;
 import io.deephaven.plugins.report.SaveFigure;
+import io.deephaven.plugins.report.Scalar;
+import io.deephaven.plugins.report.ScalarLocal;
+import io.deephaven.plugins.report.ScalarPQ;
 import io.deephaven.plugins.report.Table;
 import io.deephaven.plugins.report.Text;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 // note: not in use ATM...
-class SlackRenderer implements Item.Visitor {
+class SlackRenderer implements Item.Visitor, Scalar.Visitor {
+
+  private static final Duration SCALAR_TIMEOUT = Duration.ofSeconds(10);
 
   public static ChatPostMessageRequest build(ReportMessage message, Slack slack) {
     final SlackRenderer renderer = new SlackRenderer(message.config(), slack);
@@ -58,6 +68,7 @@ class SlackRenderer implements Item.Visitor {
   private final Config config;
   private final Slack slack;
   private final List<LayoutBlock> out = new ArrayList<>();
+  private final Map<Lazy, Item<?>> lazies = new HashMap<>();
 
   SlackRenderer(Config config, Slack slack) {
     this.config = Objects.requireNonNull(config);
@@ -111,6 +122,31 @@ class SlackRenderer implements Item.Visitor {
     out.add(builder.build());
   }
 
+  @Override
+  public void visit(Scalar<?> scalar) {
+    addNameContextBlock(scalar);
+    scalar.walk((Scalar.Visitor) this);
+  }
+
+  @Override
+  public void visit(ScalarLocal scalar) {
+    out.add(
+        SectionBlock.builder()
+            .text(PlainTextObject.builder().text(scalar.formatted()).build())
+            .build());
+  }
+
+  @Override
+  public void visit(ScalarPQ scalar) {
+    final ScalarLocal local;
+    try {
+      local = scalar.toLocal(Logger.NULL, SCALAR_TIMEOUT);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    visit(local);
+  }
+
   @Override
   public void visit(Text text) {
     addNameContextBlock(text);
@@ -125,6 +161,11 @@ class SlackRenderer implements Item.Visitor {
     }
   }
 
+  @Override
+  public void visit(Lazy lazy) {
+    lazies.computeIfAbsent(lazy, Lazy::get).walk(this);
+  }
+
   private static String getUrl(com.slack.api.model.File file) {
     // very hacky :s
     final String[] parts = file.getPermalinkPublic().split("-");
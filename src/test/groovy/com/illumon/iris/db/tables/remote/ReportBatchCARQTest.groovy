@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.illumon.iris.db.tables.remote
+
+import com.illumon.iris.db.tables.live.LiveTableMonitor
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportScalarSpec
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportTableSpec
+import org.junit.jupiter.api.Test
+
+import java.util.function.Supplier
+
+import static org.assertj.core.api.Assertions.assertThat
+
+class ReportBatchCARQTest {
+
+	private static final List<ReportTableSpec> TABLES = [
+			ReportTableSpec.of("a", 10, []),
+			ReportTableSpec.of("b", 10, []),
+			ReportTableSpec.of("c", 10, [])]
+
+	private static final List<ReportScalarSpec> SCALARS = [ReportScalarSpec.of("s")]
+
+	@Test
+	void atOneStepHoldsTheLock() {
+		Supplier<Boolean> held = { LiveTableMonitor.DEFAULT.sharedLock().isHeldByCurrentThread() }
+		assertThat(ReportCARQ.atOneStep(held)).isTrue()
+		assertThat(held.get()).isFalse()
+	}
+
+	@Test
+	void consistentSnapshotIsAtOneStep() {
+		assertThat(ReportBatchCARQ.of(TABLES, [], SCALARS, true).snapshotsAtOneStep()).isTrue()
+		assertThat(ReportBatchCARQ.of(TABLES.subList(0, 1), [], SCALARS, true).snapshotsAtOneStep()).isTrue()
+	}
+
+	@Test
+	void snapshotIsNotConsistentByDefault() {
+		assertThat(ReportBatchCARQ.of(TABLES, [], SCALARS, false).snapshotsAtOneStep()).isFalse()
+	}
+
+	@Test
+	void singleTableDoesNotTakeTheLock() {
+		assertThat(ReportBatchCARQ.of(TABLES.subList(0, 1), [], [], true).snapshotsAtOneStep()).isFalse()
+	}
+}
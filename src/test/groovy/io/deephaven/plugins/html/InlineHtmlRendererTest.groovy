@@ -15,15 +15,20 @@
  */
 package io.deephaven.plugins.html
 
+import io.deephaven.plugins.report.Deadline
 import io.deephaven.plugins.report.Item
+import io.deephaven.plugins.report.Localization
 import io.deephaven.plugins.report.Report
 import org.apache.commons.mail.EmailException
 import org.junit.jupiter.api.Test
 
+import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.TimeoutException
 
 import static io.deephaven.plugins.report.Functions.*
 import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
 
 class InlineHtmlRendererTest {
 
@@ -399,6 +404,24 @@ class InlineHtmlRendererTest {
 </html>""")
 	}
 
+	@Test
+	void remoteFailureFailsByDefault() {
+		def config = getConfig(report("The report", item(table(pq(42L), "t")), Instant.EPOCH))
+		def renderer = new InlineHtmlFileRenderer(config, Deadline.after(Duration.ZERO), Optional.empty())
+		assertThatThrownBy({ renderer.renderHtml() }).hasCauseInstanceOf(TimeoutException.class)
+	}
+
+	@Test
+	void remoteFailureIsRenderedAsPlaceholder() {
+		def config = HTMLFile.builder()
+				.addReports(report("The report", item(table(pq(42L), "t")), Instant.EPOCH))
+				.filePath("test.html")
+				.localization(Localization.sequential().withOnFailure(Localization.OnFailure.PLACEHOLDER))
+				.build()
+		def renderer = new InlineHtmlFileRenderer(config, Deadline.after(Duration.ZERO), Optional.empty())
+		assertThat(renderer.renderHtml()).contains("Unavailable after").contains("TimeoutException")
+	}
+
 	private static String getHtml(Report report) throws EmailException {
 		final HTMLFile config = getConfig(report)
 		getHtml(config)
@@ -425,7 +448,9 @@ class InlineHtmlRendererTest {
 	}
 
 	private static String getHtml(HTMLFile config) throws EmailException {
-		final InlineHtmlFileRenderer renderer = new InlineHtmlFileRenderer(config)
-		renderer.renderHtml()
+		final String html = new InlineHtmlFileRenderer(config, Deadline.after(config.timeout()), Optional.empty()).renderHtml()
+		final String compiled = new InlineHtmlFileRenderer(config, Deadline.after(config.timeout()), Optional.of(config.renderPlans())).renderHtml()
+		assertThat(compiled).isEqualTo(html)
+		html
 	}
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.html
+
+import io.deephaven.plugins.report.Deadline
+import io.deephaven.plugins.report.Report
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.time.Instant
+
+import static com.illumon.iris.db.tables.utils.TableTools.longCol
+import static com.illumon.iris.db.tables.utils.TableTools.newTable
+import static io.deephaven.plugins.report.Functions.*
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+
+class RenderPlanTest {
+
+	@Test
+	void textsAndGroupsAreCompiled() {
+		def plan = RenderPlan.of(report("The report", item("A", item("B", "C")), Instant.EPOCH))
+		assertThat(plan.slots()).isEqualTo(0)
+	}
+
+	@Test
+	void lazyIsASlot() {
+		def plan = RenderPlan.of(report("The report", item("A", lazy({ -> "B" })), Instant.EPOCH))
+		assertThat(plan.slots()).isEqualTo(1)
+	}
+
+	@Test
+	void plansAreCompiledOnce() {
+		def config = getConfig(report("The report", item("A"), Instant.EPOCH))
+		assertThat(config.renderPlans()).isSameAs(config.renderPlans())
+	}
+
+	@Test
+	void planMustMatchReport() {
+		def config = getConfig(report("The report", item("A"), Instant.EPOCH))
+		def other = getConfig(report("Another report", item("A"), Instant.EPOCH))
+		def renderer = new InlineHtmlFileRenderer(other, Deadline.after(Duration.ofSeconds(5)), Optional.of(config.renderPlans()))
+		assertThatThrownBy({ renderer.renderHtml() }).isInstanceOf(IllegalArgumentException.class)
+	}
+
+	@Test
+	void planRendersAsTheUncompiledRenderer() {
+		def the_report = report("The report", item(
+				named("Some text", "A <b>"),
+				named("A group", item("B", scalar(42).withName("The answer"))),
+				lazy({ -> named("Lazy", "C") }),
+				text("Unavailable").withAttribute("placeholder", "TimeoutException")), Instant.EPOCH)
+		def config = getConfig(the_report)
+		def deadline = Deadline.after(Duration.ofSeconds(5))
+		def compiled = new InlineHtmlFileRenderer(config, deadline, Optional.of(config.renderPlans())).renderHtml()
+		def uncompiled = new InlineHtmlFileRenderer(config, deadline, Optional.empty()).renderHtml()
+		assertThat(compiled).isEqualTo(uncompiled)
+	}
+
+	@Test
+	void planOfTheRemoteReportRendersTheLocalizedReport() {
+		def timestamp = Instant.parse("2020-06-01T12:00:00Z")
+		def remote = report("The report", item("A", table(pq(1L), "t").withName("T")), timestamp)
+		def localized = report("The report", item("A", table(newTable(longCol("X", 1L))).withName("T")), timestamp)
+		def config = getConfig(localized)
+		def deadline = Deadline.after(Duration.ofSeconds(5))
+		def compiled = new InlineHtmlFileRenderer(config, deadline, Optional.of(RenderPlan.ofAll([remote]))).renderHtml()
+		def uncompiled = new InlineHtmlFileRenderer(config, deadline, Optional.empty()).renderHtml()
+		assertThat(compiled).isEqualTo(uncompiled)
+		assertThat(compiled).contains("&lt;table&gt;").doesNotContain("TablePQ")
+	}
+
+	@Test
+	void planMustMatchStructure() {
+		def config = getConfig(report("The report", item("A", "B"), Instant.EPOCH))
+		def other = getConfig(report("The report", item("A", "Changed"), Instant.EPOCH))
+		def renderer = new InlineHtmlFileRenderer(other, Deadline.after(Duration.ofSeconds(5)), Optional.of(config.renderPlans()))
+		assertThatThrownBy({ renderer.renderHtml() }).isInstanceOf(IllegalArgumentException.class)
+	}
+
+	@Test
+	void planMustMatchAttributes() {
+		def config = getConfig(report("The report", item(text("A")), Instant.EPOCH))
+		def other = getConfig(report("The report", item(text("A").withMarkdown("*A*")), Instant.EPOCH))
+		def renderer = new InlineHtmlFileRenderer(other, Deadline.after(Duration.ofSeconds(5)), Optional.of(config.renderPlans()))
+		assertThatThrownBy({ renderer.renderHtml() }).isInstanceOf(IllegalArgumentException.class)
+	}
+
+	@Test
+	void placeholderFillsASlot() {
+		def config = getConfig(report("The report", item(scalar(1).withName("S")), Instant.EPOCH))
+		def localized = getConfig(report("The report",
+				item(text("Unavailable").withName("S").withAttribute("placeholder", "TimeoutException")), Instant.EPOCH))
+		def html = new InlineHtmlFileRenderer(localized, Deadline.after(Duration.ofSeconds(5)), Optional.of(config.renderPlans())).renderHtml()
+		assertThat(html).contains("Unavailable")
+	}
+
+	private static HTMLFile getConfig(Report report) {
+		return HTMLFile.builder()
+				.addReports(report)
+				.filePath("test.html")
+				.build()
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.illumon.iris.controller.utils.PersistentQueryTableHelper.HelperPersistentQueryClient
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.util.concurrent.TimeoutException
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+class BulkheadsTest {
+
+	private static HelperPersistentQueryClient onHost(String host) {
+		def client = mock(HelperPersistentQueryClient.class, RETURNS_DEEP_STUBS)
+		when(client.getPersistentQueryClient().getHost()).thenReturn(host)
+		client
+	}
+
+	@Test
+	void fetchesFromTheSamePqWaitTheirTurn() {
+		def bulkheads = new Bulkheads(10, 1)
+		def pq = PQSerialId.of(1L)
+		def permit = bulkheads.acquire(pq, onHost('a'), Deadline.after(Duration.ofSeconds(1)))
+		assertThatThrownBy({
+			bulkheads.acquire(pq, onHost('a'), Deadline.after(Duration.ofMillis(10)))
+		}).isInstanceOf(TimeoutException.class)
+		bulkheads.acquire(PQSerialId.of(2L), onHost('a'), Deadline.after(Duration.ofSeconds(1))).close()
+		permit.close()
+		bulkheads.acquire(pq, onHost('a'), Deadline.after(Duration.ofSeconds(1))).close()
+	}
+
+	@Test
+	void fetchesFromTheSameHostWaitTheirTurn() {
+		def bulkheads = new Bulkheads(1, 10)
+		def permit =
+				bulkheads.acquire(PQSerialId.of(1L), onHost('a'), Deadline.after(Duration.ofSeconds(1)))
+		assertThatThrownBy({
+			bulkheads.acquire(PQSerialId.of(2L), onHost('a'), Deadline.after(Duration.ofMillis(10)))
+		}).isInstanceOf(TimeoutException.class)
+		bulkheads.acquire(PQSerialId.of(2L), onHost('b'), Deadline.after(Duration.ofSeconds(1))).close()
+		permit.close()
+		bulkheads.acquire(PQSerialId.of(2L), onHost('a'), Deadline.after(Duration.ofSeconds(1))).close()
+	}
+
+	@Test
+	void unlimitedIsShared() {
+		assertThat(Bulkheads.unlimited()).isSameAs(Bulkheads.unlimited())
+	}
+
+	@Test
+	void defaultIsUnlimitedUnlessConfigured() {
+		assertThat(System.getProperty(Bulkheads.DEFAULT_PER_HOST_PROPERTY)).isNull()
+		assertThat(Bulkheads.getDefault().perHost()).isEqualTo(Integer.MAX_VALUE)
+		assertThat(Bulkheads.getDefault().perPq()).isEqualTo(Integer.MAX_VALUE)
+	}
+}
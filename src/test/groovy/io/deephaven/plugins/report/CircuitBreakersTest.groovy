@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+
+class CircuitBreakersTest {
+
+	private static final PQ PQ_1 = PQSerialId.of(1L)
+
+	private static final Callable<String> FAILS = { throw new IOException('down') }
+
+	private static final Callable<String> SUCCEEDS = { 'up' }
+
+	@Test
+	void opensAfterConsecutiveFailures() {
+		def breakers = new CircuitBreakers(2, Duration.ofHours(1))
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		assertThat(breakers.state(PQ_1)).isEqualTo(CircuitBreakers.State.CLOSED)
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		assertThat(breakers.states()).containsEntry(PQ_1, CircuitBreakers.State.OPEN)
+		assertThatThrownBy({ breakers.call(PQ_1, SUCCEEDS) })
+				.isInstanceOf(CircuitBreakers.OpenException.class)
+		assertThat(breakers.state(PQSerialId.of(2L))).isEqualTo(CircuitBreakers.State.CLOSED)
+	}
+
+	@Test
+	void successResetsTheFailureCount() {
+		def breakers = new CircuitBreakers(2, Duration.ofHours(1))
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		assertThat(breakers.call(PQ_1, SUCCEEDS)).isEqualTo('up')
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		assertThat(breakers.state(PQ_1)).isEqualTo(CircuitBreakers.State.CLOSED)
+	}
+
+	@Test
+	void probeClosesOrReopens() {
+		def breakers = new CircuitBreakers(1, Duration.ZERO)
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		assertThat(breakers.state(PQ_1)).isEqualTo(CircuitBreakers.State.OPEN)
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		assertThat(breakers.state(PQ_1)).isEqualTo(CircuitBreakers.State.OPEN)
+		assertThat(breakers.call(PQ_1, SUCCEEDS)).isEqualTo('up')
+		assertThat(breakers.state(PQ_1)).isEqualTo(CircuitBreakers.State.CLOSED)
+	}
+
+	@Test
+	void checkFailsFastWithoutTakingTheProbe() {
+		def breakers = new CircuitBreakers(1, Duration.ZERO)
+		breakers.check(PQ_1)
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		breakers.check(PQ_1)
+		assertThat(breakers.call(PQ_1, SUCCEEDS)).isEqualTo('up')
+
+		def open = new CircuitBreakers(1, Duration.ofHours(1))
+		assertThatThrownBy({ open.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		assertThatThrownBy({ open.check(PQ_1) }).isInstanceOf(CircuitBreakers.OpenException.class)
+	}
+
+	@Test
+	void onlyTheProbeGivesBackTheProbe() {
+		def breakers = new CircuitBreakers(1, Duration.ZERO)
+		def entered = new CountDownLatch(1)
+		def release = new CountDownLatch(1)
+		Callable<String> blocks = {
+			entered.countDown()
+			release.await()
+			'up'
+		}
+		def closedCall = Thread.start {
+			try {
+				breakers.call(PQ_1, blocks)
+			} catch (InterruptedException ignored) {
+				// abandoned while the probe is running
+			}
+		}
+		entered.await()
+		assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		def probed = null
+		def probe = Thread.start { probed = breakers.call(PQ_1, blocks) }
+		while (probe.state != Thread.State.WAITING) {
+			Thread.sleep(1)
+		}
+		closedCall.interrupt()
+		closedCall.join()
+		assertThatThrownBy({ breakers.call(PQ_1, SUCCEEDS) })
+				.isInstanceOf(CircuitBreakers.OpenException.class)
+		release.countDown()
+		probe.join()
+		assertThat(probed).isEqualTo('up')
+		assertThat(breakers.state(PQ_1)).isEqualTo(CircuitBreakers.State.CLOSED)
+	}
+
+	@Test
+	void disabledCallsThrough() {
+		def breakers = CircuitBreakers.disabled()
+		for (int i = 0; i < 3; ++i) {
+			assertThatThrownBy({ breakers.call(PQ_1, FAILS) }).isInstanceOf(IOException.class)
+		}
+		assertThat(breakers.call(PQ_1, SUCCEEDS)).isEqualTo('up')
+		breakers.check(PQ_1)
+		breakers.reset(PQ_1)
+		assertThat(breakers.states()).isEmpty()
+	}
+}
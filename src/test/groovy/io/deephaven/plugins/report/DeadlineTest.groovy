@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.util.concurrent.TimeoutException
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+
+class DeadlineTest {
+
+	@Test
+	void remainingIsBoundedByBudget() {
+		def deadline = Deadline.after(Duration.ofHours(1))
+		assertThat(deadline.isExpired()).isFalse()
+		assertThat(deadline.remaining()).isLessThanOrEqualTo(Duration.ofHours(1))
+		assertThat(deadline.check("the next stage")).isPositive()
+	}
+
+	@Test
+	void expiredDeadlineFailsCheck() {
+		def deadline = Deadline.after(Duration.ZERO)
+		assertThat(deadline.isExpired()).isTrue()
+		assertThat(deadline.remaining()).isEqualTo(Duration.ZERO)
+		assertThatThrownBy({ deadline.check("the next stage") })
+				.isInstanceOf(TimeoutException.class)
+				.hasMessageContaining("the next stage")
+	}
+
+	@Test
+	void negativeBudgetIsInvalid() {
+		assertThatThrownBy({ Deadline.after(Duration.ofSeconds(-1)) })
+				.isInstanceOf(IllegalArgumentException.class)
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.fishlib.io.logger.Logger
+import com.illumon.iris.db.tables.ColumnDefinition
+import com.illumon.iris.db.tables.TableDefinition
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+class ExplanationTest {
+
+	private static TableDefinition definition(Map<String, Class<?>> columns) {
+		def definitions = columns.collect { name, type ->
+			def column = mock(ColumnDefinition.class)
+			when(column.getName()).thenReturn(name)
+			when(column.getDataType()).thenReturn(type)
+			column
+		}
+		def definition = mock(TableDefinition.class)
+		when(definition.getColumns()).thenReturn(definitions as ColumnDefinition[])
+		definition
+	}
+
+	@Test
+	void tableEstimateGrowsWithRows() {
+		def table = TablePQ.of(PQSerialId.of(1L), 'trades')
+		def definition = definition(['Sym': String.class, 'Qty': long.class])
+		def small = Explanation.TableExplanation.of(table, definition, 1000L, 10L)
+		def large = Explanation.TableExplanation.of(table, definition, 1000L, 100L)
+		def row = Explanation.ROW_HTML_BYTES + 2 * Explanation.CELL_HTML_BYTES + 16 + 10
+		assertThat(large.estimatedHtmlBytes() - small.estimatedHtmlBytes()).isEqualTo(90 * row)
+	}
+
+	@Test
+	void explainAsksForMaxRows() {
+		def table = TablePQ.builder().pq(PQSerialId.of(1L)).tableName('trades').maxRows(10).build()
+		assertThat(table.explainSpec().maxRows()).isEqualTo(10L)
+		assertThat(table.spec().maxRows()).isEqualTo(11L)
+	}
+
+	@Test
+	void figureEstimateFollowsSize() {
+		def figure = FigurePQ.of(PQSerialId.of(1L), 'plot')
+		def explanation = Explanation.builder()
+				.addPqs(PQSerialId.of(1L))
+				.addFigures(Explanation.FigureExplanation.of(figure, 'FigureWidget'))
+				.addFigures(Explanation.FigureExplanation.of(figure.withSize(400, 300), 'FigureWidget'))
+				.build()
+		assertThat(explanation.estimatedImageBytes()).isEqualTo(120000L + 30000L)
+		assertThat(explanation.estimatedBytes()).isEqualTo(explanation.estimatedImageBytes())
+	}
+
+	@Test
+	void localReportsTouchNoPq() {
+		def report = Report.of('title', Text.of('hello'))
+		def explanation = Localization.sequential()
+				.explain([report], Logger.NULL, Deadline.after(Duration.ofSeconds(1)))
+		assertThat(explanation.pqs()).isEmpty()
+		assertThat(explanation.failures()).isEmpty()
+		assertThat(explanation.estimatedBytes()).isZero()
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.fishlib.io.logger.Logger
+import com.illumon.iris.controller.utils.PersistentQueryTableHelper.HelperPersistentQueryClient
+import com.illumon.iris.db.tables.Table
+import com.illumon.iris.db.tables.remote.ReportBatchCARQ.ReportBatchCARQResult
+import com.illumon.iris.db.tables.remote.ReportTableCARQ.ReportTableCARQResult
+import com.illumon.iris.db.v2.remote.InitialSnapshot
+
+import java.time.Duration
+
+import static org.mockito.ArgumentMatchers.any
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS
+import static org.mockito.Mockito.RETURNS_SELF
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+/**
+ * Stands in for the workers of persistent-queries: every client it connects is a mock whose remote
+ * database answers each remote query with {@link #answer}.
+ */
+class FakePQs {
+
+	/** The remote queries executed, in order, as [pq, query] pairs. */
+	final List<List<Object>> executed = [].asSynchronized()
+
+	/** The clients connected, in order, as [pq, client] pairs. */
+	final List<List<Object>> connected = [].asSynchronized()
+
+	/** Answers a remote query: (PQ pq, Object query) -> result. */
+	Closure answer = { PQ pq, Object query -> throw new UnsupportedOperationException("No answer for " + query) }
+
+	/** The host of the worker of a persistent-query. */
+	Closure host = { PQ pq -> "host" }
+
+	/** A table whose views, such as {@code head}, are itself. */
+	static Table table() {
+		return mock(Table.class, RETURNS_SELF)
+	}
+
+	static ReportTableCARQResult tableResult(Table table, long firstRow = 0, String version = "v1") {
+		def result = mock(ReportTableCARQResult.class)
+		when(result.isUnchanged()).thenReturn(false)
+		when(result.snapshot()).thenReturn(Optional.of(mock(InitialSnapshot.class)))
+		when(result.toTable()).thenReturn(table)
+		when(result.firstRow()).thenReturn(firstRow)
+		when(result.version()).thenReturn(version)
+		return result
+	}
+
+	static ReportBatchCARQResult batchResult(List tables, List figures = [], List scalars = [], Map failures = [:]) {
+		return ReportBatchCARQResult.of(indexed(tables), indexed(figures), indexed(scalars), failures)
+	}
+
+	private static Map indexed(List results) {
+		def out = [:]
+		results.eachWithIndex { result, i ->
+			if (result != null) {
+				out[i] = result
+			}
+		}
+		return out
+	}
+
+	PQClientPool.Connector connector() {
+		return { PQ pq, Logger log, Duration timeout -> connect(pq) } as PQClientPool.Connector
+	}
+
+	PQClientPool pool(Duration idleTimeout = Duration.ofMinutes(5)) {
+		return new PQClientPool(idleTimeout, connector())
+	}
+
+	List<HelperPersistentQueryClient> clients(PQ pq) {
+		return connected.findAll { it[0] == pq }.collect { (HelperPersistentQueryClient) it[1] }
+	}
+
+	List<Object> queries(PQ pq) {
+		return executed.findAll { it[0] == pq }.collect { it[1] }
+	}
+
+	private HelperPersistentQueryClient connect(PQ pq) {
+		def client = mock(HelperPersistentQueryClient.class, RETURNS_DEEP_STUBS)
+		def pqClient = client.getPersistentQueryClient()
+		when(pqClient.getHost()).thenAnswer({ host(pq) })
+		when(pqClient.getRemoteDatabase().getProcessorConnection().isConnected()).thenReturn(true)
+		when(pqClient.getRemoteDatabase().executeConcurrentQuery(any())).thenAnswer({ invocation ->
+			def query = invocation.getArgument(0)
+			executed.add([pq, query])
+			answer(pq, query)
+		})
+		connected.add([pq, client])
+		return client
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.fishlib.io.logger.Logger
+import com.illumon.iris.db.plot.FigureWidget
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeoutException
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+import static org.mockito.Mockito.doAnswer
+import static org.mockito.Mockito.mock
+
+class FigureDataTest {
+
+	@Test
+	void figuresAreReturnedInOrder() {
+		def a = mock(FigureWidget.class)
+		def b = mock(FigureWidget.class)
+		def inflaters = new LinkedHashMap<String, Callable<FigureWidget>>()
+		inflaters.put("a", { -> a } as Callable<FigureWidget>)
+		inflaters.put("b", { -> b } as Callable<FigureWidget>)
+		assertThat(FigureData.await("pq(42)", inflaters, Logger.NULL, Deadline.after(Duration.ofSeconds(10)))).containsExactly(a, b)
+	}
+
+	@Test
+	void missingDataTimesOutNamingTheFigure() {
+		def never = new CountDownLatch(1)
+		def figure = mock(FigureWidget.class)
+		doAnswer({ never.await() }).when(figure).waitForData()
+		def inflaters = ["slow": { -> figure } as Callable<FigureWidget>]
+		assertThatThrownBy({ FigureData.await("pq(42)", inflaters, Logger.NULL, Deadline.after(Duration.ofMillis(50))) })
+				.isInstanceOf(TimeoutException.class)
+				.hasMessageContaining("figure 'slow' from pq(42)")
+	}
+
+	@Test
+	void abandonedWaitLingersUntilItsDataArrives() {
+		def data = new CountDownLatch(1)
+		def figure = mock(FigureWidget.class)
+		// note: like the real figure, the wait does not respond to interrupts
+		doAnswer({
+			while (true) {
+				try {
+					data.await()
+					return null
+				} catch (InterruptedException ignored) {
+				}
+			}
+		}).when(figure).waitForData()
+		def before = FigureData.lingering()
+		def inflaters = ["stuck": { -> figure } as Callable<FigureWidget>]
+		assertThatThrownBy({ FigureData.await("pq(42)", inflaters, Logger.NULL, Deadline.after(Duration.ofMillis(50))) })
+				.isInstanceOf(TimeoutException.class)
+		assertThat(FigureData.lingering()).isEqualTo(before + 1)
+		data.countDown()
+		def until = System.nanoTime() + Duration.ofSeconds(10).toNanos()
+		while (FigureData.lingering() > before && System.nanoTime() < until) {
+			Thread.sleep(10)
+		}
+		assertThat(FigureData.lingering()).isEqualTo(before)
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.illumon.iris.db.tables.utils.DBDateTime
+import org.junit.jupiter.api.Test
+
+import java.time.Instant
+
+import static com.illumon.iris.db.tables.utils.TableTools.col
+import static com.illumon.iris.db.tables.utils.TableTools.doubleCol
+import static com.illumon.iris.db.tables.utils.TableTools.newTable
+import static io.deephaven.plugins.report.Functions.*
+import static org.assertj.core.api.Assertions.assertThat
+import static org.mockito.Mockito.mock
+
+class FingerprintTest {
+
+	@Test
+	void equalContentHasEqualFingerprints() {
+		assertThat(item("A", named("B", "C")).fingerprint()).isEqualTo(item("A", named("B", "C")).fingerprint())
+	}
+
+	@Test
+	void differentContentHasDifferentFingerprints() {
+		assertThat(item("A", "B").fingerprint()).isNotEqualTo(item("AB").fingerprint())
+		assertThat(item("A", "B").fingerprint()).isNotEqualTo(item("B", "A").fingerprint())
+		assertThat(text("A").fingerprint()).isNotEqualTo(named("A", "A").fingerprint())
+	}
+
+	@Test
+	void attributeOrderIsIgnored() {
+		assertThat(attrs("A", [a: 1, b: 2]).fingerprint()).isEqualTo(attrs("A", [b: 2, a: 1]).fingerprint())
+	}
+
+	@Test
+	void pqReferencesAreCovered() {
+		assertThat(table(pq(1L), "t").fingerprint()).isEqualTo(table(pq(1L), "t").fingerprint())
+		assertThat(table(pq(1L), "t").fingerprint()).isNotEqualTo(table(pq(2L), "t").fingerprint())
+		assertThat(table(pq("owner", "name"), "t").fingerprint()).isNotEqualTo(figure(pq("owner", "name"), "t").fingerprint())
+	}
+
+	@Test
+	void reportTimestampIsIgnored() {
+		def first = report("The report", item("A"), Instant.EPOCH)
+		def second = report("The report", item("A"), Instant.EPOCH.plusSeconds(60))
+		assertThat(first.fingerprint()).isEqualTo(second.fingerprint())
+		assertThat(first.fingerprint()).isNotEqualTo(report("Another report", item("A"), Instant.EPOCH).fingerprint())
+	}
+
+	@Test
+	void fingerprintIsCached() {
+		def item = item("A", "B")
+		assertThat(item.fingerprint()).isSameAs(item.fingerprint())
+		assertThat(item.fingerprint().toHex()).hasSize(32)
+	}
+
+	@Test
+	void arraysAreFingerprintedByContent() {
+		assertThat(attrs("A", [a: [1, 2] as int[]]).fingerprint()).isEqualTo(attrs("A", [a: [1, 2] as int[]]).fingerprint())
+		assertThat(attrs("A", [a: [1, 2] as int[]]).fingerprint()).isNotEqualTo(attrs("A", [a: [2, 1] as int[]]).fingerprint())
+	}
+
+	@Test
+	void localTablesAreFingerprintedByContent() {
+		def first = newTable(col("T", [new DBDateTime(1L), null] as DBDateTime[]), doubleCol("X", 1.5d, 2.5d))
+		def second = newTable(col("T", [new DBDateTime(1L), null] as DBDateTime[]), doubleCol("X", 1.5d, 2.5d))
+		def other = newTable(col("T", [new DBDateTime(2L), null] as DBDateTime[]), doubleCol("X", 1.5d, 2.5d))
+		assertThat(table(first).fingerprint()).isEqualTo(table(second).fingerprint())
+		assertThat(table(first).fingerprint()).isNotEqualTo(table(other).fingerprint())
+	}
+
+	@Test
+	void unsupportedColumnsNeverMatch() {
+		def the_table = table(newTable(col("O", [new Object()] as Object[])))
+		assertThat(the_table.fingerprint()).isNotEqualTo(the_table.fingerprint())
+	}
+
+	@Test
+	void windowIsNotFingerprintedByInstance() {
+		assertThat(table(pq(1L), "t").withWindow(new TableWindow()).fingerprint())
+				.isEqualTo(table(pq(1L), "t").withWindow(new TableWindow()).fingerprint())
+		assertThat(table(pq(1L), "t").withWindow(new TableWindow()).fingerprint())
+				.isNotEqualTo(table(pq(1L), "t").fingerprint())
+	}
+
+	@Test
+	void lazyItemsNeverMatch() {
+		def first = lazy({ -> "A" })
+		def second = lazy({ -> "B" })
+		assertThat(first.fingerprint()).isNotEqualTo(second.fingerprint())
+		assertThat(first.fingerprint()).isNotEqualTo(first.fingerprint())
+	}
+
+	@Test
+	void unsupportedAttributesNeverMatch() {
+		def value = new Object()
+		assertThat(attrs("A", [a: value]).fingerprint()).isNotEqualTo(attrs("A", [a: value]).fingerprint())
+		assertThat(attrs("A", [a: [1, 2] as Integer[]]).fingerprint()).isEqualTo(attrs("A", [a: [1, 2] as Integer[]]).fingerprint())
+	}
+
+	@Test
+	void liveItemsAreNotCached() {
+		def the_figure = figure(mock(com.illumon.iris.db.plot.Figure.class))
+		assertThat(the_figure.fingerprint()).isNotEqualTo(the_figure.fingerprint())
+		def group = item("A", the_figure)
+		assertThat(group.fingerprint()).isNotEqualTo(group.fingerprint())
+		def the_report = report("The report", group, Instant.EPOCH)
+		assertThat(the_report.fingerprint()).isNotEqualTo(the_report.fingerprint())
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+
+import static org.assertj.core.api.Assertions.assertThat
+
+class LatenciesTest {
+
+	@Test
+	void percentileNeedsMinimumSamples() {
+		def latencies = new Latencies()
+		for (int i = 1; i < Latencies.MIN_SAMPLES; i++) {
+			latencies.record(Duration.ofMillis(i))
+		}
+		assertThat(latencies.percentile(0.95)).isEmpty()
+		latencies.record(Duration.ofMillis(Latencies.MIN_SAMPLES))
+		assertThat(latencies.percentile(0.95)).hasValue(Duration.ofMillis(Latencies.MIN_SAMPLES))
+		assertThat(latencies.percentile(0.5)).hasValue(Duration.ofMillis(Latencies.MIN_SAMPLES.intdiv(2)))
+	}
+
+	@Test
+	void oldestLatenciesAreReplaced() {
+		def latencies = new Latencies()
+		for (int i = 0; i < Latencies.CAPACITY; i++) {
+			latencies.record(Duration.ofSeconds(10))
+		}
+		for (int i = 0; i < Latencies.CAPACITY; i++) {
+			latencies.record(Duration.ofMillis(1))
+		}
+		assertThat(latencies.percentile(0.95)).hasValue(Duration.ofMillis(1))
+	}
+
+	@Test
+	void leastRecentlyUsedPQsAreEvicted() {
+		def kept = PQBatch.latencies(PQSerialId.of(-1L))
+		def evicted = PQBatch.latencies(PQSerialId.of(-2L))
+		for (int i = 0; i < PQBatch.MAX_LATENCIES - 1; i++) {
+			PQBatch.latencies(PQSerialId.of(-3L - i))
+			assertThat(PQBatch.latencies(PQSerialId.of(-1L))).isSameAs(kept)
+		}
+		assertThat(PQBatch.latencies(PQSerialId.of(-2L))).isNotSameAs(evicted)
+	}
+}
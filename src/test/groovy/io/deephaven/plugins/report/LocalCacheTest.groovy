@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+
+import static com.illumon.iris.db.tables.utils.TableTools.longCol
+import static com.illumon.iris.db.tables.utils.TableTools.newTable
+import static io.deephaven.plugins.report.Functions.*
+import static org.assertj.core.api.Assertions.assertThat
+
+class LocalCacheTest {
+
+	private static final TablePQ TABLE_A = table(pq(1L), "a")
+	private static final TablePQ TABLE_B = table(pq(1L), "b")
+	private static final Text LOCAL = text("local")
+
+	@Test
+	void hitAndMiss() {
+		def cache = new LocalCache(10, Duration.ofMinutes(1))
+		assertThat(cache.get(TABLE_A)).isNull()
+		cache.put(TABLE_A, LOCAL)
+		assertThat(cache.get(table(pq(1L), "a"))).isSameAs(LOCAL)
+		assertThat(cache.hits()).isEqualTo(1L)
+		assertThat(cache.misses()).isEqualTo(1L)
+	}
+
+	@Test
+	void leastRecentlyUsedIsEvicted() {
+		def cache = new LocalCache(1, Duration.ofMinutes(1))
+		cache.put(TABLE_A, LOCAL)
+		cache.put(TABLE_B, LOCAL)
+		assertThat(cache.size()).isEqualTo(1)
+		assertThat(cache.evictions()).isEqualTo(1L)
+		assertThat(cache.get(TABLE_A)).isNull()
+		assertThat(cache.get(TABLE_B)).isSameAs(LOCAL)
+	}
+
+	@Test
+	void zeroTtlAttributeIsNotCached() {
+		def cache = new LocalCache(10, Duration.ofMinutes(1))
+		def table = TABLE_A.withCacheTtl(Duration.ZERO)
+		cache.put(table, LOCAL)
+		assertThat(cache.get(table)).isNull()
+	}
+
+	@Test
+	void expiredEntryIsRemoved() {
+		def cache = new LocalCache(10, Duration.ofNanos(1))
+		cache.put(TABLE_A, LOCAL)
+		Thread.sleep(1)
+		assertThat(cache.get(TABLE_A)).isNull()
+		assertThat(cache.expirations()).isEqualTo(1L)
+		assertThat(cache.size()).isEqualTo(0)
+	}
+
+	@Test
+	void expiredVersionedTableIsKeptAsideForRevalidation() {
+		def cache = new LocalCache(10, Duration.ofMillis(200))
+		def local = TableLocal.of(newTable(longCol("X", 1L))).withAttribute(LocalCache.VERSION, "worker:1:42")
+		cache.put(TABLE_A, local)
+		Thread.sleep(250)
+		assertThat(cache.get(TABLE_A)).isNull()
+		assertThat(cache.expirations()).isEqualTo(1L)
+		assertThat(cache.size()).isEqualTo(0)
+		assertThat(cache.stale(TABLE_A)).isSameAs(local)
+		cache.put(TABLE_A, local)
+		assertThat(cache.get(TABLE_A)).isSameAs(local)
+		assertThat(cache.stale(TABLE_A)).isNull()
+	}
+
+	@Test
+	void expiredTableIsNotRevalidatedAfterAnotherTtl() {
+		def cache = new LocalCache(10, Duration.ofMillis(20))
+		cache.put(TABLE_A, TableLocal.of(newTable(longCol("X", 1L))).withAttribute(LocalCache.VERSION, "worker:1:42"))
+		Thread.sleep(50)
+		assertThat(cache.stale(TABLE_A)).isNull()
+		assertThat(cache.expirations()).isEqualTo(1L)
+	}
+
+	@Test
+	void expiredEntryWithoutVersionIsNotRevalidated() {
+		def cache = new LocalCache(10, Duration.ofMillis(200))
+		cache.put(TABLE_A, TableLocal.of(newTable(longCol("X", 1L))))
+		Thread.sleep(250)
+		assertThat(cache.get(TABLE_A)).isNull()
+		assertThat(cache.stale(TABLE_A)).isNull()
+	}
+
+	@Test
+	void windowedTableIsNotCached() {
+		def cache = new LocalCache(10, Duration.ofMinutes(1))
+		def windowed = TABLE_A.withWindow(new TableWindow())
+		cache.put(windowed, LOCAL)
+		assertThat(cache.get(windowed)).isNull()
+		assertThat(cache.size()).isEqualTo(0)
+	}
+
+	@Test
+	void placeholderIsNotCached() {
+		def cache = new LocalCache(10, Duration.ofMinutes(1))
+		cache.put(TABLE_A, Localization.placeholder(TABLE_A, new RuntimeException("down"), Duration.ZERO))
+		assertThat(cache.get(TABLE_A)).isNull()
+		assertThat(cache.size()).isEqualTo(0)
+	}
+}
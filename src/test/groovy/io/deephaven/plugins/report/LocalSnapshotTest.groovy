@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.time.Instant
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+
+class LocalSnapshotTest {
+
+	private static final byte[] PNG = [0x50, 0x4E, 0x47, 1, 2, 3] as byte[]
+
+	@Test
+	void reportsRoundTrip() {
+		def image = FigureImage.of(PNG).withSize(400, 300).withName('plot')
+		def reports = [
+				Report.of('first', Group.builder().addItems(Text.of('hello'), image).build(), Instant.EPOCH),
+				Report.of('second', image, Instant.EPOCH)
+		]
+		def out = new ByteArrayOutputStream()
+		LocalSnapshot.write(reports, out, Deadline.after(Duration.ofSeconds(1)))
+		def read = LocalSnapshot.read(new ByteArrayInputStream(out.toByteArray()))
+		assertThat(read).isEqualTo(reports)
+		assertThat(read.get(1).fingerprint()).isEqualTo(reports.get(1).fingerprint())
+	}
+
+	@Test
+	void attributesThatCanNotBeSerializedAreLeftOut() {
+		def text = Text.of('hello').withAttribute('window', new TableWindow())
+		def out = new ByteArrayOutputStream()
+		LocalSnapshot.write([Report.of('title', text, Instant.EPOCH)], out, Deadline.after(Duration.ofSeconds(1)))
+		def read = LocalSnapshot.read(new ByteArrayInputStream(out.toByteArray()))
+		assertThat(read.get(0).item()).isEqualTo(Text.of('hello'))
+	}
+
+	@Test
+	void otherContentIsRejected() {
+		assertThatThrownBy({ LocalSnapshot.read(new ByteArrayInputStream('not a snapshot'.bytes)) })
+				.isInstanceOf(IOException.class)
+		assertThatThrownBy({ ReportCodec.toJson(FigureImage.of(PNG)) })
+				.isInstanceOf(IllegalArgumentException.class)
+	}
+}
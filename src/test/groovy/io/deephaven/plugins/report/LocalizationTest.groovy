@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.fishlib.io.logger.Logger
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+
+import static com.illumon.iris.db.tables.utils.TableTools.longCol
+import static com.illumon.iris.db.tables.utils.TableTools.newTable
+import static io.deephaven.plugins.report.Functions.*
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+
+class LocalizationTest {
+
+	@Test
+	void localReportIsUnchanged() {
+		def the_report = report("The report", named("a", "A"), Instant.EPOCH)
+		assertThat(the_report.toLocal(Logger.NULL, Duration.ofSeconds(1), parallel(4))).isEqualTo(the_report)
+	}
+
+	@Test
+	void reportsKeepTheirOrder() {
+		def reports = [
+			report("First", item("A", "B"), Instant.EPOCH),
+			report("Second", item("C"), Instant.EPOCH)
+		]
+		assertThat(parallel(2).toLocal(reports, Logger.NULL, Duration.ofSeconds(1))).isEqualTo(reports)
+	}
+
+	@Test
+	void lazyIsResolvedOnce() {
+		int calls = 0
+		def the_lazy = lazy({ ->
+			calls++
+			"Lazy text"
+		}).withName("a")
+		def the_report = report("The report", item(the_lazy, the_lazy), Instant.EPOCH)
+		assertThat(the_report.toGroovyishDebug()).isEqualTo("""report("The report", [named("a", <lazy>), named("a", <lazy>)])""")
+		def localized = the_report.toLocal(Logger.NULL, Duration.ofSeconds(1))
+		assertThat(calls).isEqualTo(0)
+		def items = ((Group) localized.item()).items()
+		assertThat(items[0].name().get()).isEqualTo("a")
+		assertThat(((Lazy) items[0]).get()).isEqualTo(named("a", "Lazy text"))
+		assertThat(((Lazy) items[1]).get()).isEqualTo(named("a", "Lazy text"))
+		assertThat(calls).isEqualTo(1)
+	}
+
+	@Test
+	void lazyRemoteItemsAreFetchedWhenResolved() {
+		def fakes = new FakePQs()
+		def the_table = FakePQs.table()
+		fakes.answer = { PQ pq, query -> FakePQs.batchResult([FakePQs.tableResult(the_table)]) }
+		def pool = fakes.pool()
+		def the_report = report("The report", item(lazy({ -> table(pq(1L), "t") })), Instant.EPOCH)
+		def localized = Localization.sequential().withClientPool(pool)
+				.open([the_report], Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		try {
+			assertThat(fakes.executed).isEmpty()
+			def resolved = ((Lazy) ((Group) localized.reports()[0].item()).items()[0]).get()
+			assertThat(((TableLocal) resolved).value()).isSameAs(the_table)
+			assertThat(fakes.executed).hasSize(1)
+		} finally {
+			localized.close()
+			pool.close()
+		}
+	}
+
+	@Test
+	void itemTimeoutWithoutRemoteItems() {
+		def the_report = report("The report", item("Only text"), Instant.EPOCH)
+		def localized = Localization.sequential().withItemTimeout(Duration.ofSeconds(1))
+				.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofSeconds(1)))
+		assertThat(localized.item()).isEqualTo(item("Only text"))
+	}
+
+	@Test
+	void itemTimeoutWhenEveryItemIsCached() {
+		def cache = new LocalCache(10, Duration.ofMinutes(1))
+		def cached = text("cached")
+		cache.put(table(pq(42L), "t"), cached)
+		def the_report = report("The report", item(table(pq(42L), "t")), Instant.EPOCH)
+		def localized = Localization.sequential().withCache(cache).withItemTimeout(Duration.ofSeconds(1))
+				.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofSeconds(1)))
+		assertThat(((Group) localized.item()).items()[0]).isSameAs(cached)
+	}
+
+	@Test
+	void failureFailsByDefault() {
+		def the_report = report("The report", item(table(pq(42L), "t"), "After"), Instant.EPOCH)
+		assertThatThrownBy({ Localization.sequential().toLocal(the_report, Logger.NULL, Deadline.after(Duration.ZERO)) })
+				.hasCauseInstanceOf(TimeoutException.class)
+	}
+
+	@Test
+	void failureIsReplacedByPlaceholder() {
+		def the_report = report("The report", item(table(pq(42L), "t").withName("The table"), "After"), Instant.EPOCH)
+		def localization = Localization.sequential().withOnFailure(Localization.OnFailure.PLACEHOLDER)
+		def items = ((Group) localization.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ZERO)).item()).items()
+		def placeholder = (Text) items[0]
+		assertThat(placeholder.name().get()).isEqualTo("The table")
+		assertThat(placeholder.placeholder().get()).startsWith("TimeoutException")
+		assertThat(items[1]).isEqualTo(Text.of("After"))
+	}
+
+	@Test
+	void openedReportsAreAvailableUntilClosed() {
+		def reports = [report("The report", named("a", "A"), Instant.EPOCH)]
+		def localized = Localization.sequential().open(reports, Logger.NULL, Deadline.after(Duration.ofSeconds(1)))
+		try {
+			assertThat(localized.reports()).isEqualTo(reports)
+		} finally {
+			localized.close()
+		}
+		localized.close()
+	}
+
+	@Test
+	void onlyShardsExceedTheParallelism() {
+		def fakes = new FakePQs()
+		def shards = [pq(11L), pq(12L)]
+		def bothShards = new CountDownLatch(2)
+		def fetching = new AtomicInteger()
+		def mostFetching = new AtomicInteger()
+		fakes.answer = { PQ pq, query ->
+			if (pq in shards) {
+				// note: only returns once both shards are being fetched at the same time
+				bothShards.countDown()
+				assertThat(bothShards.await(10, TimeUnit.SECONDS)).isTrue()
+			} else {
+				def now = fetching.incrementAndGet()
+				mostFetching.accumulateAndGet(now, { a, b -> Math.max(a, b) })
+				Thread.sleep(50)
+				fetching.decrementAndGet()
+			}
+			FakePQs.batchResult(query.tables().collect { FakePQs.tableResult(newTable(longCol("X", 1L))) })
+		}
+		def pool = fakes.pool()
+		def the_report = report("The report", item(
+				table(shards, "positions"),
+				table(pq(13L), "a"),
+				table(pq(14L), "b")), Instant.EPOCH)
+		try {
+			def items = ((Group) Localization.sequential().withClientPool(pool)
+					.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofSeconds(30))).item()).items()
+			assertThat(((TableLocal) items[0]).value().size()).isEqualTo(2L)
+			assertThat(mostFetching.get()).isEqualTo(1)
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void consistentSnapshotsAreOptIn() {
+		assertThat(parallel(4).consistentSnapshots()).isFalse()
+		assertThat(parallel(4).withConsistentSnapshots(true).consistentSnapshots()).isTrue()
+	}
+
+	@Test
+	void parallelismMustBePositive() {
+		assertThatThrownBy({ parallel(0) }).isInstanceOf(IllegalArgumentException.class)
+	}
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.fishlib.io.logger.Logger
+import com.illumon.iris.db.plot.FigureWidget
+import com.illumon.iris.db.tables.remote.Inflatable
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+import static com.illumon.iris.db.tables.utils.TableTools.longCol
+import static com.illumon.iris.db.tables.utils.TableTools.newTable
+import static io.deephaven.plugins.report.Functions.*
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+import static org.mockito.ArgumentMatchers.any
+import static org.mockito.Mockito.doAnswer
+import static org.mockito.Mockito.mock
+import static org.mockito.Mockito.when
+
+class PQBatchTest {
+
+	private static List<Item<?>> items(LocalizedReports localized, int report = 0) {
+		return ((Group) localized.reports()[report].item()).items()
+	}
+
+	@Test
+	void resultsAreMatchedToTheirItems() {
+		def fakes = new FakePQs()
+		def tables = [a: FakePQs.table(), b: FakePQs.table(), c: FakePQs.table()]
+		fakes.answer = { PQ pq, query ->
+			FakePQs.batchResult(query.tables().collect { spec -> FakePQs.tableResult(tables[spec.name()]) })
+		}
+		def pool = fakes.pool()
+		def the_report = report("The report", item(
+				table(pq(1L), "b"),
+				table(pq(2L), "c"),
+				table(pq(1L), "a"),
+				table(pq(1L), "a").withName("Again")), Instant.EPOCH)
+		def localized = Localization.sequential().withClientPool(pool)
+				.open([the_report], Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		try {
+			def items = items(localized)
+			assertThat(((TableLocal) items[0]).value()).isSameAs(tables.b)
+			assertThat(((TableLocal) items[1]).value()).isSameAs(tables.c)
+			assertThat(((TableLocal) items[2]).value()).isSameAs(tables.a)
+			assertThat(((TableLocal) items[3]).value()).isSameAs(tables.a)
+			assertThat(items[3].name().get()).isEqualTo("Again")
+			assertThat(fakes.executed).hasSize(2)
+			assertThat(fakes.queries(pq(1L))[0].tables()*.name()).containsExactly("b", "a")
+			assertThat(fakes.queries(pq(2L))[0].tables()*.name()).containsExactly("c")
+		} finally {
+			localized.close()
+			pool.close()
+		}
+	}
+
+	@Test
+	void itemsSharedByReportsAreFetchedOnce() {
+		def fakes = new FakePQs()
+		def tables = [a: FakePQs.table(), b: FakePQs.table()]
+		fakes.answer = { PQ pq, query ->
+			FakePQs.batchResult(query.tables().collect { spec -> FakePQs.tableResult(tables[spec.name()]) })
+		}
+		def pool = fakes.pool()
+		def reports = [
+				report("First", item(table(pq(1L), "a"), table(pq(1L), "b")), Instant.EPOCH),
+				report("Second", item(table(pq(1L), "a")), Instant.EPOCH)]
+		def localized = Localization.sequential().withClientPool(pool)
+				.open(reports, Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		try {
+			assertThat(items(localized, 1)[0]).isSameAs(items(localized, 0)[0])
+			assertThat(((TableLocal) items(localized, 1)[0]).value()).isSameAs(tables.a)
+			assertThat(fakes.executed).hasSize(1)
+			assertThat(fakes.queries(pq(1L))[0].tables()*.name()).containsExactly("a", "b")
+		} finally {
+			localized.close()
+			pool.close()
+		}
+	}
+
+	@Test
+	void remoteCallIsBoundedByTheDeadline() {
+		def fakes = new FakePQs()
+		fakes.answer = { PQ pq, query ->
+			Thread.sleep(60_000)
+			throw new IllegalStateException("Not interrupted")
+		}
+		def pool = fakes.pool()
+		def the_report = report("The report", item(table(pq(1L), "t")), Instant.EPOCH)
+		def start = System.nanoTime()
+		try {
+			assertThatThrownBy({
+				Localization.sequential().withClientPool(pool)
+						.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofMillis(200)))
+			}).hasCauseInstanceOf(TimeoutException.class)
+			assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10))
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void failedEntryOnlyFailsItsItem() {
+		def fakes = new FakePQs()
+		def the_table = FakePQs.table()
+		fakes.answer = { PQ pq, query ->
+			FakePQs.batchResult([null, FakePQs.tableResult(the_table)], [], [],
+					["table:0": "TableAccessException: no access to 'secret'"])
+		}
+		def pool = fakes.pool()
+		def the_report = report("The report", item(
+				table(pq(1L), "secret").withName("Secret"),
+				table(pq(1L), "public")), Instant.EPOCH)
+		def localization = Localization.sequential().withClientPool(pool)
+				.withOnFailure(Localization.OnFailure.PLACEHOLDER)
+		def localized = localization.open([the_report], Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		try {
+			def placeholder = (Text) items(localized)[0]
+			assertThat(placeholder.name().get()).isEqualTo("Secret")
+			assertThat(placeholder.placeholder().get()).isEqualTo("TableAccessException: no access to 'secret'")
+			assertThat(((TableLocal) items(localized)[1]).value()).isSameAs(the_table)
+		} finally {
+			localized.close()
+		}
+		assertThatThrownBy({
+			Localization.sequential().withClientPool(pool).toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		}).hasMessageContaining("no access to 'secret'")
+		pool.close()
+	}
+
+	@Test
+	void failedEntryIsFetchedAgainOnceRecovered() {
+		def fakes = new FakePQs()
+		def the_table = newTable(longCol("X", 1L))
+		def failures = ["table:0": "TableAccessException: no access to 'secret'"]
+		fakes.answer = { PQ pq, query -> FakePQs.batchResult([failures.isEmpty() ? FakePQs.tableResult(the_table) : null], [], [], failures) }
+		def pool = fakes.pool()
+		def the_report = report("The report", item(table(pq(1L), "secret")), Instant.EPOCH)
+		def localization = Localization.sequential().withClientPool(pool)
+				.withOnFailure(Localization.OnFailure.PLACEHOLDER)
+				.withCache(new LocalCache(10, Duration.ofMinutes(1)))
+		try {
+			def failed = localization.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+			assertThat(((Text) ((Group) failed.item()).items()[0]).placeholder()).isPresent()
+			failures = [:]
+			def recovered = localization.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+			assertThat(((TableLocal) ((Group) recovered.item()).items()[0]).value().getColumn("X").getDirect()).isEqualTo([1L] as long[])
+			assertThat(fakes.queries(pq(1L))).hasSize(2)
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void replicaIsNotSentThePrimaryVersion() {
+		def fakes = new FakePQs()
+		def fromReplica = newTable(longCol("X", 2L))
+		fakes.answer = { PQ source, query ->
+			if (source == pq(1601L)) {
+				throw new IllegalStateException("Primary is down")
+			}
+			FakePQs.batchResult([FakePQs.tableResult(fromReplica, 0, "replica:1:7")])
+		}
+		def pool = fakes.pool()
+		def cache = new LocalCache(10, Duration.ofMinutes(1))
+		def the_table = table(pq(1601L), "t").withReplicas(pq(1602L)).withCacheTtl(Duration.ofMillis(200))
+		cache.put(the_table, TableLocal.of(newTable(longCol("X", 1L))).withAttribute(LocalCache.VERSION, "primary:1:42"))
+		Thread.sleep(250)
+		def localized = Localization.sequential().withClientPool(pool).withCache(cache)
+				.open([report("The report", item(the_table), Instant.EPOCH)], Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		try {
+			assertThat(((TableLocal) items(localized)[0]).value().getColumn("X").getDirect()).isEqualTo([2L] as long[])
+			assertThat(fakes.queries(pq(1601L))[0].tables()[0].lastSeen()).contains("primary:1:42")
+			assertThat(fakes.queries(pq(1602L))[0].tables()[0].lastSeen()).isEmpty()
+		} finally {
+			localized.close()
+			pool.close()
+		}
+	}
+
+	@Test
+	void slowPrimaryIsHedgedToReplica() {
+		def fakes = new FakePQs()
+		def primaryInterrupted = new CountDownLatch(1)
+		fakes.answer = { PQ source, query ->
+			if (source == pq(1801L)) {
+				try {
+					Thread.sleep(60_000)
+				} catch (InterruptedException e) {
+					primaryInterrupted.countDown()
+					throw e
+				}
+			}
+			FakePQs.batchResult([FakePQs.tableResult(newTable(longCol("X", source.serialId())))])
+		}
+		def pool = fakes.pool()
+		def the_report = report("The report", item(table(pq(1801L), "t").withReplicas(pq(1802L))), Instant.EPOCH)
+		def start = System.nanoTime()
+		def localized = Localization.sequential().withClientPool(pool)
+				.open([the_report], Logger.NULL, Deadline.after(Duration.ofSeconds(30)))
+		try {
+			assertThat(((TableLocal) items(localized)[0]).value().getColumn("X").getDirect()).isEqualTo([1802L] as long[])
+			assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(20))
+			assertThat(primaryInterrupted.await(10, TimeUnit.SECONDS)).isTrue()
+		} finally {
+			localized.close()
+			pool.close()
+		}
+	}
+
+	@Test
+	void replicaIsNotSentTheWindowWatermark() {
+		def fakes = new FakePQs()
+		fakes.answer = { PQ source, query ->
+			if (source == pq(1811L)) {
+				throw new IllegalStateException("Primary is down")
+			}
+			FakePQs.batchResult([FakePQs.tableResult(newTable(longCol("X", 7L, 8L)), 5)])
+		}
+		def pool = fakes.pool()
+		def window = new TableWindow()
+		window.append(0, newTable(longCol("X", 1L, 2L, 3L)), 101)
+		def the_report = report("The report", item(table(pq(1811L), "fills").withReplicas(pq(1812L)).withWindow(window)), Instant.EPOCH)
+		def localized = Localization.sequential().withClientPool(pool)
+				.open([the_report], Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		try {
+			assertThat(fakes.queries(pq(1811L))[0].tables()[0].fromRow()).isEqualTo(3L)
+			assertThat(fakes.queries(pq(1812L))[0].tables()[0].fromRow()).isEqualTo(0L)
+			assertThat(((TableLocal) items(localized)[0]).value().getColumn("X").getDirect()).isEqualTo([7L, 8L] as long[])
+			// note: the replica's rows are at other positions, so the window starts over
+			assertThat(window.watermark()).isEqualTo(0L)
+			assertThat(window.table()).isEmpty()
+		} finally {
+			localized.close()
+			pool.close()
+		}
+	}
+
+	@Test
+	void waitingForATurnIsNotAFailureOfTheSource() {
+		def fakes = new FakePQs()
+		def bulkheads = new Bulkheads(10, 1)
+		def breakers = new CircuitBreakers(1, Duration.ofHours(1))
+		fakes.answer = { PQ pq, query -> FakePQs.batchResult([FakePQs.tableResult(FakePQs.table())]) }
+		def pool = fakes.pool()
+		def the_report = report("The report", item(table(pq(1L), "t")), Instant.EPOCH)
+		def localization = Localization.sequential().withClientPool(pool)
+				.withBulkheads(bulkheads).withCircuitBreakers(breakers)
+		try {
+			localization.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+			def turn = bulkheads.acquire(pq(1L), fakes.clients(pq(1L))[0], Deadline.after(Duration.ofSeconds(10)))
+			try {
+				assertThatThrownBy({
+					localization.toLocal(the_report, Logger.NULL, Deadline.after(Duration.ofMillis(200)))
+				}).hasCauseInstanceOf(TimeoutException.class)
+			} finally {
+				turn.close()
+			}
+			assertThat(breakers.state(pq(1L))).isEqualTo(CircuitBreakers.State.CLOSED)
+			assertThat(fakes.queries(pq(1L))).hasSize(1)
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void turnIsHeldUntilTheFiguresHaveTheirData() {
+		def fakes = new FakePQs()
+		def bulkheads = new Bulkheads(10, 1)
+		def widget = mock(FigureWidget.class)
+		def turnTaken = null
+		doAnswer({
+			try {
+				bulkheads.acquire(pq(1901L), fakes.clients(pq(1901L))[0], Deadline.after(Duration.ofMillis(10))).close()
+				turnTaken = false
+			} catch (TimeoutException ignored) {
+				turnTaken = true
+			}
+			return null
+		}).when(widget).waitForData()
+		def deflated = mock(Inflatable.class)
+		when(deflated.inflate(any())).thenReturn(widget)
+		fakes.answer = { PQ source, query -> FakePQs.batchResult([], [deflated]) }
+		def pool = fakes.pool()
+		def the_report = report("The report", item(figure(pq(1901L), "f")), Instant.EPOCH)
+		def localized = Localization.sequential().withClientPool(pool).withBulkheads(bulkheads)
+				.open([the_report], Logger.NULL, Deadline.after(Duration.ofSeconds(10)))
+		try {
+			assertThat(((FigureLocal) items(localized)[0]).figure()).isSameAs(widget)
+			assertThat(turnTaken).isTrue()
+			// note: and released once fetched
+			bulkheads.acquire(pq(1901L), fakes.clients(pq(1901L))[0], Deadline.after(Duration.ofMillis(10))).close()
+		} finally {
+			localized.close()
+			pool.close()
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.fishlib.io.logger.Logger
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+
+import static io.deephaven.plugins.report.Functions.pq
+import static org.assertj.core.api.Assertions.assertThat
+import static org.mockito.Mockito.never
+import static org.mockito.Mockito.verify
+import static org.mockito.Mockito.when
+
+class PQClientPoolTest {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(1)
+
+	@Test
+	void samePqSharesOneClient() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool()
+		try {
+			def first = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			def second = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			def other = pool.lease(pq(2L), Logger.NULL, TIMEOUT)
+			assertThat(second.client()).isSameAs(first.client())
+			assertThat(other.client()).isNotSameAs(first.client())
+			first.close()
+			second.close()
+			other.close()
+			assertThat(pool.lease(pq(1L), Logger.NULL, TIMEOUT).client()).isSameAs(first.client())
+			assertThat(fakes.connected).hasSize(2)
+			assertThat(pool.size()).isEqualTo(2)
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void unhealthyClientIsReplaced() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool()
+		try {
+			def first = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			first.close()
+			when(first.client().getPersistentQueryClient().getRemoteDatabase().getProcessorConnection().isConnected()).thenReturn(false)
+			def second = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			assertThat(second.client()).isNotSameAs(first.client())
+			verify(first.client().getPersistentQueryClient()).shutdown()
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void unhealthyLeasedClientIsShutDownOnLastRelease() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool()
+		try {
+			def first = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			def client = first.client().getPersistentQueryClient()
+			when(client.getRemoteDatabase().getProcessorConnection().isConnected()).thenReturn(false)
+			def second = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			assertThat(second.client()).isNotSameAs(first.client())
+			verify(client, never()).shutdown()
+			first.close()
+			verify(client).shutdown()
+			verify(second.client().getPersistentQueryClient(), never()).shutdown()
+			second.close()
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void idleClientIsEvicted() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool(Duration.ofMillis(1))
+		try {
+			pool.lease(pq(1L), Logger.NULL, TIMEOUT).close()
+			Thread.sleep(10)
+			pool.evictIdle()
+			assertThat(pool.size()).isEqualTo(0)
+			verify(fakes.clients(pq(1L))[0].getPersistentQueryClient()).shutdown()
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void leasedClientIsNotEvicted() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool(Duration.ofMillis(1))
+		try {
+			def lease = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			Thread.sleep(10)
+			pool.evictIdle()
+			assertThat(pool.size()).isEqualTo(1)
+			verify(lease.client().getPersistentQueryClient(), never()).shutdown()
+			lease.close()
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void clearShutsDownIdleClients() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool()
+		try {
+			pool.lease(pq(1L), Logger.NULL, TIMEOUT).close()
+			pool.clear()
+			assertThat(pool.size()).isEqualTo(0)
+			verify(fakes.clients(pq(1L))[0].getPersistentQueryClient()).shutdown()
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void clearShutsDownLeasedClientOnLastRelease() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool()
+		try {
+			def first = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			def second = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			pool.clear()
+			def client = first.client().getPersistentQueryClient()
+			verify(client, never()).shutdown()
+			first.close()
+			verify(client, never()).shutdown()
+			second.close()
+			verify(client).shutdown()
+			def next = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+			assertThat(next.client()).isNotSameAs(first.client())
+			next.close()
+		} finally {
+			pool.close()
+		}
+	}
+
+	@Test
+	void closeShutsDownLeasedClientOnRelease() {
+		def fakes = new FakePQs()
+		def pool = fakes.pool()
+		def lease = pool.lease(pq(1L), Logger.NULL, TIMEOUT)
+		pool.close()
+		verify(lease.client().getPersistentQueryClient(), never()).shutdown()
+		lease.close()
+		verify(lease.client().getPersistentQueryClient()).shutdown()
+	}
+}
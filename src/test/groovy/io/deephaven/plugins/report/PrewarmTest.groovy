@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import io.deephaven.plugins.report.styling.Size2D
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+
+import static org.assertj.core.api.Assertions.assertThat
+
+class PrewarmTest {
+
+	@Test
+	void nothingToPrewarmCompletesRightAway() {
+		def prewarm = Prewarm.builder().build()
+		assertThat(prewarm.start().get()).isNull()
+	}
+
+	@Test
+	void builderKeepsPqsAndSizes() {
+		def prewarm = Prewarm.builder()
+				.addPqs(PQSerialId.of(1L), PQSerialId.of(1L))
+				.addFigureSizes(Size2D.of(800, 600))
+				.timeout(Duration.ofSeconds(30))
+				.build()
+		assertThat(prewarm.pqs()).containsExactly(PQSerialId.of(1L))
+		assertThat(prewarm.figureSizes()).containsExactly(Size2D.of(800, 600))
+		assertThat(prewarm.timeout()).isEqualTo(Duration.ofSeconds(30))
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import io.deephaven.plugins.report.styling.Size2D
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+import java.time.Instant
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+import static org.mockito.Mockito.mock
+
+class ReportCodecTest {
+
+	private static Report theReport() {
+		def pq = PQName.of('devin', 'PnL')
+		def item = Group.builder()
+				.addItems(Text.of('Summary "daily"\n').withMarkdown('**Summary**'))
+				.addItems(TablePQ.of(pq, 'pnl').withReplicas(PQSerialId.of(42L)).withCacheTtl(Duration.ofMinutes(5)))
+				.addItems(FigurePQ.of(pq, 'plot').withSize(800, 600).withName('the plot'))
+				.addItems(TableShardedPQ.builder()
+						.addPqs(PQSerialId.of(1L), PQSerialId.of(2L))
+						.tableName('positions')
+						.maxRows(10)
+						.addSortColumns('Notional')
+						.descending(true)
+						.build())
+				.build()
+				.withAttributes([count: 3, ratio: 0.5d, big: Long.MAX_VALUE, flag: true, at: Instant.EPOCH, pq: pq])
+		Report.of('The Report', item, Instant.parse('2020-06-01T12:00:00Z'))
+	}
+
+	@Test
+	void jsonRoundTrips() {
+		def report = theReport()
+		def json = ReportCodec.toJson(report)
+		assertThat(ReportCodec.reportFromJson(json)).isEqualTo(report)
+		assertThat(ReportCodec.toJson(ReportCodec.reportFromJson(json))).isEqualTo(json)
+	}
+
+	@Test
+	void binaryRoundTrips() {
+		def report = theReport()
+		def bytes = ReportCodec.toBinary(report)
+		assertThat(ReportCodec.reportFromBinary(bytes)).isEqualTo(report)
+		assertThat(bytes.length).isLessThan(ReportCodec.toJson(report).length())
+	}
+
+	@Test
+	void jsonIsReadable() {
+		def item = TablePQ.of(PQSerialId.of(7L), 'trades')
+		assertThat(ReportCodec.toJson(item)).isEqualTo(
+				'{"type":"tablePQ","pq":{"serialId":7},"tableName":"trades","maxRows":100,"replicas":[]}')
+		assertThat(ReportCodec.itemFromJson(' { "type" : "text", "value" : "caf\\u00e9" } ')).isEqualTo(Text.of('café'))
+	}
+
+	@Test
+	void localItemsAreRejected() {
+		def local = TableLocal.of(mock(com.illumon.iris.db.tables.Table.class))
+		assertThatThrownBy({ ReportCodec.toJson(local) }).isInstanceOf(IllegalArgumentException.class)
+	}
+
+	@Test
+	void windowsAreSharedButNotTheirRows() {
+		def window = new TableWindow()
+		def item = Group.builder()
+				.addItems(TablePQ.of(PQSerialId.of(1L), 'fills').withWindow(window))
+				.addItems(TablePQ.of(PQSerialId.of(1L), 'fills').withWindow(window).withName('again'))
+				.addItems(TablePQ.of(PQSerialId.of(1L), 'orders').withWindow(new TableWindow()))
+				.build()
+		def read = (Group) ReportCodec.itemFromBinary(ReportCodec.toBinary(item))
+		def windows = read.items().collect { ((TablePQ) it).window().get() }
+		assertThat(windows[0]).isNotSameAs(window).isSameAs(windows[1]).isNotSameAs(windows[2])
+		assertThat(windows[0].watermark()).isEqualTo(0L)
+		assertThat(ReportCodec.toJson(item)).contains('"window":0').contains('"window":1')
+	}
+
+	@Test
+	void malformedInputIsRejected() {
+		assertThatThrownBy({ ReportCodec.itemFromJson('{"type":"text"') }).isInstanceOf(IllegalArgumentException.class)
+		assertThatThrownBy({ ReportCodec.itemFromJson('{"type":"unknown"}') }).isInstanceOf(IllegalArgumentException.class)
+		assertThatThrownBy({ ReportCodec.itemFromBinary([1, 2, 3] as byte[]) }).isInstanceOf(IllegalArgumentException.class)
+	}
+}
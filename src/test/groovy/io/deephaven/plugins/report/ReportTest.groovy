@@ -17,8 +17,11 @@ package io.deephaven.plugins.report
 
 import org.junit.jupiter.api.Test
 
+import static com.illumon.iris.db.tables.utils.TableTools.longCol
+import static com.illumon.iris.db.tables.utils.TableTools.newTable
 import static io.deephaven.plugins.report.Functions.*
 import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
 import static org.mockito.Mockito.mock
 
 class ReportTest {
@@ -46,6 +49,81 @@ class ReportTest {
 		assertThat(item(x)).isSameAs(x)
 	}
 
+	@Test
+	void bulkAttributesEqualChainedAttributes() {
+		def chained = text("A").withAttribute("a", 1).withAttribute("b", 2).withAttribute("a", 3)
+		assertThat(text("A").withAttributes([a: 1, b: 2]).withAttributes([a: 3])).isEqualTo(chained)
+		assertThat(attrs("A", [a: 3, b: 2])).isEqualTo(chained)
+	}
+
+	@Test
+	void groupAttributesShareItems() {
+		Group group = item("A", "B", "C")
+		assertThat(group.withName("The group").items()).isSameAs(group.items())
+	}
+
+	@Test
+	void groupAddAll() {
+		Group group = item("A", "B")
+		assertThat(group.withName("The group").addAll([text("C"), text("D")])).isEqualTo(named("The group", "A", "B", "C", "D"))
+	}
+
+	@Test
+	void windowedTableFetchesFromWatermark() {
+		def window = new TableWindow()
+		TablePQ fills = table(pq(42L), "fills").withWindow(window)
+		assertThat(fills.window().get()).isSameAs(window)
+		assertThat(fills.spec().fromRow()).isEqualTo(0L)
+		assertThat(fills.spec().latest()).isTrue()
+		assertThat(table(pq(42L), "fills").spec().fromRow()).isEqualTo(0L)
+		assertThat(table(pq(42L), "fills").spec().latest()).isFalse()
+	}
+
+	@Test
+	void shardedTableIsOneTablePerShard() {
+		def sharded = table([pq(1L), pq(2L)], "positions")
+		assertThat(sharded.shards()).containsExactly(table(pq(1L), "positions"), table(pq(2L), "positions"))
+		assertThat(report("Sharded", sharded).toGroovyishDebug()).isEqualTo("""report("Sharded", table([pq(1L), pq(2L)], "positions"))""")
+		def remote = new RemoteItems()
+		remote.visit(sharded)
+		assertThat(remote.tables()).containsExactlyElementsOf(sharded.shards())
+		assertThatThrownBy({ table([pq(1L), pq(1L)], "positions") }).isInstanceOf(IllegalArgumentException.class)
+	}
+
+	@Test
+	void shardsAreMergedSortedAndTruncated() {
+		def sharded = TableShardedPQ.builder()
+				.addPqs(pq(1L), pq(2L))
+				.tableName("positions")
+				.maxRows(3)
+				.addSortColumns("X")
+				.descending(true)
+				.build()
+		def merged = sharded.merge([
+				TableLocal.of(newTable(longCol("X", 1L, 5L))),
+				TableLocal.of(newTable(longCol("X", 4L, 2L)))])
+		assertThat(merged.value().getColumn("X").getDirect()).isEqualTo([5L, 4L, 2L] as long[])
+		assertThat(merged.attribute("truncated", Boolean.class).get()).isTrue()
+		assertThat(merged.attribute("tableShardedPQ", TableShardedPQ.class).get()).isSameAs(sharded)
+	}
+
+	@Test
+	void shardsAreMergedInOrderWithoutSortColumns() {
+		def sharded = table([pq(1L), pq(2L)], "positions")
+		def merged = sharded.merge([
+				TableLocal.of(newTable(longCol("X", 3L))).withAttribute("truncated", true),
+				TableLocal.of(newTable(longCol("X", 1L, 2L)))])
+		assertThat(merged.value().getColumn("X").getDirect()).isEqualTo([3L, 1L, 2L] as long[])
+		// note: a truncated shard may have left out rows, so the merge is truncated as well
+		assertThat(merged.attribute("truncated", Boolean.class).get()).isTrue()
+	}
+
+	@Test
+	void replicasMustDifferFromPrimary() {
+		assertThat(table(pq(1L), "t").withReplicas(pq(2L)).replicas()).containsExactly(pq(2L))
+		assertThatThrownBy({ figure(pq(1L), "f").withReplicas(pq(1L)) }).isInstanceOf(IllegalArgumentException.class)
+	}
+
 	@Test
 	void example_1() {
 		def date = "2020-04-01"
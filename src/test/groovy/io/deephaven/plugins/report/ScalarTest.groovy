@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import org.junit.jupiter.api.Test
+
+import java.time.Duration
+
+import static org.assertj.core.api.Assertions.assertThat
+import static org.assertj.core.api.Assertions.assertThatThrownBy
+
+class ScalarTest {
+
+	@Test
+	void formatsTheValue() {
+		assertThat(ScalarLocal.of(1234567.891d).formatted()).isEqualTo('1234567.891')
+		assertThat(ScalarLocal.of(1234567.891d).withFormat('%,.2f').formatted()).isEqualTo('1,234,567.89')
+		assertThat(ScalarLocal.of(null).formatted()).isEqualTo(ScalarLocal.MISSING)
+	}
+
+	@Test
+	void selectsAColumnAndRow() {
+		def pq = PQName.of('devin', 'PnL')
+		def variable = ScalarPQ.of(pq, 'totalPnl')
+		assertThat(variable.column()).isEmpty()
+		def cell = ScalarPQ.of(pq, 'summary', 'PnL').withRow(2)
+		assertThat(cell.column()).hasValue('PnL')
+		assertThat(cell.row()).isEqualTo(2L)
+		assertThat(cell.fingerprint()).isNotEqualTo(ScalarPQ.of(pq, 'summary', 'PnL').fingerprint())
+		assertThat(ItemToGroovyish.toString(cell)).isEqualTo('scalar(pq("devin", "PnL"), "summary", "PnL").withRow(2)')
+
+		assertThatThrownBy({ ScalarPQ.of(pq, '') }).isInstanceOf(IllegalArgumentException.class)
+		assertThatThrownBy({ variable.withRow(1) }).isInstanceOf(IllegalArgumentException.class)
+		assertThatThrownBy({ cell.withRow(-1) }).isInstanceOf(IllegalArgumentException.class)
+		assertThatThrownBy({ variable.withReplicas(pq) }).isInstanceOf(IllegalArgumentException.class)
+	}
+
+	@Test
+	void scalarsAreBatchedWithTheirPq() {
+		def pq = PQName.of('devin', 'PnL')
+		def first = ScalarPQ.of(pq, 'totalPnl')
+		def second = ScalarPQ.of(pq, 'summary', 'Trades').withName('Trades')
+		def remote = new RemoteItems()
+		Group.builder().addItems(first, second, TablePQ.of(pq, 'pnl'), ScalarLocal.of(1)).build().walk(remote)
+		assertThat(remote.scalars()).containsExactly(first, second)
+		assertThat(PQBatch.of(remote, [:])).hasSize(1)
+	}
+
+	@Test
+	void localizedScalarKeepsTheAttributes() {
+		def remote = ScalarPQ.of(PQSerialId.of(7L), 'totalPnl').withFormat('%.1f').withCacheTtl(Duration.ofSeconds(30))
+		def local = remote.toLocal(Optional.of((Object) 2.25d))
+		assertThat(local.formatted()).isEqualTo('2.3')
+		assertThat(local.attribute('scalarPQ', ScalarPQ.class).get()).isEqualTo(remote)
+	}
+
+	@Test
+	void codecRoundTrips() {
+		def item = Group.builder()
+				.addItems(ScalarPQ.of(PQSerialId.of(7L), 'summary', 'PnL').withRow(3).withFormat('%,.0f'))
+				.addItems(ScalarPQ.of(PQSerialId.of(7L), 'totalPnl').withName('Total'))
+				.addItems(ScalarLocal.of(42L).withName('Answer'))
+				.addItems(ScalarLocal.of(null))
+				.build()
+		assertThat(ReportCodec.itemFromJson(ReportCodec.toJson(item))).isEqualTo(item)
+		assertThat(ReportCodec.itemFromBinary(ReportCodec.toBinary(item))).isEqualTo(item)
+		assertThatThrownBy({ ReportCodec.toJson(ScalarLocal.of(new Object())) })
+				.isInstanceOf(IllegalArgumentException.class)
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Deephaven Data Labs
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.deephaven.plugins.report
+
+import com.illumon.iris.db.tables.Table
+import org.junit.jupiter.api.Test
+
+import static com.illumon.iris.db.tables.utils.TableTools.longCol
+import static com.illumon.iris.db.tables.utils.TableTools.newTable
+import static org.assertj.core.api.Assertions.assertThat
+
+class TableWindowTest {
+
+	private static Table rows(long... values) {
+		newTable(longCol("X", values))
+	}
+
+	private static List<Long> values(Table table) {
+		(table.getColumn("X").getDirect() as long[]).toList()
+	}
+
+	@Test
+	void appendedRowsAreMergedAndTheLatestAreKept() {
+		def window = new TableWindow()
+		assertThat(values(window.append(0, rows(1, 2, 3), 4))).containsExactly(1L, 2L, 3L)
+		assertThat(window.watermark()).isEqualTo(3L)
+		assertThat(values(window.append(3, rows(4, 5), 4))).containsExactly(2L, 3L, 4L, 5L)
+		assertThat(window.watermark()).isEqualTo(5L)
+	}
+
+	@Test
+	void sameRowsAreAppendedOnce() {
+		def window = new TableWindow()
+		window.append(0, rows(1, 2), 4)
+		def first = window.append(2, rows(3), 4)
+		assertThat(window.append(2, rows(3), 4)).isSameAs(first)
+		assertThat(values(first)).containsExactly(1L, 2L, 3L)
+		assertThat(window.watermark()).isEqualTo(3L)
+	}
+
+	@Test
+	void latestRowsReplaceTheRetainedRows() {
+		def window = new TableWindow()
+		window.append(0, rows(1, 2, 3), 4)
+		// note: more rows were appended than are kept, so only the latest were fetched
+		assertThat(values(window.append(10, rows(11, 12, 13, 14), 4))).containsExactly(11L, 12L, 13L, 14L)
+		assertThat(window.watermark()).isEqualTo(14L)
+	}
+
+	@Test
+	void restartStartsOver() {
+		def window = new TableWindow()
+		window.append(0, rows(1, 2, 3), 4)
+		assertThat(values(window.append(0, rows(9), 4))).containsExactly(9L)
+		assertThat(window.watermark()).isEqualTo(1L)
+	}
+
+	@Test
+	void resetReleasesTheRows() {
+		def window = new TableWindow()
+		window.append(0, rows(1, 2, 3), 4)
+		window.reset()
+		assertThat(window.table()).isEmpty()
+		assertThat(window.watermark()).isEqualTo(0L)
+	}
+}